@@ -115,6 +115,19 @@ public class BenchMark
 		}
 	}
 
+	/**
+	 * The slabs of the volume are done in parallel, so this is the size
+	 * at which the number of processors shows.
+	 */
+	@Test
+	public void largeVolume_RandomNoiseBenchMarkTest() throws Exception {
+		this.dataSize = new int[] { 512, 512, 512 };
+		for (int i = 8; i >= 2; i /= 2) {
+			this.boxSize = new int[] { i, i, i };
+			RandomNoiseBenchMarkTest();
+		}
+	}
+
 	@Test
 	public void varrying_DataSize_RandomNoiseBenchMarkTest() throws Exception {
 		this.boxSize = new int[] { 4, 4, 4 };
@@ -11,7 +11,10 @@ import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.dawnsci.isosurface.alg.MarchingCubes;
 import org.dawnsci.isosurface.alg.MarchingCubesModel;
@@ -88,18 +91,20 @@ public class Regression {
 			testResult.getTexCoords().length != knownTexLength);
 						
 		// check data is the same
+		// the order of the vertices and faces is not part of the result, so
+		// the points and the triangles they make are compared sorted.
 		Path pointsFile = Paths.get("pointsResults");
 		float [] readPointsFile = (float[]) deserialize(Files.readAllBytes(pointsFile));
 		assertTrue("Points results do not equal saved file"
 				+ "\nIndicates vertex triangle creation could be wrong",
-			Arrays.equals(readPointsFile, testResult.getPoints()));
+			getSortedPoints(readPointsFile).equals(getSortedPoints(testResult.getPoints())));
 		
 		
 		Path facesFile = Paths.get("facesResults");
 		int [] readFacesFile = (int[]) deserialize(Files.readAllBytes(facesFile));
 		assertTrue("Faces Results do not equal saved file"
 					+ "\nIndicates vertex indexing could be wrong",
-			Arrays.equals(readFacesFile, testResult.getFaces()));
+			getSortedTriangles(readPointsFile, readFacesFile).equals(getSortedTriangles(testResult.getPoints(), testResult.getFaces())));
 		
 				
 		Path texFile = Paths.get("texResults");
@@ -110,6 +115,45 @@ public class Regression {
 		
 	}
 
+	/**
+	 * 
+	 * @param points
+	 * @return the points as strings, sorted
+	 */
+	private static List<String> getSortedPoints(float[] points)
+	{
+		List<String> ret = new ArrayList<String>(points.length/3);
+		for (int i = 0; i < points.length; i+=3)
+		{
+			ret.add(points[i] + "," + points[i+1] + "," + points[i+2]);
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+	
+	/**
+	 * 
+	 * @param points
+	 * @param faces
+	 * @return the coordinates of the corners of each triangle, in the order of the face, as strings, sorted
+	 */
+	private static List<String> getSortedTriangles(float[] points, int[] faces)
+	{
+		List<String> ret = new ArrayList<String>(faces.length/6);
+		for (int t = 0; t < faces.length; t+=6)
+		{
+			StringBuilder buf = new StringBuilder();
+			for (int k = 0; k < 6; k+=2)
+			{
+				int v = 3*faces[t+k];
+				buf.append(points[v]).append(',').append(points[v+1]).append(',').append(points[v+2]).append(';');
+			}
+			ret.add(buf.toString());
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
     private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
         ByteArrayInputStream b = new ByteArrayInputStream(bytes);
         ObjectInputStream o = new ObjectInputStream(b);
@@ -9,28 +9,69 @@
 package org.dawnsci.isosurface.alg;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.api.dataset.ILazyDataset;
 import org.eclipse.dawnsci.analysis.api.monitor.IMonitor;
 import org.eclipse.dawnsci.analysis.api.processing.OperationException;
 import org.eclipse.dawnsci.analysis.api.processing.OperationRank;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
 import org.eclipse.dawnsci.analysis.dataset.operations.AbstractOperationBase;
 /**
  * 
  * @author nnb55016
  * The MarchingCubes class holds the algorithm with the same name which provides the triangular
  * mesh for a particular three dimensional dataset
+ * 
+ * The data is read a plane of samples at a time into primitive arrays. The cells
+ * between each pair of planes (a slab) are done as one task and slabs are done in
+ * parallel. The vertex on each cut edge is made once, by the slab which owns the
+ * edge, and found again by the neighbouring cells through an index cache for the
+ * edges of each plane. Slabs own the edges of their upper plane and the edges
+ * between their planes, the edges of the first plane have a slab of their own.
+ * 
+ * The smallest and largest sample of blocks of cells in each slab are kept for
+ * the data and box size. When only the isovalue changes, slabs which it does not
+ * cut are not read at all and only the blocks of the other slabs which it cuts
+ * are visited. Planes which have been read are kept in a bounded cache.
  */
 public class MarchingCubes extends AbstractOperationBase<MarchingCubesModel, Surface> {
 
+	/**
+	 * Values closer than this to the isovalue give the sample point itself.
+	 */
+	private static final double TOLERANCE = 0.00001;
+
+	/**
+	 * Megabytes of planes kept to make the isosurface again, by default an
+	 * eighth of the heap up to 256MB.
+	 */
+	private static final String PLANE_CACHE_PROPERTY = "org.dawnsci.isosurface.plane.cache.size";
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool==null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	/**
+	 * The data and box size of the last surface, with its block index and planes.
+	 */
+	private Volume volume;
+
 	public MarchingCubes() {
 		setModel(new MarchingCubesModel()); // We must always have a model for this maths.
 	}
@@ -41,34 +82,182 @@ public class MarchingCubes extends AbstractOperationBase<MarchingCubesModel, Sur
 	}
 	
 	@Override
-	public Surface execute(IDataset slice, IMonitor moni1tor) throws OperationException {
+	public Surface execute(IDataset slice, IMonitor monitor) throws OperationException {
 				
-		final Object[]           data      = parseVertices();
-		final Set<Triangle>      triangles = (HashSet<Triangle>) data[0];
-		final Map<Point,Integer> v         = (Map<Point, Integer>) data[1];
+		final Volume volume   = getVolume(model.getLazyData(), model.getBoxSize());
+		final double isovalue = model.getIsovalue();
+
+		// The last plane of samples is not used, as before.
+		final int slabs = volume.nz - 2;
+		if (slabs < 1 || volume.nx < 2 || volume.ny < 2) throw new OperationException(this, "No isosurface found!");
+
+		final List<Slab> done  = new ArrayList<Slab>(slabs+1);
+		final int        batch = 2*Runtime.getRuntime().availableProcessors();
+
+		// The edges of the first plane, only cut if the first slab is.
+		Slab previous = new Slab(volume, isovalue, -1, null, volume.isCut(0, isovalue) ? volume.getPlane(0) : null);
+		previous.makeVertices();
+		done.add(previous);
+		int vertices = previous.points.size()/3;
+
+		for (int s0 = 0; s0 < slabs; s0 += batch) {
+
+			if (monitor!=null && monitor.isCancelled()) throw new OperationException(this, "The isosurface was cancelled.");
+
+			// Planes are read in this thread as lazy datasets may not be thread safe.
+			final int  s1    = Math.min(slabs, s0+batch);
+			final Slab[] run = new Slab[s1-s0];
+			for (int s = s0; s < s1; s++) {
+				final Slab below = s==s0 ? previous : run[s-s0-1];
+				if (volume.isCut(s, isovalue)) {
+					final double[] lower = below.upper!=null ? below.upper : volume.getPlane(s);
+					run[s-s0] = new Slab(volume, isovalue, s, lower, volume.getPlane(s+1));
+				} else {
+					run[s-s0] = new Slab(volume, isovalue, s, null, null);
+				}
+				run[s-s0].below = below;
+			}
 
-		Point[] vertices = v.keySet().toArray(new Point[v.size()]);
-		
-		float[] points = getCoordinates(vertices);
+			invoke(run, false);
+			for (Slab slab : run) {
+				slab.offset = vertices;
+				vertices   += slab.points.size()/3;
+			}
+			invoke(run, true);
+
+			// Only the last plane is needed by the next batch
+			previous.release();
+			for (int i = 0; i < run.length-1; i++) run[i].release();
+			previous = run[run.length-1];
+			done.addAll(Arrays.asList(run));
+		}
+		previous.release();
+
+		if (vertices < 1) throw new OperationException(this, "No isosurface found!");
 
 		float[] texCoords = {0,0,0,1,1,1}; //{ 0, 0, (float) 0.5, (float) 0.5, 1, 1 };
 
-		int[] faces = new int[6 * triangles.size()];
+		return createSurface(done, vertices, texCoords);
+	}
 
-		int k = 0;
+	/**
+	 * 
+	 * @param lazyData
+	 * @param boxSize
+	 * @return the volume of the last surface if it has the same data and box size, otherwise a new one.
+	 */
+	private synchronized Volume getVolume(ILazyDataset lazyData, int[] boxSize) {
+		if (volume==null || volume.lazyData!=lazyData || !Arrays.equals(volume.boxSize, boxSize)) {
+			final int[] shape = lazyData.getShape();
+			// Samples in each direction, the data is cut to a multiple of the box size.
+			volume = new Volume(lazyData, boxSize.clone(), shape[2]/boxSize[0], shape[1]/boxSize[1], shape[0]/boxSize[2]);
+		}
+		return volume;
+	}
 
-		for (Triangle t: triangles) {
-			
-			faces[k] = v.get(t.getC());
-			faces[k + 1] = 0;
-			faces[k + 2] = v.get(t.getB());
-			faces[k + 3] = 1;
-			faces[k + 4] = v.get(t.getA());
-			faces[k + 5] = 2;
-			k += 6;
+	/**
+	 * Runs one phase of the slabs in parallel
+	 * @param slabs
+	 * @param triangles
+	 */
+	private static void invoke(final Slab[] slabs, final boolean triangles) {
+		getPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void compute() {
+				final List<RecursiveAction> actions = new ArrayList<RecursiveAction>(slabs.length);
+				for (final Slab slab : slabs) {
+					actions.add(new RecursiveAction() {
+						private static final long serialVersionUID = 1L;
+						@Override
+						protected void compute() {
+							if (triangles) {
+								slab.makeTriangles();
+							} else {
+								slab.makeVertices();
+							}
+						}
+					});
+				}
+				invokeAll(actions);
+			}
+		});
+	}
+
+	/**
+	 * Joins the vertices and triangles of the slabs. Vertices which fall on a
+	 * sample point may have been made by more than one edge, these are made one
+	 * vertex and any triangles which are then the same are only given once.
+	 * 
+	 * @param slabs
+	 * @param vertices
+	 * @param texCoords
+	 * @return
+	 */
+	private Surface createSurface(List<Slab> slabs, int vertices, float[] texCoords) {
+
+		float[] points    = new float[3*vertices];
+		long[]  samples   = null; // Sample point of each vertex, -1 if it is on an edge
+		int     triangles = 0;
+		for (Slab slab : slabs) {
+			System.arraycopy(slab.points.data, 0, points, 3*slab.offset, slab.points.size());
+			triangles += slab.triangles.size()/3;
+			if (slab.samples.size() > 0) {
+				if (samples==null) {
+					samples = new long[vertices];
+					Arrays.fill(samples, -1);
+				}
+				for (int i = 0; i < slab.samples.size(); i+=2) {
+					samples[slab.offset+(int)slab.samples.get(i)] = slab.samples.get(i+1);
+				}
+			}
 		}
 
-		if (points==null || points.length<1) throw new OperationException(this, "No isosurface found!");
+		int[] index = null;
+		if (samples!=null) {
+			index = new int[vertices];
+			final Map<Long, Integer> made = new HashMap<Long, Integer>();
+			int n = 0;
+			for (int v = 0; v < vertices; v++) {
+				if (samples[v]>=0) {
+					final Integer first = made.get(samples[v]);
+					if (first!=null) {
+						index[v] = first;
+						continue;
+					}
+					made.put(samples[v], n);
+				}
+				index[v] = n;
+				if (n!=v) System.arraycopy(points, 3*v, points, 3*n, 3);
+				n++;
+			}
+			if (n < vertices) points = Arrays.copyOf(points, 3*n);
+		}
+
+		int[] faces = new int[6*triangles];
+		final Set<List<Integer>> shared = samples!=null ? new HashSet<List<Integer>>() : null;
+		int k = 0;
+		for (Slab slab : slabs) {
+			final int[] tri = slab.triangles.data;
+			for (int t = 0; t < slab.triangles.size(); t+=3) {
+				int a = tri[t], b = tri[t+1], c = tri[t+2];
+				if (index!=null) {
+					if ((samples[a]>=0 || samples[b]>=0 || samples[c]>=0) && 
+					    !shared.add(Arrays.asList(index[a], index[b], index[c]))) continue;
+					a = index[a];
+					b = index[b];
+					c = index[c];
+				}
+				faces[k] = c;
+				faces[k + 1] = 0;
+				faces[k + 2] = b;
+				faces[k + 3] = 1;
+				faces[k + 4] = a;
+				faces[k + 5] = 2;
+				k += 6;
+			}
+		}
+		if (k < faces.length) faces = Arrays.copyOf(faces, k);
 
 		return new Surface(points, texCoords, faces);
 	}
@@ -394,413 +583,389 @@ public class MarchingCubes extends AbstractOperationBase<MarchingCubesModel, Sur
 			{ -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 } };
 
 
-	@SuppressWarnings("unchecked")
-	
-	private Object[] parseVertices() throws OperationException 
-	{	
-		final ILazyDataset lazyData = model.getLazyData();
-		final int[] boxSize         = model.getBoxSize();
-		final double isovalue       = model.getIsovalue();
-		
-		int xLimit = lazyData.getShape()[2];
-		int yLimit = lazyData.getShape()[1];
-		int zLimit = lazyData.getShape()[0];
-		
-        if(xLimit % boxSize[0] != 0){
-			xLimit = xLimit - xLimit % boxSize[0];
+	/**
+	 * The samples which are used, the smallest and largest of each block and
+	 * the planes which have been read.
+	 */
+	private static final class Volume {
+
+		/**
+		 * Cells in each direction of a block
+		 */
+		static final int BLOCK = 16;
+
+		final ILazyDataset lazyData;
+		final int[]        boxSize;
+		final int          nx, ny, nz;
+		final int          bx, by; // Blocks in each direction
+
+		// Smallest and largest sample of each block of each slab, null until the slab has been done.
+		// NaN is never below the isovalue so is taken as the largest.
+		private final double[][] blockMin, blockMax;
+		private final double[]   slabMin,  slabMax;
+
+		private final Map<Integer, double[]> planes;
+		private final long       maxBytes;
+		private long             bytes;
+
+		Volume(ILazyDataset lazyData, int[] boxSize, int nx, int ny, int nz) {
+			this.lazyData = lazyData;
+			this.boxSize  = boxSize;
+			this.nx = nx;
+			this.ny = ny;
+			this.nz = nz;
+			this.bx = Math.max(1, (nx-1+BLOCK-1)/BLOCK);
+			this.by = Math.max(1, (ny-1+BLOCK-1)/BLOCK);
+
+			final int slabs = Math.max(0, nz-2);
+			this.blockMin = new double[slabs][];
+			this.blockMax = new double[slabs][];
+			this.slabMin  = new double[slabs];
+			this.slabMax  = new double[slabs];
+
+			final long max = Runtime.getRuntime().maxMemory()/8;
+			this.maxBytes = Long.getLong(PLANE_CACHE_PROPERTY, Math.min(256L, max>>20))<<20;
+			this.planes   = new LinkedHashMap<Integer, double[]>(16, 0.75f, true);
 		}
-		
-		if(yLimit % boxSize[1] != 0){
-			yLimit = yLimit - yLimit % boxSize[1];
+
+		/**
+		 * 
+		 * @param k
+		 * @param isovalue
+		 * @return false if the isovalue does not cut any cell of the slab, true if it does or it is not known.
+		 */
+		boolean isCut(int k, double isovalue) {
+			if (k >= blockMin.length || blockMin[k]==null) return true;
+			return slabMin[k] < isovalue && slabMax[k] >= isovalue;
 		}
-		
-		if(zLimit % boxSize[2] != 0){
-			zLimit = zLimit - zLimit % boxSize[2];
+
+		/**
+		 * 
+		 * @param k
+		 * @param block
+		 * @param isovalue
+		 * @return false if the isovalue does not cut any cell of the block, true if it does or it is not known.
+		 */
+		boolean isCut(int k, int block, double isovalue) {
+			final double[] min = blockMin[k];
+			if (min==null) return true;
+			return min[block] < isovalue && blockMax[k][block] >= isovalue;
 		}
-		
-		Map<Point, Integer> vertices  = new LinkedHashMap<Point, Integer>(89);
-		
-		// declare the variables external to the loop
-		// should make things slightly faster
-		int[] sliceStart = new int[3];
-		int[] sliceStop = new int[3];
-		int[] sliceStep = new int[3];
-				
-		// scan through the Z coord of the data
-		// iterating steps determined by the XYZ boxsize
-
-		final Set<Triangle> triangles  = new HashSet<Triangle>(89);
-		
-		for(int k = 0; k < zLimit - 2 * boxSize[2]; k += boxSize[2])
-		{
-			sliceStart[0] = k;
-			sliceStart[1] = 0;
-			sliceStart[2] = 0;
-			
-			sliceStop[0] = k + 2 * boxSize[2];
-			sliceStop[1] = yLimit;
-			sliceStop[2] = xLimit;
-			
-			sliceStep[0] = boxSize[2];
-			sliceStep[1] = boxSize[1];
-			sliceStep[2] = boxSize[0];
-			
-			
-			triangles.addAll(generateTriangles(
-					isovalue,
-					sliceStart,
-					sliceStop, 
-					sliceStep,
-					boxSize,
-					new int[]{xLimit, yLimit, zLimit},
-					k,
-					lazyData));
-			
-			
+
+		boolean hasBlocks(int k) {
+			return blockMin[k]!=null;
 		}
-		
-		// index the triangles
-		vertices = mapTriangleList(triangles);
-			
-		return new Object[]{triangles, vertices};
-	}
-	
-	private Map<Point, Integer> mapTriangleList(Set<Triangle> listToIndex)
-	{
-		Map<Point, Integer> vertices  = new LinkedHashMap<Point, Integer>(89);
-		for (Triangle tri : listToIndex)
-		{
-			if(!vertices.containsKey(tri.getA())){
-				vertices.put(tri.getA(), vertices.size());
-			}
-			if(!vertices.containsKey(tri.getB())){
-				vertices.put(tri.getB(), vertices.size());
+
+		/**
+		 * Sets the smallest and largest sample of each block of a slab, called
+		 * by one thread for each slab.
+		 */
+		void setBlocks(int k, double[] lower, double[] upper) {
+
+			final double[] min = new double[bx*by];
+			final double[] max = new double[bx*by];
+			Arrays.fill(min, Double.POSITIVE_INFINITY);
+			Arrays.fill(max, Double.NEGATIVE_INFINITY);
+			for (int j = 0; j < ny; j++) {
+				// Samples on the edge of two blocks are in both
+				final int bj0 = Math.min(by-1, j/BLOCK), bj1 = j>0 && j%BLOCK==0 ? j/BLOCK-1 : bj0;
+				for (int i = 0; i < nx; i++) {
+					final int bi0 = Math.min(bx-1, i/BLOCK), bi1 = i>0 && i%BLOCK==0 ? i/BLOCK-1 : bi0;
+					final int idx = j*nx+i;
+					for (int p = 0; p < 2; p++) {
+						final double v = p==0 ? lower[idx] : upper[idx];
+						for (int bj = bj1; bj <= bj0; bj++) {
+							for (int bi = bi1; bi <= bi0; bi++) {
+								final int b = bj*bx+bi;
+								if (Double.isNaN(v)) {
+									max[b] = Double.POSITIVE_INFINITY;
+									continue;
+								}
+								if (v < min[b]) min[b] = v;
+								if (v > max[b]) max[b] = v;
+							}
+						}
+					}
+				}
 			}
-			if(!vertices.containsKey(tri.getC())){
-				vertices.put(tri.getC(), vertices.size());
+			double smin = Double.POSITIVE_INFINITY, smax = Double.NEGATIVE_INFINITY;
+			for (int b = 0; b < min.length; b++) {
+				smin = Math.min(smin, min[b]);
+				smax = Math.max(smax, max[b]);
 			}
+			slabMin[k]  = smin;
+			slabMax[k]  = smax;
+			blockMax[k] = max;
+			blockMin[k] = min; // Last, it says that the slab is done
 		}
-		
-		
-		return vertices;
-	}
-		
-	// extremely large parameter list - trim if possible
-	private Set<Triangle> generateTriangles(
-			double isovalue,
-			int[] sliceStart,
-			int[] sliceStop, 
-			int[] sliceStep,
-			int[] boxSize,
-			int[] XYZLimits,
-			int k,
-			final ILazyDataset lazyData)
-	{
-		
-		final Set<Triangle> returnTriangles = new HashSet<Triangle>();
-		
-		Point[] cellCoords = new Point[8];
-		double[] cellValues = new double[8];
-		
-		IDataset slicedImage = lazyData.getSlice(sliceStart,sliceStop, sliceStep);
-		
-		Object[] currentSlice = slicedData(slicedImage, k, boxSize, XYZLimits[0], XYZLimits[1]);
-		
-		// a map and an array containing only the data from the slices
-		Map<Point, Number> sliceValues = (Map<Point, Number>) currentSlice[0]; 
-		Point[] slicePoints = (Point[]) currentSlice[1];
-
-		int i = 0; // index that goes through the front "face" of the slice 
-		int y = 0; // index that keeps track of the points on a column of the face
-		
-		
-		while(i < slicePoints.length - 2 * XYZLimits[1]/boxSize[1] - 2)
-		{
-			
-			cellCoords[0] = slicePoints[i+3];
-			cellValues[0] = (double) sliceValues.get(cellCoords[0]).doubleValue();
-			
-			cellCoords[1] = slicePoints[i+3+2*XYZLimits[1]/boxSize[1]];
-			cellValues[1] = (double) sliceValues.get(cellCoords[1]).doubleValue();
-			
-			cellCoords[2] = slicePoints[i+2+2*XYZLimits[1]/boxSize[1]];
-			cellValues[2] = (double) sliceValues.get(cellCoords[2]).doubleValue();
-			
-			cellCoords[3] = slicePoints[i+2];
-			cellValues[3] = (double) sliceValues.get(cellCoords[3]).doubleValue();
-			
-			cellCoords[4] = slicePoints[i+1];
-			cellValues[4] = (double) sliceValues.get(cellCoords[4]).doubleValue();
-			
-			cellCoords[5] = slicePoints[i+1+2*XYZLimits[1]/boxSize[1]];
-			cellValues[5] = (double) sliceValues.get(cellCoords[5]).doubleValue();
-			
-			cellCoords[6] = slicePoints[i+2*XYZLimits[1]/boxSize[1]];
-			cellValues[6] = (double) sliceValues.get(cellCoords[6]).doubleValue();
-			
-			cellCoords[7] = slicePoints[i];
-			cellValues[7] = (double) sliceValues.get(cellCoords[7]).doubleValue();
-			
-			GridCell currentCell = new GridCell(cellCoords, cellValues);
-			int cubeIndex = getCubeIndex(currentCell, isovalue);
-					
-			if (cubeIndex != 0 && cubeIndex != 255) 
-			{
-				surfaceGridCellIntesection(currentCell, cubeIndex, isovalue);
-				
-				returnTriangles.addAll(createTriangle(currentCell, cubeIndex));
-				currentCell.setTrianglesList(createTriangle(currentCell, cubeIndex));
-				returnTriangles.addAll(currentCell.getTrianglesList());
-			}
-			
-			if(y < 2*XYZLimits[1]/boxSize[1]-2){
-				i += 2;
-				y += 2;
-				if(y == 2*XYZLimits[1]/boxSize[1]-2){
-					i += 2;
-					y = 0;
+
+		/**
+		 * 
+		 * @param k
+		 * @return the samples of a plane, x varying fastest
+		 */
+		double[] getPlane(int k) {
+
+			double[] plane = planes.get(k);
+			if (plane!=null) return plane;
+
+			plane = readPlane(k);
+			final long size = 8L*plane.length;
+			if (size <= maxBytes) {
+				planes.put(k, plane);
+				bytes += size;
+				final Iterator<double[]> it = planes.values().iterator();
+				while (bytes > maxBytes && it.hasNext()) {
+					bytes -= 8L*it.next().length;
+					it.remove();
 				}
 			}
+			return plane;
 		}
-		return returnTriangles;		
-	}
-	
 
-	
-	public int getCubeIndex(GridCell cell, double isovalue){
-		int cubeIndex = 0;
-		
-		if (cell.getCellValues()[0] < isovalue)
-			cubeIndex |= 1;
-		if (cell.getCellValues()[1] < isovalue)
-			cubeIndex |= 2;
-		if (cell.getCellValues()[2] < isovalue)
-			cubeIndex |= 4;
-		if (cell.getCellValues()[3] < isovalue)
-			cubeIndex |= 8;
-		if (cell.getCellValues()[4] < isovalue)
-			cubeIndex |= 16;
-		if (cell.getCellValues()[5] < isovalue)
-			cubeIndex |= 32;
-		if (cell.getCellValues()[6] < isovalue)
-			cubeIndex |= 64;
-		if (cell.getCellValues()[7] < isovalue)
-			cubeIndex |= 128;
-
-		return cubeIndex;
+		private double[] readPlane(int k) {
+			final IDataset plane = lazyData.getSlice(new int[]{k*boxSize[2], 0, 0},
+					                                 new int[]{k*boxSize[2]+1, ny*boxSize[1], nx*boxSize[0]},
+					                                 new int[]{1, boxSize[1], boxSize[0]});
+			return ((DoubleDataset)DatasetUtils.cast(DatasetUtils.convertToDataset(plane), Dataset.FLOAT64)).getData();
+		}
 	}
-	
-	
+
 	/**
-	 * The following method finds for one particular grid cell which are the
-	 * vertices where the isosurface intersects the cell
-	 * 
-	 * @param cell
-	 * @param cubeIndex
-	 * @param isovalue
+	 * The cells between two planes of samples.
 	 */
-	public void surfaceGridCellIntesection(GridCell cell, int cubeIndex,
-			double isovalue) {
-		if ((edgeTable[cubeIndex] & 1) != 0) {
-			cell.getVertexList()[0] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[0], cell.getCellCoords()[1],
-					cell.getCellValues()[0], cell.getCellValues()[1]);
+	private static final class Slab {
+
+		private final Volume   volume;
+		private final double   isovalue;
+		private final int      k;       // Lower plane, -1 for the slab with only the first plane
+		private double[]       lower, upper; // Both null if the slab is not cut
+
+		// Local index of the vertex on each edge which is cut, -1 if it is not cut.
+		private int[]          xEdges, yEdges; // Edges in the upper plane
+		private int[]          zEdges;         // Edges between the planes
+
+		final FloatList        points    = new FloatList();
+		final IntList          triangles = new IntList();
+		final LongList         samples   = new LongList(); // Pairs of local index and sample for vertices on a sample point
+		Slab                   below;
+		int                    offset;
+
+		Slab(Volume volume, double isovalue, int k, double[] lower, double[] upper) {
+			this.volume   = volume;
+			this.isovalue = isovalue;
+			this.k        = k;
+			this.lower  = lower;
+			this.upper  = upper;
 		}
 
-		if ((edgeTable[cubeIndex] & 2) != 0) {
-			cell.getVertexList()[1] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[1], cell.getCellCoords()[2],
-					cell.getCellValues()[1], cell.getCellValues()[2]);
-		}
+		/**
+		 * Makes the vertices on the edges which this slab owns.
+		 */
+		void makeVertices() {
+
+			if (upper==null) return; // Not cut
+
+			final int    nx  = volume.nx, ny = volume.ny;
+			final double iso = isovalue;
+			xEdges = new int[nx*ny];
+			yEdges = new int[nx*ny];
+			Arrays.fill(xEdges, -1);
+			Arrays.fill(yEdges, -1);
+
+			for (int j = 0; j < ny; j++) {
+				for (int i = 0; i < nx; i++) {
+					final int    idx = j*nx+i;
+					final double v   = upper[idx];
+					if (i < nx-1 && (v < iso) != (upper[idx+1] < iso)) {
+						xEdges[idx] = vertex(0, i, j, k+1, v, upper[idx+1]);
+					}
+					if (j < ny-1 && (v < iso) != (upper[idx+nx] < iso)) {
+						yEdges[idx] = vertex(1, i, j, k+1, v, upper[idx+nx]);
+					}
+				}
+			}
 
-		if ((edgeTable[cubeIndex] & 4) != 0) {
-			cell.getVertexList()[2] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[2], cell.getCellCoords()[3],
-					cell.getCellValues()[2], cell.getCellValues()[3]);
+			if (lower==null) return;
+			zEdges = new int[nx*ny];
+			for (int idx = 0; idx < zEdges.length; idx++) {
+				zEdges[idx] = (lower[idx] < iso) != (upper[idx] < iso)
+						    ? vertex(2, idx%nx, idx/nx, k, lower[idx], upper[idx])
+						    : -1;
+			}
 		}
 
-		if ((edgeTable[cubeIndex] & 8) != 0) {
-			cell.getVertexList()[3] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[3], cell.getCellCoords()[0],
-					cell.getCellValues()[3], cell.getCellValues()[0]);
-		}
+		/**
+		 * Method to linearly interpolate the position where the isosurface cuts an
+		 * edge between two samples each with their own value. Edges are always
+		 * taken from the sample with the smaller coordinate so that each edge has
+		 * one vertex.
+		 * 
+		 * @param axis along which the edge runs
+		 * @param i
+		 * @param j
+		 * @param k sample at the start of the edge
+		 * @param v1
+		 * @param v2
+		 * @return local index of the vertex
+		 */
+		private int vertex(int axis, int i, int j, int k, double v1, double v2) {
+
+			if (Math.abs(isovalue - v1) < TOLERANCE) {
+				return sample(i, j, k);
+			} else if (Math.abs(isovalue - v2) < TOLERANCE) {
+				return axis==0 ? sample(i+1, j, k) : axis==1 ? sample(i, j+1, k) : sample(i, j, k+1);
+			} else if (Math.abs(v2 - v1) < TOLERANCE) {
+				return sample(i, j, k);
+			}
 
-		if ((edgeTable[cubeIndex] & 16) != 0) {
-			cell.getVertexList()[4] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[4], cell.getCellCoords()[5],
-					cell.getCellValues()[4], cell.getCellValues()[5]);
+			final int[]  box = volume.boxSize;
+			final double mu  = (isovalue - v1) / (v2 - v1);
+			if (Double.isNaN(mu)) return sample(0, 0, 0); // The coordinates round to zero, as they always have
+			final double c1  = (axis==0 ? i : axis==1 ? j : k) * box[axis];
+			final double c2  = c1 + box[axis];
+			final double c   = (long) ((c1 + mu * (c2 - c1)) * 1000 + 0.5) / 1000.0;
+			if (c==c1) return sample(i, j, k);
+			if (c==c2) return axis==0 ? sample(i+1, j, k) : axis==1 ? sample(i, j+1, k) : sample(i, j, k+1);
+
+			return points.add(axis==0 ? (float)c : i*box[0],
+					          axis==1 ? (float)c : j*box[1],
+					          axis==2 ? (float)c : k*box[2]);
 		}
 
-		if ((edgeTable[cubeIndex] & 32) != 0) {
-			cell.getVertexList()[5] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[5], cell.getCellCoords()[6],
-					cell.getCellValues()[5], cell.getCellValues()[6]);
+		private int sample(int i, int j, int k) {
+			final int[] box   = volume.boxSize;
+			final int   index = points.add(i*box[0], j*box[1], k*box[2]);
+			samples.add(index);
+			samples.add(((long)k*volume.ny + j)*volume.nx + i);
+			return index;
 		}
 
-		if ((edgeTable[cubeIndex] & 64) != 0) {
-			cell.getVertexList()[6] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[6], cell.getCellCoords()[7],
-					cell.getCellValues()[6], cell.getCellValues()[7]);
-		}
+		/**
+		 * Makes the triangles of the cells between the planes, the vertices of
+		 * this slab and the one below must have been made and given offsets.
+		 * If the edges of a plane are not cut, they are never looked up.
+		 */
+		void makeTriangles() {
 
-		if ((edgeTable[cubeIndex] & 128) != 0) {
-			cell.getVertexList()[7] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[7], cell.getCellCoords()[4],
-					cell.getCellValues()[7], cell.getCellValues()[4]);
-		}
+			if (lower==null) return; // Not cut
 
-		if ((edgeTable[cubeIndex] & 256) != 0) {
-			cell.getVertexList()[8] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[0], cell.getCellCoords()[4],
-					cell.getCellValues()[0], cell.getCellValues()[4]);
-		}
+			final int    nx  = volume.nx, ny = volume.ny;
+			final double iso = isovalue;
+			final int[]  lx  = below.xEdges, ly = below.yEdges;
+			final int    lo  = below.offset;
+			final int[]  vertexList = new int[12];
 
-		if ((edgeTable[cubeIndex] & 512) != 0) {
-			cell.getVertexList()[9] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[1], cell.getCellCoords()[5],
-					cell.getCellValues()[1], cell.getCellValues()[5]);
+			if (!volume.hasBlocks(k)) volume.setBlocks(k, lower, upper);
+
+			final int B = Volume.BLOCK;
+			for (int b = 0; b < volume.bx*volume.by; b++) {
+				if (!volume.isCut(k, b, iso)) continue;
+				final int i0 = (b%volume.bx)*B, j0 = (b/volume.bx)*B;
+				makeTriangles(i0, Math.min(nx-1, i0+B), j0, Math.min(ny-1, j0+B), iso, lx, ly, lo, vertexList);
+			}
 		}
 
-		if ((edgeTable[cubeIndex] & 1024) != 0) {
-			cell.getVertexList()[10] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[2], cell.getCellCoords()[6],
-					cell.getCellValues()[2], cell.getCellValues()[6]);
+		private void makeTriangles(int i0, int i1, int j0, int j1, double iso, int[] lx, int[] ly, int lo, int[] vertexList) {
+
+			final int nx = volume.nx;
+			for (int j = j0; j < j1; j++) {
+				for (int i = i0; i < i1; i++) {
+
+					final int idx = j*nx+i;
+					int cubeIndex = 0;
+					if (upper[idx+nx]   < iso) cubeIndex |= 1;
+					if (upper[idx+nx+1] < iso) cubeIndex |= 2;
+					if (lower[idx+nx+1] < iso) cubeIndex |= 4;
+					if (lower[idx+nx]   < iso) cubeIndex |= 8;
+					if (upper[idx]      < iso) cubeIndex |= 16;
+					if (upper[idx+1]    < iso) cubeIndex |= 32;
+					if (lower[idx+1]    < iso) cubeIndex |= 64;
+					if (lower[idx]      < iso) cubeIndex |= 128;
+					if (cubeIndex == 0 || cubeIndex == 255) continue;
+
+					final int edges = edgeTable[cubeIndex];
+					if ((edges & 1)    != 0) vertexList[0]  = offset + xEdges[idx+nx];
+					if ((edges & 2)    != 0) vertexList[1]  = offset + zEdges[idx+nx+1];
+					if ((edges & 4)    != 0) vertexList[2]  = lo     + lx[idx+nx];
+					if ((edges & 8)    != 0) vertexList[3]  = offset + zEdges[idx+nx];
+					if ((edges & 16)   != 0) vertexList[4]  = offset + xEdges[idx];
+					if ((edges & 32)   != 0) vertexList[5]  = offset + zEdges[idx+1];
+					if ((edges & 64)   != 0) vertexList[6]  = lo     + lx[idx];
+					if ((edges & 128)  != 0) vertexList[7]  = offset + zEdges[idx];
+					if ((edges & 256)  != 0) vertexList[8]  = offset + yEdges[idx];
+					if ((edges & 512)  != 0) vertexList[9]  = offset + yEdges[idx+1];
+					if ((edges & 1024) != 0) vertexList[10] = lo     + ly[idx+1];
+					if ((edges & 2048) != 0) vertexList[11] = lo     + ly[idx];
+
+					final int[] tri = triTable[cubeIndex];
+					for (int t = 0; tri[t] != -1; t += 3) {
+						triangles.add(vertexList[tri[t]], vertexList[tri[t+1]], vertexList[tri[t+2]]);
+					}
+				}
+			}
 		}
-		
-		if ((edgeTable[cubeIndex] & 2048) != 0) {
-			cell.getVertexList()[11] = vertexInterpolation(isovalue,
-					cell.getCellCoords()[3], cell.getCellCoords()[7],
-					cell.getCellValues()[3], cell.getCellValues()[7]);
+
+		/**
+		 * The vertices and triangles are kept, the samples and index caches are not.
+		 */
+		void release() {
+			lower  = null;
+			upper  = null;
+			xEdges = null;
+			yEdges = null;
+			zEdges = null;
+			below  = null;
 		}
 	}
-	
-	/**
-	 * This method creates and returns a Collection of Triangle objects that the
-	 * marching cubes algorithm generates in one GridCell
-	 * 
-	 * @param cell
-	 * @param cubeIndex
-	 * @return
-	 */
-	
-	// !! hot spot createTriangles(...)
-	// !! contains key
-	public List<Triangle> createTriangle(GridCell cell, int cubeIndex) {
-
-		List<Triangle> triangleList = new ArrayList<Triangle>();
-
-		for (int i = 0; triTable[cubeIndex][i] != -1; i += 3) {
-			Point a = cell.getVertexList()[triTable[cubeIndex][i]];
-			
-			Point b = cell.getVertexList()[triTable[cubeIndex][i + 1]];
-			
-			Point c = cell.getVertexList()[triTable[cubeIndex][i + 2]];
-			
-
-			Triangle currentTriangle = new Triangle(a, b, c);
-			triangleList.add(currentTriangle);
-		}
 
-		return triangleList;
-		
+	private static final class FloatList {
+		float[] data = new float[96];
+		private int size;
+
+		/**
+		 * @return index of the point added
+		 */
+		int add(float x, float y, float z) {
+			if (size+3 > data.length) data = Arrays.copyOf(data, 2*data.length);
+			data[size++] = x;
+			data[size++] = y;
+			data[size++] = z;
+			return size/3-1;
+		}
+		int size() {
+			return size;
+		}
 	}
 
+	private static final class IntList {
+		int[] data = new int[96];
+		private int size;
 
-
-	/**
-	 * Method to linearly interpolate the position where the isosurface cuts an
-	 * edge between two vertices each with their own value.
-	 * 
-	 * @param isovalue
-	 * @param p1
-	 * @param p2
-	 * @param v1
-	 * @param v2
-	 * @return the point of intersection
-	 */
-	
-	//!! hotspot
-	public Point vertexInterpolation(double isovalue, Point p1, Point p2,
-			double v1, double v2) {
-		double mu;
-	
-		if (Math.abs(isovalue - v1) < 0.00001) {
-			return p1;
-		} else if (Math.abs(isovalue - v2) < 0.00001) {
-			return p2;
+		void add(int a, int b, int c) {
+			if (size+3 > data.length) data = Arrays.copyOf(data, 2*data.length);
+			data[size++] = a;
+			data[size++] = b;
+			data[size++] = c;
 		}
-
-		else if (Math.abs(v2 - v1) < 0.00001) {
-			return p1;
-		}
-
-		else {
-			Point p = new Point(); // the point that is going to be interpolated; 
-			mu = (isovalue - v1) / (v2 - v1);
-			double x = p1.getxCoord() + mu * (p2.getxCoord() - p1.getxCoord());
-			double y = p1.getyCoord() + mu * (p2.getyCoord() - p1.getyCoord());
-			double z = p1.getzCoord() + mu * (p2.getzCoord() - p1.getzCoord());
-			
-			p.setxCoord((long) (x * 1000 + 0.5) / 1000.0);
-			p.setyCoord((long) (y * 1000 + 0.5) / 1000.0);
-			p.setzCoord((long) (z * 1000 + 0.5) / 1000.0);
-			return p;
+		int size() {
+			return size;
 		}
 	}
 
+	private static final class LongList {
+		private long[] data = new long[16];
+		private int size;
 
-
-	/**
-	 * This method creates the array of coordinates that is needed for the
-	 * TriangleMesh class of JavaFX It uses the array of distinct points and
-	 * gets the x,y,z coordinates
-	 * 
-	 * @param pointsWithoutRepetition
-	 * @return
-	 */
-	public float[] getCoordinates(Point[] pointsWithoutRepetition) {
-		float[] points = new float[3 * pointsWithoutRepetition.length];
-		int j = 0;
-		for (int i = 0; i < pointsWithoutRepetition.length; i++) {
-			points[j] = (float) pointsWithoutRepetition[i].getxCoord();
-			points[j + 1] = (float) pointsWithoutRepetition[i].getyCoord();
-			points[j + 2] = (float) pointsWithoutRepetition[i].getzCoord();
-			j += 3;
+		void add(long value) {
+			if (size == data.length) data = Arrays.copyOf(data, 2*data.length);
+			data[size++] = value;
 		}
-		return points;
-	}
-	
-	/**
-	 * Method that gets the points for each slice
-	 * @param slicedImage
-	 * @param k
-	 * @param boxSize
-	 * @param xLimit
-	 * @param yLimit
-	 * @return
-	 * new Object[2]{values, points}
-	 */
-	
-	public Object[] slicedData(IDataset slicedImage, int k, int[] boxSize, int xLimit, int yLimit){
-		
-		Map<Point, Number> values = new HashMap<Point, Number>();
-		Point[] points = new Point[2 * (xLimit/boxSize[0]) * (yLimit/boxSize[1])];
-		
-		
-		int a = 0; // index in the array of points
-
-		for(int i=0; i<xLimit; i+=boxSize[0]){
-			for(int j=0; j<yLimit; j+=boxSize[1]){
-								
-				points[a] = new Point(i,j,k);
-				points[a+1] = new Point(i,j,k+boxSize[2]);
-				values.put(points[a], slicedImage.getDouble(0,j/boxSize[1],i/boxSize[0]));
-				values.put(points[a+1], slicedImage.getDouble(1,j/boxSize[1],i/boxSize[0]));
-				
-				a+=2;
-			}
+		long get(int index) {
+			return data[index];
+		}
+		int size() {
+			return size;
 		}
-		return new Object[]{values, points};
 	}
-	
 }
@@ -213,6 +213,9 @@ public class IsosurfaceJob extends Job {
 			} 
 			catch (Exception e) 
 			{
+				// A newer isovalue cancels the surface being made
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
 				logger.error("Cannot run algorithm "+ generator.getClass().getSimpleName(), e);
 				return Status.CANCEL_STATUS;
 				
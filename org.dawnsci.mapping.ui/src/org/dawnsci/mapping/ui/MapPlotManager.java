@@ -11,6 +11,7 @@ import org.dawnsci.mapping.ui.datamodel.AssociatedImage;
 import org.dawnsci.mapping.ui.datamodel.MapObject;
 import org.dawnsci.mapping.ui.datamodel.MappedData;
 import org.dawnsci.mapping.ui.datamodel.MappedDataArea;
+import org.dawnsci.mapping.ui.datamodel.SpectrumCache;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -73,15 +74,14 @@ public class MapPlotManager {
 			
 			@Override
 			public void run() {
-				ILazyDataset l = topMap.getSpectrum(x,y);
-				if (l == null) {
+				IDataset s = topMap.getSpectrumData(x,y);
+				if (s == null) {
 					data.clear();
 					return;
 				}
 				
-				IDataset s = l.getSlice();
-				
-				if (s != null) MappingUtils.plotDataWithMetadata(s, data, new int[]{0});
+				MappingUtils.plotDataWithMetadata(s, data, new int[]{0});
+				if (logger.isTraceEnabled()) logger.trace(SpectrumCache.getInstance().toString());
 				
 				Display.getDefault().asyncExec(new Runnable() {
 
@@ -122,7 +122,7 @@ public class MapPlotManager {
 				
 				@Override
 				public void run() {
-					IDataset s = lz.getSlice().squeeze();
+					IDataset s = topMap.getSpectrumData(x,y).squeeze();
 					if (s != null) {
 						Dataset mergedDataset = getMergedDataset(s);
 						int pos = atomicPosition.getAndIncrement() % 4;
@@ -166,7 +166,7 @@ public class MapPlotManager {
 				
 				@Override
 				public void run() {
-					IDataset s = lz.getSlice();
+					IDataset s = topMap.getSpectrumData(x,y);
 					if (s != null) {
 						final ILineTrace l = MappingUtils.buildLineTrace(s, data);
 						
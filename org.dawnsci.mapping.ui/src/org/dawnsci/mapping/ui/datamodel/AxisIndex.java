@@ -0,0 +1,132 @@
+package org.dawnsci.mapping.ui.datamodel;
+
+import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+
+/**
+ * The values of an axis of a map, copied once so that the index of the nearest
+ * value can be found for every mouse move without making datasets.
+ *
+ * Axes which only increase or only decrease are binary searched, others are
+ * scanned. Either way the index is the same as argMin of the distance to the
+ * value would give, i.e. the first of equally near values.
+ */
+class AxisIndex {
+
+	private final double[] values;
+	private final boolean  monotonic;
+	private final boolean  descending;
+	private final double   min, max;
+
+	AxisIndex(IDataset axis) {
+
+		final Dataset d = DatasetUtils.convertToDataset(axis);
+		values = new double[d.getSize()];
+		final IndexIterator it = d.getIterator();
+		for (int i = 0; it.hasNext(); i++) values[i] = d.getElementDoubleAbs(it.index);
+
+		boolean up = true, down = true;
+		double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < values.length; i++) {
+			final double v = values[i];
+			if (Double.isNaN(v)) {
+				up = down = false;
+				continue;
+			}
+			if (v < lo) lo = v;
+			if (v > hi) hi = v;
+			if (i > 0) {
+				if (v < values[i-1]) up   = false;
+				if (v > values[i-1]) down = false;
+			}
+		}
+		min = lo;
+		max = hi;
+		monotonic  = up || down;
+		descending = !up;
+	}
+
+	int getSize() {
+		return values.length;
+	}
+
+	double getMin() {
+		return min;
+	}
+
+	double getMax() {
+		return max;
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return true if the value is within the axis or half a mean step beyond its ends.
+	 */
+	boolean isInside(double value) {
+		final double d = ((max-min)/values.length)/2;
+		return !(value > max+d || value < min-d);
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return index of the nearest value of the axis, -1 if the axis is empty.
+	 */
+	int getNearest(double value) {
+
+		if (values.length == 0) return -1;
+		if (!monotonic) return scan(value);
+
+		// First index with a value not before the value, in the order of the axis
+		int low = 0, high = values.length;
+		while (low < high) {
+			final int mid = (low+high) >>> 1;
+			if (descending ? values[mid] > value : values[mid] < value) {
+				low = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		if (low == 0) return 0;
+		if (low == values.length) return first(values.length-1);
+
+		final double before = Math.abs(values[low-1]-value);
+		final double after  = Math.abs(values[low]-value);
+		return after < before ? low : first(low-1);
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return first index with the same value
+	 */
+	private int first(int index) {
+		final double v = values[index];
+		int low = 0, high = index;
+		while (low < high) {
+			final int mid = (low+high) >>> 1;
+			if (values[mid] == v) {
+				high = mid;
+			} else {
+				low = mid+1;
+			}
+		}
+		return low;
+	}
+
+	private int scan(double value) {
+		int    index = 0;
+		double best  = Double.NaN;
+		for (int i = 0; i < values.length; i++) {
+			final double d = Math.abs(values[i]-value);
+			if (Double.isNaN(best) || d < best) {
+				index = i;
+				best  = d;
+			}
+		}
+		return index;
+	}
+}
@@ -3,7 +3,6 @@ package org.dawnsci.mapping.ui.datamodel;
 import org.dawnsci.mapping.ui.MappingUtils;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.api.dataset.ILazyDataset;
-import org.eclipse.dawnsci.analysis.dataset.impl.Maths;
 
 public class MappedData implements MapObject{
 
@@ -14,6 +13,7 @@ public class MappedData implements MapObject{
 	protected MappedDataBlock parent;
 	private int transparency = -1;
 	private double[] range;
+	private AxisIndex[] axes;
 	
 	public MappedData(String name, IDataset map, MappedDataBlock parent, String path) {
 		this.name = name;
@@ -34,34 +34,46 @@ public class MappedData implements MapObject{
 		return map;
 	}
 	
-	private int[] getIndices(double x, double y) {
+	/**
+	 * The axes are read once for the map, they are looked up on every mouse move.
+	 * @return y and x axes
+	 */
+	private AxisIndex[] getAxisIndices() {
+		if (axes == null) {
+			IDataset[] ax = MappingUtils.getAxesFromMetadata(map);
+			axes = new AxisIndex[]{new AxisIndex(ax[0]), new AxisIndex(ax[1])};
+		}
+		return axes;
+	}
+	
+	public ILazyDataset getSpectrum(double x, double y) {
 		
-		IDataset[] ax = MappingUtils.getAxesFromMetadata(map);
+		AxisIndex[] ax = getAxisIndices();
 		
-		IDataset xx = ax[1];
-		IDataset yy = ax[0];
+		AxisIndex xx = ax[1];
+		AxisIndex yy = ax[0];
 		
-		double xMin = xx.min().doubleValue();
-		double xMax = xx.max().doubleValue();
+		if (!xx.isInside(x) || !yy.isInside(y)) return null;
 		
-		double yMin = yy.min().doubleValue();
-		double yMax = yy.max().doubleValue();
+		return parent.getSpectrum(xx.getNearest(x), yy.getNearest(y));
+	}
+	
+	/**
+	 * Reads the spectrum nearest to a point, through the spectrum cache.
+	 * @param x
+	 * @param y
+	 * @return the spectrum or null if the point is outside the map
+	 */
+	public IDataset getSpectrumData(double x, double y) {
 		
-		double xd = ((xMax-xMin)/xx.getSize())/2;
-		double yd = ((yMax-yMin)/yy.getSize())/2;
+		AxisIndex[] ax = getAxisIndices();
 		
-		if (x > xMax+xd || x < xMin-xd || y > yMax+yd || y < yMin-yd) return null;
+		AxisIndex xx = ax[1];
+		AxisIndex yy = ax[0];
 		
-		int xi = Maths.abs(Maths.subtract(xx, x)).argMin();
-		int yi = Maths.abs(Maths.subtract(yy, y)).argMin();
+		if (!xx.isInside(x) || !yy.isInside(y)) return null;
 		
-		return new int[]{xi,yi};
-	}
-	
-	public ILazyDataset getSpectrum(double x, double y) {
-		int[] indices = getIndices(x, y);
-		if (indices == null) return null;
-		return parent.getSpectrum(indices[0], indices[1]);
+		return parent.getSpectrumData(xx.getNearest(x), yy.getNearest(y));
 	}
 	
 	public MappedData makeNewMapWithParent(String name, IDataset ds) {
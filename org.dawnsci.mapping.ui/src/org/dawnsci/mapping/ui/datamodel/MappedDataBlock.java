@@ -1,10 +1,14 @@
 package org.dawnsci.mapping.ui.datamodel;
 
+import java.util.Arrays;
+
 import org.dawnsci.mapping.ui.MappingUtils;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.api.dataset.ILazyDataset;
 import org.eclipse.dawnsci.analysis.api.dataset.SliceND;
 import org.eclipse.dawnsci.analysis.api.metadata.AxesMetadata;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
 
 public class MappedDataBlock implements MapObject {
 
@@ -15,6 +19,12 @@ public class MappedDataBlock implements MapObject {
 	int xDim = 1;
 	private double[] range;
 	
+	/**
+	 * Number of spectra read ahead in the direction the mouse is moving.
+	 */
+	private static final int PREFETCH = 8;
+	private int lastX = -1, lastY = -1;
+	
 	public MappedDataBlock(String name, ILazyDataset dataset, int xDim, int yDim, String path) {
 		this.name = name;
 		this.dataset = dataset;
@@ -47,12 +57,109 @@ public class MappedDataBlock implements MapObject {
 		return dataset.getSliceView(slice);
 	}
 	
+	/**
+	 * Reads the spectrum at a point of the map, using the spectrum cache
+	 * and reading the next spectra in the direction of the last move
+	 * in the background.
+	 * 
+	 * @param x
+	 * @param y
+	 * @return the spectrum, whose shape, name and metadata may be changed by
+	 *         the caller but not its values, which are shared with the cache
+	 */
+	public IDataset getSpectrumData(int x, int y) {
+		
+		int[] shape = dataset.getShape();
+		int nx = shape[xDim];
+		int ny = shape[yDim];
+		
+		int[] last = move(x, y);
+		int dx = last[0] < 0 ? 0 : Integer.signum(x-last[0]);
+		int dy = last[1] < 0 ? 0 : Integer.signum(y-last[1]);
+		
+		SpectrumCache cache = SpectrumCache.getInstance();
+		IDataset s = cache.getSpectrum(this, y*nx+x);
+		
+		if (dx != 0 || dy != 0) {
+			int[] ahead = new int[PREFETCH];
+			int n = 0;
+			for (int k = 1; k <= PREFETCH; k++) {
+				int px = x+k*dx;
+				int py = y+k*dy;
+				if (px < 0 || px >= nx || py < 0 || py >= ny) break;
+				ahead[n++] = py*nx+px;
+			}
+			cache.prefetch(this, Arrays.copyOf(ahead, n));
+		}
+		
+		return s;
+	}
+	
+	/**
+	 * Reads a spectrum of data which needs remapping, using the spectrum cache
+	 * and reading the next spectra in the order of the last move in the background.
+	 * 
+	 * @param index of the point
+	 * @return the spectrum, whose shape, name and metadata may be changed by
+	 *         the caller but not its values, which are shared with the cache
+	 */
 	public IDataset getSpectrum(int index) {
 		
+		int size = dataset.getShape()[0];
+		
+		int last = move(index, 0)[0];
+		int di = last < 0 ? 0 : Integer.signum(index-last);
+		
+		SpectrumCache cache = SpectrumCache.getInstance();
+		IDataset s = cache.getSpectrum(this, index);
+		
+		if (di != 0) {
+			int[] ahead = new int[PREFETCH];
+			int n = 0;
+			for (int k = 1; k <= PREFETCH; k++) {
+				int pi = index+k*di;
+				if (pi < 0 || pi >= size) break;
+				ahead[n++] = pi;
+			}
+			cache.prefetch(this, Arrays.copyOf(ahead, n));
+		}
+		
+		return s;
+	}
+	
+	/**
+	 * Records the position asked for, spectra are asked for by the plot job
+	 * and from the UI thread.
+	 * @param x
+	 * @param y
+	 * @return the position asked for before, -1 if there was none
+	 */
+	private synchronized int[] move(int x, int y) {
+		int[] last = new int[]{lastX, lastY};
+		lastX = x;
+		lastY = y;
+		return last;
+	}
+	
+	/**
+	 * Reads a spectrum without the cache.
+	 * @param index y*width+x, or the index of the point if the data needs remapping
+	 * @return
+	 */
+	Dataset readSpectrum(int index) {
+		
 		SliceND slice = new SliceND(dataset.getShape());
-		slice.setSlice(0,index,index+1,1);
+		if (isRemappingRequired()) {
+			slice.setSlice(0,index,index+1,1);
+		} else {
+			int nx = dataset.getShape()[xDim];
+			int y = index/nx;
+			int x = index%nx;
+			slice.setSlice(yDim,y,y+1,1);
+			slice.setSlice(xDim,x,x+1,1);
+		}
 		
-		return dataset.getSlice(slice);
+		return DatasetUtils.convertToDataset(dataset.getSlice(slice));
 	}
 	
 	public ILazyDataset[] getXAxis() {
@@ -37,6 +37,9 @@ public class MappedFileManager {
 	
 	public void removeFile(MappedDataFile file) {
 		mappedDataArea.removeFile(file);
+		for (MappedDataBlock block : file.getDataBlockMap().values()) {
+			SpectrumCache.getInstance().clear(block);
+		}
 		plotManager.clearAll();
 		plotManager.updateLayers(null);
 		viewer.refresh();
@@ -16,8 +16,9 @@ import uk.ac.diamond.scisoft.analysis.diffraction.powder.XYImagePixelCache;
 public class ReMappedData extends MappedData {
 
 	private IDataset reMapped;
-	private IDataset lookup;
+	private Dataset lookup;
 	private int[] shape;
+	private AxisIndex[] axes;
 	
 	public ReMappedData(String name, IDataset map, MappedDataBlock parent, String path) {
 		super(name, map, parent, path);
@@ -77,6 +78,7 @@ public class ReMappedData extends MappedData {
 		reMapped = data.get(1);
 		reMapped.addMetadata(axm);
 		lookup = data.get(3);
+		axes = null;
 		
 	}
 	
@@ -89,28 +91,35 @@ public class ReMappedData extends MappedData {
 		updateRemappedData(shape);
 	}
 	
-	private int[] getIndices(double x, double y) {
-
-		IDataset[] ax = MappingUtils.getAxesFromMetadata(reMapped);
-
-		IDataset yy = ax[0];
-		IDataset xx = ax[1];
-
-		Dataset xd = Maths.subtract(xx, x);
-		Dataset yd = Maths.subtract(yy, y);
-		
-		int xi = Maths.abs(xd).argMin();
-		int yi = Maths.abs(yd).argMin();
-
-		return new int[]{yi,xi};
+	/**
+	 * The remapped axes are regular bins so are binary searched, the
+	 * lookup then gives the scattered point in each bin.
+	 * @return y and x axes of the remapped data
+	 */
+	private AxisIndex[] getAxisIndices() {
+		if (axes == null) {
+			IDataset[] ax = MappingUtils.getAxesFromMetadata(reMapped);
+			axes = new AxisIndex[]{new AxisIndex(ax[0]), new AxisIndex(ax[1])};
+		}
+		return axes;
 	}
 	
 	@Override
 	public IDataset getSpectrum(double x, double y) {
-		int[] indices = getIndices(x, y);
-		int index = lookup.getInt(indices);
+		
+		AxisIndex[] ax = getAxisIndices();
+
+		int yi = ax[0].getNearest(y);
+		int xi = ax[1].getNearest(x);
+		
+		int index = lookup.getInt(yi, xi);
 		if (index == -1) return null;
 		return parent.getSpectrum(index);
 	}
+	
+	@Override
+	public IDataset getSpectrumData(double x, double y) {
+		return getSpectrum(x, y);
+	}
 
 }
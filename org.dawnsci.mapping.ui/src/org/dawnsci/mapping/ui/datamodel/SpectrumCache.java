@@ -0,0 +1,340 @@
+package org.dawnsci.mapping.ui.datamodel;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dawnsci.analysis.dataset.impl.AbstractDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the spectra read from the blocks of mapped data, so that moving
+ * the mouse back over the map does not read the file again.
+ *
+ * The cache holds at most a fixed number of bytes, the least recently used
+ * spectra are dropped first. The size in megabytes may be set with the
+ * system property org.dawnsci.mapping.ui.spectrum.cache.size, the default
+ * is an eighth of the maximum heap up to 256MB.
+ *
+ * While the mouse moves, the next few spectra in the direction it is moving
+ * are read by a background job, so that they are usually in the cache by the
+ * time they are plotted. Only the latest prefetch is kept, one which has not
+ * finished when the mouse moves on is dropped.
+ *
+ * Spectra are keyed on the identity of the block, which is only weakly
+ * referenced, and the index of the spectrum in the block.
+ */
+public class SpectrumCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(SpectrumCache.class);
+
+	private static final String SIZE_PROPERTY = "org.dawnsci.mapping.ui.spectrum.cache.size";
+
+	private static SpectrumCache instance;
+
+	/**
+	 *
+	 * @return the cache shared by all blocks.
+	 */
+	public static synchronized SpectrumCache getInstance() {
+		if (instance==null) {
+			long defaultSize = Math.min(256L<<20, Runtime.getRuntime().maxMemory()/8);
+			instance = new SpectrumCache(Long.getLong(SIZE_PROPERTY, defaultSize>>20)<<20);
+		}
+		return instance;
+	}
+
+	private final Map<Key, Dataset> spectra;
+	private final long maxBytes;
+	private long       bytes;
+	private long       hits, misses, prefetched, evictions;
+	private long       requestTime, loadTime, loads; // nanoseconds
+
+	private final PrefetchJob prefetchJob;
+	private Prefetch          pending;
+
+	/**
+	 *
+	 * @param maxBytes largest number of bytes held by spectra.
+	 */
+	public SpectrumCache(long maxBytes) {
+		this.maxBytes    = maxBytes;
+		this.spectra     = new LinkedHashMap<Key, Dataset>(16, 0.75f, true); // Access order for LRU
+		this.prefetchJob = new PrefetchJob();
+	}
+
+	/**
+	 * Get a spectrum of a block, reading it if it is not in the cache.
+	 *
+	 * @param block
+	 * @param index of the spectrum in the block
+	 * @return a view of the cached spectrum. The caller may change its shape, name
+	 *         and metadata but not its values, which are shared with the cache.
+	 */
+	Dataset getSpectrum(MappedDataBlock block, int index) {
+
+		final long start = System.nanoTime();
+		final Key  key   = new Key(block, index);
+		Dataset spectrum = get(key, true);
+		if (spectrum==null) {
+			spectrum = load(key, block, index);
+		}
+		synchronized (this) {
+			requestTime += System.nanoTime()-start;
+		}
+		return spectrum.getView();
+	}
+
+	/**
+	 * Reads spectra of a block in the background, replacing any which have
+	 * not been read yet.
+	 *
+	 * @param block
+	 * @param indices in the order to read them
+	 */
+	void prefetch(MappedDataBlock block, int[] indices) {
+		if (indices.length==0) return;
+		synchronized (this) {
+			pending = new Prefetch(block, indices);
+		}
+		prefetchJob.schedule();
+	}
+
+	private Dataset load(Key key, MappedDataBlock block, int index) {
+		final long start = System.nanoTime();
+		final Dataset spectrum = block.readSpectrum(index);
+		final long time = System.nanoTime()-start;
+		synchronized (this) {
+			loadTime += time;
+			loads++;
+		}
+		put(key, spectrum);
+		return spectrum;
+	}
+
+	private synchronized Dataset get(Key key, boolean count) {
+		final Dataset spectrum = spectra.get(key);
+		if (count) {
+			if (spectrum!=null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		return spectrum;
+	}
+
+	private synchronized void put(Key key, Dataset spectrum) {
+
+		final Dataset old = spectra.put(key, spectrum);
+		if (old!=null) bytes -= getBytes(old);
+		bytes += getBytes(spectrum);
+
+		// Remove spectra of blocks which have been garbage collected
+		// and then the least recently used until we fit.
+		for (Iterator<Map.Entry<Key, Dataset>> it = spectra.entrySet().iterator(); it.hasNext(); ) {
+			final Map.Entry<Key, Dataset> entry = it.next();
+			if (entry.getKey().block.get()==null) {
+				bytes -= getBytes(entry.getValue());
+				it.remove();
+			}
+		}
+		for (Iterator<Map.Entry<Key, Dataset>> it = spectra.entrySet().iterator(); it.hasNext() && bytes>maxBytes; ) {
+			final Map.Entry<Key, Dataset> entry = it.next();
+			if (entry.getKey().equals(key)) continue; // Keep the one we just read
+			bytes -= getBytes(entry.getValue());
+			it.remove();
+			evictions++;
+		}
+	}
+
+	private synchronized Prefetch takePending() {
+		final Prefetch p = pending;
+		pending = null;
+		return p;
+	}
+
+	private synchronized boolean hasPending() {
+		return pending!=null;
+	}
+
+	/**
+	 * Removes all the spectra of a block.
+	 * @param block
+	 */
+	public synchronized void clear(MappedDataBlock block) {
+		if (block==null) return;
+		for (Iterator<Map.Entry<Key, Dataset>> it = spectra.entrySet().iterator(); it.hasNext(); ) {
+			final Map.Entry<Key, Dataset> entry = it.next();
+			final Object cached = entry.getKey().block.get();
+			if (cached==null || cached==block) {
+				bytes -= getBytes(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	private static long getBytes(Dataset set) {
+		return (long)set.getSize()*AbstractDataset.getItemsize(set.getDtype(), set.getElementsPerItem());
+	}
+
+	/**
+	 *
+	 * @return number of times a spectrum was found in the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 *
+	 * @return number of times a spectrum had to be read while it was waited for
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 *
+	 * @return number of spectra read in the background
+	 */
+	public synchronized long getPrefetched() {
+		return prefetched;
+	}
+
+	/**
+	 *
+	 * @return number of spectra dropped to keep within the size of the cache
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 *
+	 * @return fraction of requests found in the cache, NaN if there have been none
+	 */
+	public synchronized double getHitRate() {
+		final long requests = hits+misses;
+		return requests>0 ? (double)hits/requests : Double.NaN;
+	}
+
+	/**
+	 *
+	 * @return mean time in milliseconds to give a spectrum, cached or not
+	 */
+	public synchronized double getMeanRequestTime() {
+		final long requests = hits+misses;
+		return requests>0 ? requestTime/1e6/requests : Double.NaN;
+	}
+
+	/**
+	 *
+	 * @return mean time in milliseconds to read a spectrum from its block
+	 */
+	public synchronized double getMeanLoadTime() {
+		return loads>0 ? loadTime/1e6/loads : Double.NaN;
+	}
+
+	/**
+	 *
+	 * @return bytes currently held by the cache
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 *
+	 * @return largest number of bytes held by the cache
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SpectrumCache [spectra="+spectra.size()+", bytes="+bytes+", maxBytes="+maxBytes+
+				", hits="+hits+", misses="+misses+", prefetched="+prefetched+", evictions="+evictions+
+				", hitRate="+getHitRate()+", meanRequestMs="+getMeanRequestTime()+", meanLoadMs="+getMeanLoadTime()+"]";
+	}
+
+	private class PrefetchJob extends Job {
+
+		PrefetchJob() {
+			super("Prefetch spectra");
+			setSystem(true);
+			setPriority(Job.DECORATE);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+
+			Prefetch p;
+			while ((p = takePending())!=null) {
+				for (int index : p.indices) {
+					if (monitor.isCanceled()) return Status.CANCEL_STATUS;
+					if (hasPending()) break; // The mouse has moved on
+					final Key key = new Key(p.block, index);
+					if (get(key, false)!=null) continue;
+					try {
+						load(key, p.block, index);
+						synchronized (SpectrumCache.this) {
+							prefetched++;
+						}
+					} catch (Exception e) {
+						logger.debug("Could not prefetch spectrum "+index+" of "+p.block, e);
+						break;
+					}
+				}
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	private static final class Prefetch {
+
+		private final MappedDataBlock block;
+		private final int[]           indices;
+
+		Prefetch(MappedDataBlock block, int[] indices) {
+			this.block   = block;
+			this.indices = indices;
+		}
+	}
+
+	private static final class Key {
+
+		private final WeakReference<MappedDataBlock> block;
+		private final int                            index;
+		private final int                            hash;
+
+		Key(MappedDataBlock block, int index) {
+			this.block = new WeakReference<MappedDataBlock>(block);
+			this.index = index;
+			this.hash  = 31*System.identityHashCode(block) + index;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			final Key other = (Key) obj;
+			if (index!=other.index) return false;
+			final MappedDataBlock b = block.get();
+			return b!=null && b==other.block.get();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package org.dawnsci.plotting.draw2d.swtxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.nebula.visualization.xygraph.dataprovider.IDataProviderListener;
+import org.eclipse.nebula.visualization.xygraph.dataprovider.ISample;
+import org.eclipse.nebula.visualization.xygraph.dataprovider.Sample;
+import org.eclipse.nebula.visualization.xygraph.linearscale.Range;
+import org.junit.Test;
+
+/**
+ * Checks that a pyramid extended as points are appended gives the same
+ * min and max envelope as the raw data and as a pyramid made in full.
+ */
+public class DecimatingDataProviderTest {
+
+	private static final int SIZE   = 100000;
+	private static final int PIXELS = 500;
+
+	@Test
+	public void testAppend() {
+
+		final Random       random   = new Random(12345);
+		final ListProvider provider = new ListProvider(SIZE+20000);
+		provider.append(random, DecimatingDataProvider.MIN_POINTS+3);
+
+		final DecimatingDataProvider decimator = DecimatingDataProvider.create(provider);
+		assertNotNull(decimator);
+
+		// Batches which end part way through blocks, and single points
+		while (provider.getSize() < SIZE) {
+			provider.append(random, random.nextBoolean() ? 1 : 1+random.nextInt(3000));
+			assertTrue(decimator.append());
+			checkEnvelope(decimator, provider, 0, provider.getSize()-1);
+		}
+		for (int i = 0; i < 20; i++) {
+			final int lo = random.nextInt(provider.getSize());
+			final int hi = lo+random.nextInt(provider.getSize()-lo);
+			checkEnvelope(decimator, provider, lo, hi);
+		}
+
+		// The same points as a pyramid made in full
+		final DecimatingDataProvider full = DecimatingDataProvider.create(provider);
+		for (int pixels : new int[]{PIXELS, 37, 4000}) {
+			decimator.setRange(0, provider.getSize(), pixels);
+			full.setRange(0, provider.getSize(), pixels);
+			assertEquals(full.getSize(), decimator.getSize());
+			for (int i = 0; i < full.getSize(); i++) {
+				assertEquals(full.getSample(i).getXValue(), decimator.getSample(i).getXValue(), 0);
+				assertEquals(full.getSample(i).getYValue(), decimator.getSample(i).getYValue(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testAppendUnsorted() {
+
+		final ListProvider provider = new ListProvider(DecimatingDataProvider.MIN_POINTS+1);
+		provider.append(new Random(1), DecimatingDataProvider.MIN_POINTS);
+		final DecimatingDataProvider decimator = DecimatingDataProvider.create(provider);
+		assertNotNull(decimator);
+
+		provider.add(-1, 0);
+		assertFalse(decimator.append());
+	}
+
+	/**
+	 * Every point given must be a point of the data, in order, and the
+	 * smallest and largest y given must be those of the raw data in the
+	 * range, or beyond them for the blocks at the ends.
+	 */
+	private static void checkEnvelope(DecimatingDataProvider decimator, ListProvider provider, int lo, int hi) {
+
+		decimator.setRange(provider.x[lo], provider.x[hi], PIXELS);
+		assertTrue(decimator.getSize() <= 2*PIXELS+4);
+
+		double rawMin = Double.POSITIVE_INFINITY, rawMax = Double.NEGATIVE_INFINITY;
+		for (int i = lo; i <= hi; i++) {
+			if (Double.isNaN(provider.y[i])) continue;
+			rawMin = Math.min(rawMin, provider.y[i]);
+			rawMax = Math.max(rawMax, provider.y[i]);
+		}
+
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, lastX = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < decimator.getSize(); i++) {
+			final ISample sample = decimator.getSample(i);
+			final int index = Arrays.binarySearch(provider.x, 0, provider.size, sample.getXValue());
+			assertTrue(index >= 0);
+			assertEquals(provider.y[index], sample.getYValue(), 0);
+			assertTrue(sample.getXValue() > lastX);
+			lastX = sample.getXValue();
+			if (Double.isNaN(sample.getYValue())) continue;
+			min = Math.min(min, sample.getYValue());
+			max = Math.max(max, sample.getYValue());
+		}
+		if (lo==0 && hi==provider.getSize()-1) {
+			assertEquals(rawMin, min, 0);
+			assertEquals(rawMax, max, 0);
+		} else {
+			assertTrue(min <= rawMin);
+			assertTrue(max >= rawMax);
+		}
+	}
+
+	/**
+	 * Points with x the index, in arrays which are only added to.
+	 */
+	private static class ListProvider implements IAppendableDataProvider {
+
+		private final double[] x, y;
+		private int size;
+
+		ListProvider(int capacity) {
+			x = new double[capacity];
+			y = new double[capacity];
+		}
+
+		void add(double xValue, double yValue) {
+			x[size] = xValue;
+			y[size] = yValue;
+			size++;
+		}
+
+		/**
+		 * A random walk with spikes and the odd NaN.
+		 */
+		void append(Random random, int count) {
+			for (int i = 0; i < count; i++) {
+				double value = size>0 && !Double.isNaN(y[size-1]) ? y[size-1] : 0;
+				value += random.nextGaussian();
+				if (random.nextInt(1000)==0) value += 100*random.nextGaussian();
+				add(size, random.nextInt(5000)==0 ? Double.NaN : value);
+			}
+		}
+
+		@Override
+		public long getReplaceCount() {
+			return 0;
+		}
+
+		@Override
+		public int getSize() {
+			return size;
+		}
+
+		@Override
+		public ISample getSample(int index) {
+			if (index<0 || index>=size) return null;
+			return new Sample(x[index], y[index]);
+		}
+
+		@Override
+		public Range getXDataMinMax() {
+			return new Range(0, size);
+		}
+
+		@Override
+		public Range getYDataMinMax() {
+			return new Range(0, 1);
+		}
+
+		@Override
+		public boolean isChronological() {
+			return false;
+		}
+
+		@Override
+		public void addDataProviderListener(IDataProviderListener listener) {
+		}
+
+		@Override
+		public boolean removeDataProviderListener(IDataProviderListener listener) {
+			return false;
+		}
+
+		@Override
+		public boolean hasErrors() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.draw2d.swtxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.nebula.visualization.xygraph.dataprovider.IDataProvider;
+import org.eclipse.nebula.visualization.xygraph.dataprovider.IDataProviderListener;
+import org.eclipse.nebula.visualization.xygraph.dataprovider.ISample;
+import org.eclipse.nebula.visualization.xygraph.linearscale.Range;
+
+/**
+ * A view of a large data provider with x in increasing order which gives
+ * only the points needed to draw the visible x range.
+ *
+ * A pyramid of blocks is made once for the data. Each level holds the index
+ * of the smallest and largest y in blocks of 8, 16, 32... points. For the
+ * visible range the finest level with no more blocks than there are pixel
+ * columns is used and each block gives its min and max point, in order, so
+ * spikes are not lost. When few enough points are visible, all of them are
+ * given. Either way only about two points per pixel column are painted.
+ *
+ * Points appended to the source only change the last block of each level,
+ * so the pyramid is extended for them, see append(). It must be made again
+ * if other points change.
+ */
+class DecimatingDataProvider implements IDataProvider {
+
+	/**
+	 * Providers with fewer points are painted directly.
+	 */
+	static final int MIN_POINTS = 1 << 16;
+
+	private static final int BASE_BLOCK = 8;
+	private static final int MIN_BLOCKS = 256;
+
+	private final IDataProvider  source;
+	private int                  size;
+	private final List<int[]>    levels = new ArrayList<int[]>(); // Level k has blocks of BASE_BLOCK<<k, min index then max index
+	private final List<double[]> values = new ArrayList<double[]>(); // The y of those indices, NaN for blocks of NaN
+
+	// The current view, either a range of points or indices into the source.
+	private int   start, count;
+	private int[] indices;
+
+	private DecimatingDataProvider(IDataProvider source) {
+		this.source = source;
+	}
+
+	/**
+	 * Reads the source once to make the pyramid.
+	 *
+	 * @param source
+	 * @return null if the source is too small or its x values are not in increasing order.
+	 */
+	static DecimatingDataProvider create(IDataProvider source) {
+
+		final int size = source.getSize();
+		if (size < MIN_POINTS) return null;
+
+		final DecimatingDataProvider decimator = new DecimatingDataProvider(source);
+		if (!decimator.extend(size)) return null;
+		decimator.count = size;
+		return decimator;
+	}
+
+	/**
+	 * Extends the pyramid for the points appended to the source since it was
+	 * made, reading only those and the block they start in. The points before
+	 * must not have changed.
+	 *
+	 * @return false if the pyramid can no longer be used, because the source
+	 *         has fewer points or the x values are no longer in increasing order.
+	 */
+	boolean append() {
+		final int newSize = source.getSize();
+		if (newSize < size) return false;
+		if (newSize== size) return true;
+		return extend(newSize);
+	}
+
+	/**
+	 * Makes again the blocks of each level from the one holding the point at
+	 * the current size, which may have been only partly filled, up to the new
+	 * size, and adds coarser levels as needed.
+	 */
+	private boolean extend(int newSize) {
+
+		// The finest level is read from the source
+		int from   = size/BASE_BLOCK;
+		int blocks = (newSize+BASE_BLOCK-1)/BASE_BLOCK;
+		int[]    level = ensureLevel(0, blocks);
+		double[] value = values.get(0);
+
+		double lastX = Double.NEGATIVE_INFINITY;
+		if (from > 0) {
+			final ISample before = source.getSample(from*BASE_BLOCK-1);
+			if (before==null) return false;
+			lastX = before.getXValue();
+		}
+		for (int b = from; b < blocks; b++) {
+			int    imin = -1, imax = -1;
+			double ymin = Double.NaN, ymax = Double.NaN;
+			final int end = Math.min(newSize, (b+1)*BASE_BLOCK);
+			for (int i = b*BASE_BLOCK; i < end; i++) {
+				final ISample sample = source.getSample(i);
+				if (sample==null) return false;
+				final double x = sample.getXValue();
+				if (!(x >= lastX)) return false; // Not sorted or NaN
+				lastX = x;
+
+				final double y = sample.getYValue();
+				if (Double.isNaN(y)) continue;
+				if (imin<0 || y<ymin) { imin = i; ymin = y; }
+				if (imax<0 || y>ymax) { imax = i; ymax = y; }
+			}
+			// Blocks of NaN give their first point so that the line is broken
+			level[2*b]   = imin<0 ? b*BASE_BLOCK : imin;
+			level[2*b+1] = imax<0 ? b*BASE_BLOCK : imax;
+			value[2*b]   = ymin;
+			value[2*b+1] = ymax;
+		}
+
+		// Each coarser level is made from the one before
+		for (int k = 1; blocks > MIN_BLOCKS; k++) {
+			final int      coarse = (blocks+1)/2;
+			from = k < levels.size() ? from/2 : 0; // A new level is made in full
+			final int[]    next = ensureLevel(k, coarse);
+			final double[] nval = values.get(k);
+			for (int b = from; b < coarse; b++) {
+				final int l = 2*b, r = Math.min(2*b+1, blocks-1);
+				final boolean minLeft = !(Double.isNaN(value[2*l])   || value[2*r]   < value[2*l]);
+				final boolean maxLeft = !(Double.isNaN(value[2*l+1]) || value[2*r+1] > value[2*l+1]);
+				next[2*b]   = level[2*(minLeft ? l : r)];
+				nval[2*b]   = value[2*(minLeft ? l : r)];
+				next[2*b+1] = level[2*(maxLeft ? l : r)+1];
+				nval[2*b+1] = value[2*(maxLeft ? l : r)+1];
+			}
+			level  = next;
+			value  = nval;
+			blocks = coarse;
+		}
+
+		this.size = newSize;
+		return true;
+	}
+
+	/**
+	 * The arrays of a level, grown by doubling to hold the blocks.
+	 */
+	private int[] ensureLevel(int k, int blocks) {
+		if (k==levels.size()) {
+			levels.add(new int[2*blocks]);
+			values.add(new double[2*blocks]);
+		} else if (levels.get(k).length < 2*blocks) {
+			final int length = Math.max(2*blocks, 2*levels.get(k).length);
+			levels.set(k, Arrays.copyOf(levels.get(k), length));
+			values.set(k, Arrays.copyOf(values.get(k), length));
+		}
+		return levels.get(k);
+	}
+
+	/**
+	 * @param k
+	 * @return number of blocks in use at level k
+	 */
+	private int getBlocks(int k) {
+		final int block = BASE_BLOCK<<k;
+		return (size+block-1)/block;
+	}
+
+	IDataProvider getSource() {
+		return source;
+	}
+
+	/**
+	 * Chooses the points given for an x range.
+	 *
+	 * @param lower
+	 * @param upper
+	 * @param pixels width of the range on the screen
+	 */
+	void setRange(double lower, double upper, int pixels) {
+
+		// One point either side so that lines run off the edge.
+		final int lo = Math.max(0,      findIndex(lower)-1);
+		final int hi = Math.min(size-1, findIndex(upper)+1);
+		final int visible = hi-lo+1;
+
+		if (visible <= 2*pixels) {
+			this.start   = lo;
+			this.count   = Math.max(0, visible);
+			this.indices = null;
+			return;
+		}
+
+		int k = 0;
+		while (k < levels.size()-1 && visible/(BASE_BLOCK<<k) > pixels) k++;
+		final int   block = BASE_BLOCK<<k;
+		final int[] level = levels.get(k);
+
+		final int first = lo/block, last = Math.min(hi/block, getBlocks(k)-1);
+		final int[] ind = new int[2*(last-first+1)];
+		int n = 0;
+		for (int b = first; b <= last; b++) {
+			final int imin = level[2*b], imax = level[2*b+1];
+			if (imin==imax) {
+				ind[n++] = imin;
+			} else {
+				ind[n++] = Math.min(imin, imax);
+				ind[n++] = Math.max(imin, imax);
+			}
+		}
+		this.indices = ind;
+		this.count   = n;
+	}
+
+	/**
+	 * @param x
+	 * @return index of the last point with x less than or equal to x, -1 if there are none.
+	 */
+	private int findIndex(double x) {
+		int low = 0, high = size-1;
+		while (low <= high) {
+			final int mid = (low+high) >>> 1;
+			if (source.getSample(mid).getXValue() <= x) {
+				low = mid+1;
+			} else {
+				high = mid-1;
+			}
+		}
+		return high;
+	}
+
+	@Override
+	public int getSize() {
+		return count;
+	}
+
+	@Override
+	public ISample getSample(int index) {
+		if (index<0 || index>=count) return null;
+		return source.getSample(indices!=null ? indices[index] : start+index);
+	}
+
+	@Override
+	public Range getXDataMinMax() {
+		return source.getXDataMinMax();
+	}
+
+	@Override
+	public Range getYDataMinMax() {
+		return source.getYDataMinMax();
+	}
+
+	@Override
+	public boolean isChronological() {
+		return source.isChronological();
+	}
+
+	@Override
+	public void addDataProviderListener(IDataProviderListener listener) {
+		source.addDataProviderListener(listener);
+	}
+
+	@Override
+	public boolean removeDataProviderListener(IDataProviderListener listener) {
+		return source.removeDataProviderListener(listener);
+	}
+
+	@Override
+	public boolean hasErrors() {
+		return source.hasErrors();
+	}
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.draw2d.swtxy;
+
+import org.eclipse.nebula.visualization.xygraph.dataprovider.IDataProvider;
+
+/**
+ * A data provider which may have points appended to its end, so that a
+ * LineTrace can extend what it has made from the earlier points rather
+ * than make it again.
+ */
+public interface IAppendableDataProvider extends IDataProvider {
+
+	/**
+	 * The count goes up whenever points are changed other than by being
+	 * appended to the end, for instance when the data is set or the oldest
+	 * points are removed to keep a capacity.
+	 *
+	 * @return number of times the points have been replaced
+	 */
+	long getReplaceCount();
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.draw2d.swtxy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.plotting.api.histogram.IImageService;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean.ImageOrigin;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+/**
+ * Colour maps a downsampled image in square tiles, only when a tile is
+ * first needed to draw the visible region. This is used instead of mapping
+ * the whole frame when the plot is zoomed in, so that the work done is in
+ * proportion to the size of the screen rather than the size of the image.
+ *
+ * Tiles are in image data coordinates, i.e. after the image origin has been
+ * applied, and the ones mapped are kept so that panning reuses them. A new
+ * cache must be made whenever the image, bin, palette or histogram changes.
+ */
+class ImageTileCache {
+
+	/**
+	 * Width and height of each tile in image data pixels.
+	 */
+	static final int TILE_SIZE = 256;
+
+	/**
+	 * Extra pixels mapped around the visible region so that small pans do not map.
+	 */
+	private static final int MARGIN    = 32;
+
+	/**
+	 * 16M pixels of 8-bit image data.
+	 */
+	private static final int MAX_TILES = 256;
+
+	private final Dataset          image;
+	private final Dataset          mask;
+	private final ImageServiceBean bean;
+	private final IImageService    service;
+	private final ImageOrigin      origin;
+	private final int              rows, cols;
+	private final Map<Long, ImageData> tiles;
+
+	/**
+	 *
+	 * @param image the downsampled image
+	 * @param mask the downsampled mask or null
+	 * @param bean with the palette, histogram and origin to map with, it is copied.
+	 * @param service
+	 */
+	ImageTileCache(Dataset image, Dataset mask, ImageServiceBean bean, IImageService service) {
+		this.image   = image;
+		this.mask    = mask;
+		this.bean    = bean.clone();
+		this.bean.setMonitor(null); // Tiles are mapped after the job which made the cache
+		this.service = service;
+		this.origin  = bean.getOrigin()!=null ? bean.getOrigin() : ImageOrigin.TOP_LEFT;
+		this.rows    = image.getShape()[0];
+		this.cols    = image.getShape()[1];
+		this.tiles   = new LinkedHashMap<Long, ImageData>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, ImageData> eldest) {
+				return size() > MAX_TILES;
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @return width of the whole image data
+	 */
+	int getWidth() {
+		return origin==ImageOrigin.TOP_LEFT || origin==ImageOrigin.BOTTOM_RIGHT ? cols : rows;
+	}
+
+	/**
+	 *
+	 * @return height of the whole image data
+	 */
+	int getHeight() {
+		return origin==ImageOrigin.TOP_LEFT || origin==ImageOrigin.BOTTOM_RIGHT ? rows : cols;
+	}
+
+	/**
+	 * The same pixels as getPixels(...) would give on the image data of the
+	 * whole frame. Tiles around the region are mapped as well so that
+	 * panning a little does not need any mapping.
+	 *
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @return null if a tile could not be mapped.
+	 */
+	ImageData getImageData(int x, int y, int width, int height) {
+
+		final int W = getWidth(), H = getHeight();
+		final int tx0 = Math.max(0, x-MARGIN) / TILE_SIZE;
+		final int ty0 = Math.max(0, y-MARGIN) / TILE_SIZE;
+		final int tx1 = (Math.min(W, x+width+MARGIN)-1)  / TILE_SIZE;
+		final int ty1 = (Math.min(H, y+height+MARGIN)-1) / TILE_SIZE;
+
+		ImageData data   = null;
+		byte[]    bytes  = null;
+		int[]     pixels = null;
+		for (int ty = ty0; ty <= ty1; ty++) {
+			for (int tx = tx0; tx <= tx1; tx++) {
+
+				final ImageData tile = getTile(tx, ty);
+				if (tile==null) return null;
+
+				// Part of this tile in the region
+				final int xs = Math.max(x, tx*TILE_SIZE), xe = Math.min(x+width,  tx*TILE_SIZE+tile.width);
+				final int ys = Math.max(y, ty*TILE_SIZE), ye = Math.min(y+height, ty*TILE_SIZE+tile.height);
+				if (xs>=xe || ys>=ye) continue; // In the margin only
+
+				if (data==null) {
+					if (tile.depth <= 8) {
+						bytes = new byte[width*height];
+					} else {
+						pixels = new int[width];
+						data = new ImageData(width, height, 24, new PaletteData(0xff0000, 0x00ff00, 0x0000ff));
+					}
+				}
+				for (int py = ys; py < ye; py++) {
+					if (bytes!=null) {
+						tile.getPixels(xs-tx*TILE_SIZE, py-ty*TILE_SIZE, xe-xs, bytes, (py-y)*width+(xs-x));
+					} else {
+						tile.getPixels(xs-tx*TILE_SIZE, py-ty*TILE_SIZE, xe-xs, pixels, 0);
+						data.setPixels(xs-x, py-y, xe-xs, pixels, 0);
+					}
+				}
+				if (bytes!=null && data==null) {
+					data = new ImageData(width, height, tile.depth, tile.palette, 1, bytes);
+				}
+			}
+		}
+		return data;
+	}
+
+	private ImageData getTile(int tx, int ty) {
+
+		final Long key = ((long)ty << 32) | tx;
+		ImageData tile = tiles.get(key);
+		if (tile!=null) return tile;
+
+		final int x0 = tx*TILE_SIZE, w = Math.min(TILE_SIZE, getWidth()-x0);
+		final int y0 = ty*TILE_SIZE, h = Math.min(TILE_SIZE, getHeight()-y0);
+
+		// The rows and columns of the image which are drawn in the tile
+		final int[] start, stop;
+		switch (origin) {
+		case BOTTOM_RIGHT:
+			start = new int[]{rows-y0-h, cols-x0-w};
+			stop  = new int[]{rows-y0,   cols-x0};
+			break;
+		case BOTTOM_LEFT:
+			start = new int[]{x0,   cols-y0-h};
+			stop  = new int[]{x0+w, cols-y0};
+			break;
+		case TOP_RIGHT:
+			start = new int[]{rows-x0-w, y0};
+			stop  = new int[]{rows-x0,   y0+h};
+			break;
+		default:
+			start = new int[]{y0,   x0};
+			stop  = new int[]{y0+h, x0+w};
+			break;
+		}
+
+		final ImageServiceBean tileBean = bean.clone();
+		tileBean.setImage(image.getSlice(start, stop, null));
+		tileBean.setMask(mask!=null ? mask.getSlice(start, stop, null) : null);
+		tile = service.getImageData(tileBean);
+		if (tile!=null) tiles.put(key, tile);
+		return tile;
+	}
+}
@@ -8,16 +8,13 @@
  */
 package org.dawnsci.plotting.draw2d.swtxy;
 
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 
 import org.dawb.common.ui.macro.TraceMacroEvent;
+import org.dawnsci.plotting.draw2d.swtxy.util.MipMapCache;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.dawnsci.analysis.api.dataset.DataEvent;
@@ -76,8 +73,6 @@ import org.eclipse.ui.preferences.ScopedPreferenceStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import uk.ac.diamond.scisoft.analysis.dataset.function.Downsample;
-
 /**
  * A trace which draws an image to the plot.
  * 
@@ -91,6 +86,15 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 	private static final int MINIMUM_ZOOM_SIZE  = 4;
 	private static final int MINIMUM_LABEL_SIZE = 10;
 
+	/**
+	 * Set to false to always colour map the whole downsampled image, even when zoomed in.
+	 */
+	private static final String VIEWPORT_PROPERTY = "org.dawnsci.plotting.draw2d.viewport.rendering";
+	/**
+	 * Downsampled images smaller than this are always mapped whole.
+	 */
+	private static final int VIEWPORT_MIN_SIZE = 1 << 20;
+
 	private String           name;
 	private String           dataName;
 	private String           paletteName;
@@ -291,7 +295,7 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 		if (!imageCreationAllowed) return false;
 		
 		boolean requireImageGeneration = scaledData==null || 
-				                         scaledData.getDownsampledImageData() == null ||
+				                         !scaledData.hasImageData() ||
 				                         rescaleType==ImageScaleType.FORCE_REIMAGE || 
 				                         rescaleType==ImageScaleType.REHISTOGRAM; // We know that it is needed
 		
@@ -322,7 +326,7 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 		}
 		
 		if (monitor!=null && monitor.isCanceled()) return false;
-		if (scaledData.getDownsampledImageData() == null) return false;
+		if (!scaledData.hasImageData()) return false;
 
 		try {
 			
@@ -331,7 +335,8 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 			
 			if (scaledData != null) scaledData.disposeImage();
 			
-			ImageData imageData = scaledData.getDownsampledImageData();
+			ImageData      imageData = scaledData.getDownsampledImageData();
+			ImageTileCache tiles     = scaledData.getImageTiles();
 			if (imageData!=null && imageData.width==bounds.width && imageData.height==bounds.height) { 
 				// No slice, faster
 				if (monitor!=null && monitor.isCanceled()) return false;
@@ -364,8 +369,8 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 				double minY = yRange.getLower()/currentDownSampleBin;
 				double maxX = xRange.getUpper()/currentDownSampleBin;
 				double maxY = yRange.getUpper()/currentDownSampleBin;
-				int xSize = imageData.width;
-				int ySize = imageData.height;
+				int xSize = tiles!=null ? tiles.getWidth()  : imageData.width;
+				int ySize = tiles!=null ? tiles.getHeight() : imageData.height;
 				
 				// check as getLower and getUpper don't work as expected
 				if(maxX < minX){
@@ -398,11 +403,11 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 				
 				// Force a minimum size on the system
 				if (fullWidth <= MINIMUM_ZOOM_SIZE) {
-					if (fullWidth > imageData.width) fullWidth = MINIMUM_ZOOM_SIZE;
+					if (fullWidth > xSize) fullWidth = MINIMUM_ZOOM_SIZE;
 					isMaximumZoom = true;
 				}
 				if (fullHeight <= MINIMUM_ZOOM_SIZE) {
-					if (fullHeight > imageData.height) fullHeight = MINIMUM_ZOOM_SIZE;
+					if (fullHeight > ySize) fullHeight = MINIMUM_ZOOM_SIZE;
 					isMaximumZoom = true;
 				}
 				if (fullWidth <= MINIMUM_LABEL_SIZE && fullHeight <= MINIMUM_LABEL_SIZE) {
@@ -449,7 +454,10 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 				}
 				// Slice the data.
 				// Pixel slice on downsampled data = fast!
-				if (imageData.depth <= 8) {
+				if (tiles != null) {
+					// Only the tiles under the zoom area are mapped
+					data = tiles.getImageData(xPix, yPix, fullWidth, fullHeight);
+				} else if (imageData.depth <= 8) {
 					// NOTE Assumes 8-bit images
 					final int size   = fullWidth*fullHeight;
 					final byte[] pixels = new byte[size];
@@ -851,8 +859,16 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 			}
 							
 			this.imageServiceBean.setAlpha(getAlpha());
-			ImageData imageData   = service.getImageData(imageServiceBean);
-			scaledData.setDownsampledImageData(imageData);
+			if (isViewportRendering(reducedFullImage)) {
+				// Zoomed in, the visible tiles are mapped when the scaled image is created.
+				final ImageTileCache tiles = new ImageTileCache((Dataset)reducedFullImage, (Dataset)imageServiceBean.getMask(), imageServiceBean, service);
+				scaledData.setImageTiles(tiles);
+				scaledData.setDownsampledImageData(null);
+			} else {
+				ImageData imageData   = service.getImageData(imageServiceBean);
+				scaledData.setImageTiles(null);
+				scaledData.setDownsampledImageData(imageData);
+			}
 			
 			try {
 				ImageServiceBean intensityScaleBean = imageServiceBean.clone();
@@ -888,8 +904,6 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 				(int) Math.ceil(xr.getUpper()), (int) Math.ceil(yr.getUpper())};
 	}
 
-	private Map<Integer, Reference<Object>> mipMap;
-	private Map<Integer, Reference<Object>> maskMap;
 	private Collection<IDownSampleListener> downsampleListeners;
 	
 	private IDataset getDownsampled(Dataset image) {
@@ -898,7 +912,8 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
  	}
 	
 	/**
-	 * Uses caches based on bin, not DownsampleMode.
+	 * Uses the shared MipMapCache, which keeps the levels of each image and mask
+	 * until they are cleared or memory is needed for other levels.
 	 * @param image
 	 * @param mode
 	 * @return
@@ -918,33 +933,7 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 				return image; // nothing to downsample
 			}
 			
-			if (image.getDtype()!=Dataset.BOOL) {
-				if (mipMap!=null && mipMap.containsKey(bin) && mipMap.get(bin).get()!=null) {
-			        logger.trace("Downsample bin used, "+bin);
-					return (Dataset)mipMap.get(bin).get();
-				}
-			} else {
-				if (maskMap!=null && maskMap.containsKey(bin) && maskMap.get(bin).get()!=null) {
-			        logger.trace("Downsample mask bin used, "+bin);
-					return (Dataset)maskMap.get(bin).get();
-				}
-			}
-			
-			final Downsample downSampler = new Downsample(mode, new int[]{bin,bin});
-			List<? extends IDataset>   sets = downSampler.value(image);
-			final IDataset set = sets.get(0);
-			
-			if (image.getDtype()!=Dataset.BOOL) {
-				if (mipMap==null) mipMap = new HashMap<Integer,Reference<Object>>(3);
-				mipMap.put(bin, new SoftReference<Object>(set));
-		        logger.trace("Downsample bin created, "+bin);
-			} else {
-				if (maskMap==null) maskMap = new HashMap<Integer,Reference<Object>>(3);
-				maskMap.put(bin, new SoftReference<Object>(set));
-		        logger.trace("Downsample mask bin created, "+bin);
-			}
-	      
-			return set;
+			return MipMapCache.getInstance().getDownsampled(image, mode, bin);
 			
         } finally {
         	if (newBin) { // We fire a downsample event.
@@ -958,6 +947,33 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 		for (IDownSampleListener l : downsampleListeners) l.downSampleChanged(evt);
 	}
 
+	/**
+	 * True if so little of the downsampled image is visible that it is
+	 * worth mapping it in tiles as they are drawn rather than all at once.
+	 * 
+	 * @param reduced the downsampled image
+	 * @return
+	 */
+	private boolean isViewportRendering(IDataset reduced) {
+		
+		if (!Boolean.parseBoolean(System.getProperty(VIEWPORT_PROPERTY, "true"))) return false;
+		
+		// Only plain 8-bit images are drawn in the image origin by the service.
+		if (globalRange!=null || reduced instanceof RGBDataset)    return false;
+		if (((Dataset)reduced).isComplex())                        return false;
+		if (imageServiceBean.getFunctionObject()!=null)            return false;
+		// Each tile must be mapped with the same histogram.
+		if (imageServiceBean.getMin()==null || imageServiceBean.getMax()==null) return false;
+		
+		final int[] shape = reduced.getShape();
+		if (shape.length!=2) return false;
+		final double size = (double)shape[0]*shape[1];
+		if (size < VIEWPORT_MIN_SIZE) return false;
+		
+		final double visible = (getSpan(getXAxis())/currentDownSampleBin) * (getSpan(getYAxis())/currentDownSampleBin);
+		return visible < size/4;
+	}
+
 	@Override
 	public int getBin() {
 		return currentDownSampleBin;
@@ -1084,15 +1100,20 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 		return getXAxis().isKeepAspect() && getYAxis().isKeepAspect();
 	}
 	
+	private void clearDownsampled() {
+		MipMapCache.getInstance().clear(image);
+		MipMapCache.getInstance().clear(fullMask);
+	}
+
 	public void sleep() {
-		if (mipMap!=null)           mipMap.clear();
-		if (maskMap!=null)          maskMap.clear();
+		clearDownsampled();
+		if (scaledData!=null)       scaledData.setImageTiles(null);
 		if (scaledData!=null)       scaledData.disposeImage();
 	}
 	public void remove() {
 		
-		if (mipMap!=null)           mipMap.clear();
-		if (maskMap!=null)          maskMap.clear();
+		clearDownsampled();
+		if (scaledData!=null)       scaledData.setImageTiles(null);
 		if (scaledData!=null)       scaledData.disposeImage();
 		
 		if (paletteListeners!=null) paletteListeners.clear();
@@ -1285,7 +1306,7 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 	}
 
 	public void setImageOrigin(ImageOrigin imageOrigin) {
-		if (this.mipMap!=null) mipMap.clear();
+		MipMapCache.getInstance().clear(image);
 		imageServiceBean.setOrigin(imageOrigin);
 		createAxisBounds();
 		performAutoscale();
@@ -1411,8 +1432,10 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 		// method, we allow for the fact that the dataset is in a different orientation to 
 		// what is plotted.
 		if (image==null) return false;
+		// The data may have changed even if it is the same dataset
+		MipMapCache.getInstance().clear(this.image);
 		this.image = (Dataset)im;
-		if (this.mipMap!=null)  mipMap.clear();
+		MipMapCache.getInstance().clear(this.image);
 		if (scaledData!=null) scaledData.disposeImage();
 		
 		if (imageServiceBean==null) imageServiceBean = new ImageServiceBean();
@@ -1614,8 +1637,7 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 	public void setDownsampleType(DownsampleType type) {
 		
 		DownsampleType orig = this.downsampleType;
-		if (this.mipMap!=null)  mipMap.clear();
-		if (this.maskMap!=null) maskMap.clear();
+		clearDownsampled();
 		this.downsampleType = type;
 //		createScaledImage(ImageScaleType.FORCE_REIMAGE, null);
 		updateImageDirty(ImageScaleType.FORCE_REIMAGE);
@@ -1830,7 +1852,7 @@ public class ImageTrace extends Figure implements IImageTrace, IAxisListener, IT
 
 			mask = maskDataset;
 		}
-		if (maskMap!=null) maskMap.clear();
+		MipMapCache.getInstance().clear(fullMask);
 		fullMask = (Dataset)mask;
 		remask();
 	}
@@ -13,15 +13,20 @@ import org.eclipse.dawnsci.plotting.api.preferences.PlottingConstants;
 import org.eclipse.dawnsci.plotting.api.trace.ITrace;
 import org.eclipse.dawnsci.plotting.api.trace.ITraceContainer;
 import org.eclipse.draw2d.ColorConstants;
+import org.eclipse.draw2d.Graphics;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.nebula.visualization.xygraph.dataprovider.IDataProvider;
 import org.eclipse.nebula.visualization.xygraph.figures.Axis;
 import org.eclipse.nebula.visualization.xygraph.figures.Trace;
+import org.eclipse.nebula.visualization.xygraph.linearscale.Range;
 import org.eclipse.ui.preferences.ScopedPreferenceStore;
 
 /**
  * Trace with drawPolyline(...) for faster rendering.
  * 
+ * Large traces are painted through a DecimatingDataProvider so that only
+ * about two points per pixel column of the visible range are drawn.
+ * 
  * @author Matthew Gerring
  *
  */
@@ -44,6 +49,80 @@ public class LineTrace extends Trace implements ITraceContainer {
 		}
 	}
 	
+	private DecimatingDataProvider decimator;
+	private IDataProvider          decimatedSource; // Set even if the source cannot be decimated
+	private long                   decimatedCount;  // Replace count of the source when the pyramid was made
+	
+	@Override
+	protected void paintFigure(Graphics graphics) {
+		
+		final IDataProvider full = traceDataProvider;
+		final IDataProvider view = getDecimated(full);
+		if (view==null) {
+			super.paintFigure(graphics);
+			return;
+		}
+		try {
+			traceDataProvider = view;
+			super.paintFigure(graphics);
+		} finally {
+			traceDataProvider = full;
+		}
+	}
+	
+	/**
+	 * The view of the data provider with only the points needed to paint
+	 * the current x range. The pyramid is made the first time it is needed
+	 * after the data changes, or extended if points were only appended.
+	 * 
+	 * @param full
+	 * @return null if all the points should be painted.
+	 */
+	private IDataProvider getDecimated(IDataProvider full) {
+		
+		if (full==null || xAxis==null || !xAxis.isHorizontal()) return null;
+		if (full.getSize() < DecimatingDataProvider.MIN_POINTS)  return null;
+		
+		if (decimatedSource!=full || getReplaceCount(full)!=decimatedCount) {
+			decimatedCount  = getReplaceCount(full);
+			decimator       = DecimatingDataProvider.create(full);
+			decimatedSource = full;
+		} else if (decimator!=null && !decimator.append()) {
+			decimator       = null;
+		}
+		if (decimator==null) return null;
+		
+		final Range range = xAxis.getRange();
+		decimator.setRange(Math.min(range.getLower(), range.getUpper()), 
+				           Math.max(range.getLower(), range.getUpper()), 
+				           Math.max(1, xAxis.getBounds().width));
+		return decimator;
+	}
+	
+	@Override
+	public void setDataProvider(IDataProvider dataProvider) {
+		clearDecimated();
+		super.setDataProvider(dataProvider);
+	}
+	
+	private static long getReplaceCount(IDataProvider dataProvider) {
+		return dataProvider instanceof IAppendableDataProvider
+			   ? ((IAppendableDataProvider)dataProvider).getReplaceCount()
+			   : -1;
+	}
+	
+	@Override
+	public void dataChanged(IDataProvider dataProvider) {
+		// Appended points are added to the pyramid when it is next painted
+		if (!(dataProvider instanceof IAppendableDataProvider)) clearDecimated();
+		super.dataChanged(dataProvider);
+	}
+	
+	private void clearDecimated() {
+		decimator       = null;
+		decimatedSource = null;
+	}
+	
 	private IPreferenceStore getPreferenceStore() {
 		return new ScopedPreferenceStore(InstanceScope.INSTANCE, "org.dawnsci.plotting");
 	}
@@ -67,6 +146,7 @@ public class LineTrace extends Trace implements ITraceContainer {
 		errorBarColor=null;
 		xyGraph=null;
 		traceDataProvider=null;
+		clearDecimated();
 	}
 
 	public boolean isDisposed() {
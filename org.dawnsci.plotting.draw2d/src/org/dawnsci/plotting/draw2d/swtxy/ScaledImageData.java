@@ -11,6 +11,7 @@ import org.eclipse.swt.graphics.ImageData;
 class ScaledImageData {
 
 	private ImageData downsampledImageData;
+	private ImageTileCache imageTiles;
 	private Image scaledImage;
 	private double xoffset;
 	private double yoffset;
@@ -104,6 +105,27 @@ class ScaledImageData {
 		this.downsampledImageData = downsampledImageData;
 	}
 
+	/**
+	 * Tiles of the downsampled image, used instead of the downsampled
+	 * image data when only part of the image is visible.
+	 * @return
+	 */
+	public ImageTileCache getImageTiles() {
+		return imageTiles;
+	}
+
+	public void setImageTiles(ImageTileCache imageTiles) {
+		this.imageTiles = imageTiles;
+	}
+
+	/**
+	 * 
+	 * @return true if there is either downsampled image data or tiles to draw from.
+	 */
+	public boolean hasImageData() {
+		return downsampledImageData!=null || imageTiles!=null;
+	}
+
 	public int getXPosition() {
 		return (int)getX()-(int)getXoffset();
 	}
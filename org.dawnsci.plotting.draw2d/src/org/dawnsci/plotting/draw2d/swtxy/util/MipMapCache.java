@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.draw2d.swtxy.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
+import org.eclipse.dawnsci.analysis.api.downsample.DownsampleMode;
+import org.eclipse.dawnsci.analysis.dataset.impl.AbstractDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.diamond.scisoft.analysis.dataset.function.Downsample;
+
+/**
+ * A cache of downsampled images (mip maps) shared by all image traces.
+ *
+ * The levels of each image form a pyramid: an even bin 2n is made by
+ * downsampling bin n by two rather than downsampling the full image again,
+ * so after bin 2 has been made the full image is not read again while its
+ * levels stay in the cache. Levels are made lazily, when first asked for.
+ *
+ * The cache holds at most a fixed number of bytes, the least recently used
+ * levels are dropped first. The size in megabytes may be set with the
+ * system property org.dawnsci.plotting.draw2d.mipmap.cache.size, the default
+ * is an eighth of the maximum heap up to 512MB.
+ *
+ * Levels are keyed on the identity of the image, which is only weakly
+ * referenced, so the cache does not keep old images alive. Traces should
+ * still call clear(...) when they drop an image to release its levels early.
+ */
+public class MipMapCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(MipMapCache.class);
+
+	private static final String SIZE_PROPERTY = "org.dawnsci.plotting.draw2d.mipmap.cache.size";
+
+	private static MipMapCache instance;
+
+	/**
+	 *
+	 * @return the cache shared by all traces.
+	 */
+	public static synchronized MipMapCache getInstance() {
+		if (instance==null) {
+			long defaultSize = Math.min(512L<<20, Runtime.getRuntime().maxMemory()/8);
+			instance = new MipMapCache(Long.getLong(SIZE_PROPERTY, defaultSize>>20)<<20);
+		}
+		return instance;
+	}
+
+	private final Map<Key, Dataset> levels;
+	private final long maxBytes;
+	private long       bytes;
+	private long       hits, misses, evictions;
+
+	/**
+	 *
+	 * @param maxBytes largest number of bytes held by downsampled levels.
+	 */
+	public MipMapCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.levels   = new LinkedHashMap<Key, Dataset>(16, 0.75f, true); // Access order for LRU
+	}
+
+	/**
+	 * Get the image downsampled by bin in both dimensions, from the cache
+	 * if possible.
+	 *
+	 * @param image
+	 * @param mode
+	 * @param bin
+	 * @return image if bin is 1 or less
+	 */
+	public Dataset getDownsampled(Dataset image, DownsampleMode mode, int bin) {
+
+		if (bin<=1) return image;
+
+		// Only one thread builds the levels of an image at a time, so
+		// that each is only made once.
+		synchronized (image) {
+			final Key key = new Key(image, mode, bin);
+			Dataset level = get(key);
+			if (level!=null) {
+				logger.trace("Downsample bin used, "+bin);
+				return level;
+			}
+
+			final Dataset source;
+			final int     factor;
+			if (bin>2 && bin%2==0) {
+				source = getDownsampled(image, mode, bin/2);
+				factor = 2;
+			} else {
+				source = image;
+				factor = bin;
+			}
+
+			final Downsample downSampler = new Downsample(mode, new int[]{factor,factor});
+			List<? extends IDataset>   sets = downSampler.value(source);
+			level = (Dataset)sets.get(0);
+			put(key, level);
+			logger.trace("Downsample bin created, "+bin);
+			return level;
+		}
+	}
+
+	private synchronized Dataset get(Key key) {
+		final Dataset level = levels.get(key);
+		if (level!=null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return level;
+	}
+
+	private synchronized void put(Key key, Dataset level) {
+
+		final Dataset old = levels.put(key, level);
+		if (old!=null) bytes -= getBytes(old);
+		bytes += getBytes(level);
+
+		// Remove levels of images which have been garbage collected
+		// and then the least recently used until we fit.
+		for (Iterator<Map.Entry<Key, Dataset>> it = levels.entrySet().iterator(); it.hasNext(); ) {
+			final Map.Entry<Key, Dataset> entry = it.next();
+			if (entry.getKey().image.get()==null) {
+				bytes -= getBytes(entry.getValue());
+				it.remove();
+			}
+		}
+		for (Iterator<Map.Entry<Key, Dataset>> it = levels.entrySet().iterator(); it.hasNext() && bytes>maxBytes; ) {
+			final Map.Entry<Key, Dataset> entry = it.next();
+			if (entry.getKey()==key) continue; // Keep the one we just made
+			bytes -= getBytes(entry.getValue());
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes all the levels of an image.
+	 * @param image
+	 */
+	public synchronized void clear(Dataset image) {
+		if (image==null) return;
+		for (Iterator<Map.Entry<Key, Dataset>> it = levels.entrySet().iterator(); it.hasNext(); ) {
+			final Map.Entry<Key, Dataset> entry = it.next();
+			final Object cached = entry.getKey().image.get();
+			if (cached==null || cached==image) {
+				bytes -= getBytes(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	private static long getBytes(Dataset set) {
+		return (long)set.getSize()*AbstractDataset.getItemsize(set.getDtype(), set.getElementsPerItem());
+	}
+
+	/**
+	 *
+	 * @return number of times a level was found in the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 *
+	 * @return number of times a level had to be made
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 *
+	 * @return number of levels dropped to keep within the size of the cache
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 *
+	 * @return bytes currently held by the cache
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 *
+	 * @return largest number of bytes held by the cache
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "MipMapCache [levels="+levels.size()+", bytes="+bytes+", maxBytes="+maxBytes+
+				", hits="+hits+", misses="+misses+", evictions="+evictions+"]";
+	}
+
+	private static final class Key {
+
+		private final WeakReference<Dataset> image;
+		private final DownsampleMode         mode;
+		private final int                    bin;
+		private final int                    hash;
+
+		Key(Dataset image, DownsampleMode mode, int bin) {
+			this.image = new WeakReference<Dataset>(image);
+			this.mode  = mode;
+			this.bin   = bin;
+			this.hash  = 31*(31*System.identityHashCode(image) + mode.hashCode()) + bin;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			final Key other = (Key) obj;
+			if (bin!=other.bin || mode!=other.mode) return false;
+			final Dataset set = image.get();
+			return set!=null && set==other.image.get();
+		}
+	}
+}
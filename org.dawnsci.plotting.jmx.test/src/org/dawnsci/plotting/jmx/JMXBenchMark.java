@@ -0,0 +1,150 @@
+package org.dawnsci.plotting.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Times calls made through JMXSystemObject to a plotting system over a
+ * local RMI connection, with and without batching. The plotting system is
+ * a StandardMBean which only counts the calls.
+ *
+ * Not a test, so not run with the tests.
+ */
+public class JMXBenchMark {
+
+	private static final String PLOT_NAME = "Bench Mark";
+	private static final int    WARM_UP   = 2000;
+	private static final int    CALLS     = 20000;
+
+	private static Registry           registry;
+	private static JMXConnectorServer server;
+	private static ObjectName         objectName;
+	private static Counter            counter;
+	private static int                port;
+
+	@BeforeClass
+	public static void start() throws Exception {
+		final ServerSocket socket = new ServerSocket(0);
+		port = socket.getLocalPort();
+		socket.close();
+
+		registry = LocateRegistry.createRegistry(port);
+		final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		counter    = new Counter();
+		objectName = new ObjectName("remote.plotting.system/"+PLOT_NAME+":type=RemotePlottingSystem");
+		mbs.registerMBean(new StandardMBean(counter, Plotter.class), objectName);
+
+		final JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:"+port+"/plottingservice");
+		server = JMXConnectorServerFactory.newJMXConnectorServer(url, null, mbs);
+		server.start();
+	}
+
+	@AfterClass
+	public static void stop() throws Exception {
+		server.stop();
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		UnicastRemoteObject.unexportObject(registry, true);
+	}
+
+	@Test
+	public void appendBenchMark() throws Exception {
+
+		final LoopbackSystem system = new LoopbackSystem();
+
+		System.out.println("++++++ STARTING JMX BENCH MARK ++++++");
+		System.out.println("RUNNING " + CALLS + " APPEND CALLS");
+		for (boolean batching : new boolean[]{false, true}) {
+			system.setBatching(batching);
+			run(system, WARM_UP, false);
+
+			final long start = System.nanoTime();
+			run(system, CALLS, false);
+			final double sent = (System.nanoTime()-start)/1e9;
+			System.out.println((batching ? "BATCHED" : "EACH SENT")+"\tAPPEND\t"+(int)(CALLS/sent)+" calls/s\t"+counter.appends.get()+" received");
+
+			final long start2 = System.nanoTime();
+			run(system, CALLS, true);
+			final double painted = (System.nanoTime()-start2)/1e9;
+			System.out.println((batching ? "BATCHED" : "EACH SENT")+"\tAPPEND+REPAINT\t"+(int)(2*CALLS/painted)+" calls/s\t"+counter.repaints.get()+" repaints received");
+		}
+		System.out.println("++++++ ENDING JMX BENCH MARK ++++++");
+	}
+
+	/**
+	 * Makes the calls then one which returns a value, so that all of them
+	 * have been received by the time it returns.
+	 */
+	private static void run(LoopbackSystem system, int calls, boolean repaint) {
+		counter.appends.set(0);
+		counter.repaints.set(0);
+		for (int i = 0; i < calls; i++) {
+			system.append("Bench Mark", i, Math.sin(i/100d));
+			if (repaint) system.repaint();
+		}
+		system.getCount();
+	}
+
+	/**
+	 * The calls the plotting system over JMX makes, with its signatures.
+	 */
+	public static class LoopbackSystem extends JMXSystemObject {
+
+		LoopbackSystem() throws Exception {
+			super(PLOT_NAME, "localhost", port);
+		}
+
+		public void append(String dataSetName, Number xValue, Number yValue) {
+			send("append", dataSetName, xValue, yValue);
+		}
+
+		public void repaint() {
+			send("repaint");
+		}
+
+		public int getCount() {
+			return (Integer)call("count", "appends");
+		}
+	}
+
+	public interface Plotter {
+		void append(String dataSetName, Number xValue, Number yValue);
+		void repaint();
+		int count(String what);
+	}
+
+	public static class Counter implements Plotter {
+
+		private final AtomicInteger appends  = new AtomicInteger();
+		private final AtomicInteger repaints = new AtomicInteger();
+
+		@Override
+		public void append(String dataSetName, Number xValue, Number yValue) {
+			appends.incrementAndGet();
+		}
+
+		@Override
+		public void repaint() {
+			repaints.incrementAndGet();
+		}
+
+		@Override
+		public int count(String what) {
+			return "appends".equals(what) ? appends.get() : repaints.get();
+		}
+	}
+}
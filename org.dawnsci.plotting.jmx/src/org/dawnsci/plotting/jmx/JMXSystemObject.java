@@ -8,6 +8,20 @@
  */
 package org.dawnsci.plotting.jmx;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
@@ -15,15 +29,63 @@ import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calls methods of a remote plotting system over JMX.
+ *
+ * The signature of each call is found once, from the method of this object
+ * with the same name and arguments, and then kept. Datasets which are views
+ * of a larger dataset are sent as compact copies, so only their own values
+ * are serialized rather than the whole buffer they share.
+ *
+ * Calls which return nothing may be batched, see setBatching(...). They are
+ * then queued and sent in order by a background thread a short time later,
+ * or before any call which returns a value, so that the caller does not
+ * wait for a round trip for each one. A run of repaints, or of the same
+ * setter, is sent once.
+ */
 class JMXSystemObject {
 
+	private static final Logger logger = LoggerFactory.getLogger(JMXSystemObject.class);
+
+	/**
+	 * Queued calls are sent when there are this many, or FLUSH_DELAY ms after the first was queued.
+	 */
+	private static final int  MAX_BATCH   = 512;
+	private static final long FLUSH_DELAY = 20;
+
+	private static ScheduledExecutorService flusher;
+
+	private static synchronized ScheduledExecutorService getFlusher() {
+		if (flusher==null) {
+			flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "JMX plotting flush");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return flusher;
+	}
+
 	private ObjectName            remotePlotName;
 	private MBeanServerConnection client;
 
+	private final ConcurrentMap<String, String[]> signatures = new ConcurrentHashMap<String, String[]>();
+
+	private volatile boolean batching;
+	private final List<Call> queue    = new ArrayList<Call>();
+	private final Object     sendLock = new Object(); // Held while queued calls are sent, so that later calls wait for them
+
 	/**
 	 * The name of the plotting system as registered in the PlottingFactory.
 	 * @param name
-	 * @throws MalformedObjectNameException 
+	 * @throws MalformedObjectNameException
 	 */
 	protected JMXSystemObject(final String plotName, final String hostName, final int port) throws Exception {
 
@@ -34,51 +96,268 @@ class JMXSystemObject {
 	    this.remotePlotName = new ObjectName("remote.plotting.system/"+plotName+":type=RemotePlottingSystem");
 	}
 
-	protected static final String getMethodName ( StackTraceElement ste[] ) {  
-		   
-	    String methodName = "";  
-	    boolean flag = false;  
-	   
-	    for ( StackTraceElement s : ste ) {  
-	   
-	        if ( flag ) {  
-	   
-	            methodName = s.getMethodName();  
-	            break;  
-	        }  
-	        flag = s.getMethodName().equals( "getStackTrace" );  
-	    }  
-	    return methodName;  
+	/**
+	 * Calls method in a SWT thread safe way.
+	 * @param methodName
+	 * @param args
+	 */
+	protected Object call(final String methodName, final Object... args) {
+		return call(methodName, getSignature(methodName, args), args);
 	}
 
 	/**
 	 * Calls method in a SWT thread safe way.
 	 * @param methodName
+	 * @param classes parameter types of the method
 	 * @param args
 	 */
-	protected Object call(final String methodName, final Object... args) {
-		
-		final String[] classes = args!=null ? new String[args.length] : null;
-		if (classes!=null) {
-			for (int i = 0; i < args.length; i++) classes[i]=args[i].getClass().getName();
-		}
-		return call(methodName, classes, args);
+	protected Object call(final String methodName, final Class<?>[] classes, final Object... args) {
+		return call(methodName, getNames(classes), args);
 	}
-	
+
 	/**
 	 * Calls method in a SWT thread safe way.
 	 * @param methodName
 	 * @param args
 	 */
 	protected Object call(final String methodName, final String[] classes, final Object... args) {
-		
+		flush(); // Calls made before must get there first
+		return invoke(methodName, classes, compact(args, false));
+	}
+
+	/**
+	 * Calls a method which returns nothing, which is queued if batching.
+	 * @param methodName
+	 * @param args
+	 */
+	protected void send(final String methodName, final Object... args) {
+		send(methodName, getSignature(methodName, args), args);
+	}
+
+	/**
+	 * Calls a method which returns nothing, which is queued if batching.
+	 * @param methodName
+	 * @param classes parameter types of the method
+	 * @param args
+	 */
+	protected void send(final String methodName, final Class<?>[] classes, final Object... args) {
+		send(methodName, getNames(classes), args);
+	}
+
+	/**
+	 * Calls a method which returns nothing, which is queued if batching.
+	 * @param methodName
+	 * @param classes
+	 * @param args
+	 */
+	protected void send(final String methodName, final String[] classes, final Object... args) {
+
+		if (!batching) {
+			call(methodName, classes, args);
+			return;
+		}
+
+		// The caller may change the datasets after this returns, so they are copied.
+		final Call call = new Call(methodName, classes, compact(args, true));
+		final boolean full;
+		synchronized (queue) {
+			final int last = queue.size()-1;
+			if (last>=0 && call.replaces(queue.get(last))) {
+				queue.set(last, call);
+			} else {
+				queue.add(call);
+			}
+			if (queue.size()==1) {
+				getFlusher().schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				}, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+			}
+			full = queue.size()>=MAX_BATCH;
+		}
+		if (full) flush();
+	}
+
+	/**
+	 * Sends the queued calls now, in the order they were made.
+	 */
+	protected void flush() {
+		synchronized (sendLock) {
+			final Call[] calls;
+			synchronized (queue) {
+				if (queue.isEmpty()) return;
+				calls = queue.toArray(new Call[queue.size()]);
+				queue.clear();
+			}
+			for (Call call : calls) invoke(call.methodName, call.classes, call.args);
+		}
+	}
+
+	/**
+	 *
+	 * @param batching true to queue calls which return nothing, false to send
+	 *        the queued calls and then send each call when it is made.
+	 */
+	protected void setBatching(boolean batching) {
+		this.batching = batching;
+		if (!batching) flush();
+	}
+
+	protected boolean isBatching() {
+		return batching;
+	}
+
+	private Object invoke(final String methodName, final String[] classes, final Object[] args) {
 		try {
 			return client.invoke(remotePlotName, methodName, args, classes);
 		} catch (Throwable e) {
-			System.out.println("Unable to process remote plotting system command: "+methodName);
-			e.printStackTrace();
+			// A queued call has no caller waiting for it, so this is the only report
+			logger.error("Unable to process remote plotting system command "+methodName, e);
 			return null;
 		}
 	}
 
+	/**
+	 * The signature is the parameter types of the only method of this object
+	 * which may be called with the arguments. If there is not one the classes
+	 * of the arguments are used.
+	 *
+	 * @param methodName
+	 * @param args
+	 * @return names of the parameter types
+	 */
+	private String[] getSignature(final String methodName, final Object[] args) {
+
+		if (args==null) return null;
+
+		final StringBuilder key = new StringBuilder(methodName);
+		for (Object arg : args) key.append(',').append(arg!=null ? arg.getClass().getName() : null);
+
+		String[] signature = signatures.get(key.toString());
+		if (signature==null) {
+			Method found = null;
+			for (Method method : getClass().getMethods()) {
+				if (method.isBridge() || !method.getName().equals(methodName)) continue;
+				if (!isApplicable(method.getParameterTypes(), args)) continue;
+				if (found!=null) { // Overloaded, cannot tell which
+					found = null;
+					break;
+				}
+				found = method;
+			}
+			if (found!=null) {
+				signature = getNames(found.getParameterTypes());
+			} else {
+				logger.debug("Using the classes of the arguments for the signature of "+methodName);
+				signature = new String[args.length];
+				for (int i = 0; i < args.length; i++) {
+					signature[i] = (args[i]!=null ? args[i].getClass() : Object.class).getName();
+				}
+			}
+			signatures.putIfAbsent(key.toString(), signature);
+		}
+		return signature;
+	}
+
+	private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+	static {
+		WRAPPERS.put(boolean.class, Boolean.class);
+		WRAPPERS.put(byte.class,    Byte.class);
+		WRAPPERS.put(char.class,    Character.class);
+		WRAPPERS.put(short.class,   Short.class);
+		WRAPPERS.put(int.class,     Integer.class);
+		WRAPPERS.put(long.class,    Long.class);
+		WRAPPERS.put(float.class,   Float.class);
+		WRAPPERS.put(double.class,  Double.class);
+	}
+
+	private static boolean isApplicable(Class<?>[] types, Object[] args) {
+		if (types.length!=args.length) return false;
+		for (int i = 0; i < types.length; i++) {
+			if (args[i]==null) {
+				if (types[i].isPrimitive()) return false;
+			} else {
+				final Class<?> type = types[i].isPrimitive() ? WRAPPERS.get(types[i]) : types[i];
+				if (!type.isInstance(args[i])) return false;
+			}
+		}
+		return true;
+	}
+
+	private static String[] getNames(Class<?>[] classes) {
+		if (classes==null) return null;
+		final String[] names = new String[classes.length];
+		for (int i = 0; i < classes.length; i++) names[i] = classes[i].getName();
+		return names;
+	}
+
+	/**
+	 *
+	 * @param args
+	 * @param copy true to copy all datasets, otherwise only views are copied.
+	 * @return args, or a copy of them with the datasets replaced
+	 */
+	private static Object[] compact(final Object[] args, final boolean copy) {
+		if (args==null) return null;
+		Object[] ret = args;
+		for (int i = 0; i < args.length; i++) {
+			final Object arg = compact(args[i], copy);
+			if (arg!=args[i]) {
+				if (ret==args) ret = args.clone();
+				ret[i] = arg;
+			}
+		}
+		return ret;
+	}
+
+	private static Object compact(final Object arg, final boolean copy) {
+		if (arg instanceof Dataset) {
+			final Dataset set = (Dataset)arg;
+			return copy || isView(set) ? set.getSlice() : set;
+		}
+		if (arg instanceof List) {
+			final List<?> list = (List<?>)arg;
+			List<Object> ret = null;
+			for (int i = 0; i < list.size(); i++) {
+				final Object item = compact(list.get(i), copy);
+				if (ret==null && item!=list.get(i)) ret = new ArrayList<Object>(list.subList(0, i));
+				if (ret!=null) ret.add(item);
+			}
+			return ret!=null ? ret : list;
+		}
+		return arg;
+	}
+
+	/**
+	 * @param set
+	 * @return true if the dataset has fewer values than its buffer.
+	 */
+	private static boolean isView(final Dataset set) {
+		final Object buffer = set.getBuffer();
+		return buffer!=null && Array.getLength(buffer)!=set.getSize()*set.getElementsPerItem();
+	}
+
+	private static final class Call {
+
+		private final String   methodName;
+		private final String[] classes;
+		private final Object[] args;
+
+		Call(String methodName, String[] classes, Object[] args) {
+			this.methodName = methodName;
+			this.classes    = classes;
+			this.args       = args;
+		}
+
+		/**
+		 * @param call made just before this one
+		 * @return true if sending this call makes sending the one before pointless
+		 */
+		boolean replaces(Call call) {
+			if (!methodName.equals(call.methodName) || !Arrays.equals(classes, call.classes)) return false;
+			return methodName.equals("repaint") || (methodName.startsWith("set") && classes!=null && classes.length==1);
+		}
+	}
 }
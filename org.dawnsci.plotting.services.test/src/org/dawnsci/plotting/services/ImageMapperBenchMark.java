@@ -0,0 +1,63 @@
+package org.dawnsci.plotting.services;
+
+import static org.dawnsci.plotting.services.ImageMapperTest.createImage;
+import static org.dawnsci.plotting.services.ImageMapperTest.createMask;
+import static org.dawnsci.plotting.services.ImageMapperTest.mapLegacy;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean.ImageOrigin;
+import org.junit.Test;
+
+/**
+ * Times the ImageMapper against the getDouble(i,j) loops which it replaced,
+ * on large images. Kept apart from ImageMapperTest so that it is not run
+ * with the tests.
+ *
+ * Each type must map at least 5 times faster than the loops, or as many
+ * times as set with org.dawnsci.plotting.services.benchmark.speedup. Set it
+ * to 0 to only print the timings, for instance on a loaded machine.
+ */
+public class ImageMapperBenchMark {
+
+	private static final String SPEED_UP_PROPERTY = "org.dawnsci.plotting.services.benchmark.speedup";
+	private static final double MIN_SPEED_UP      = Double.parseDouble(System.getProperty(SPEED_UP_PROPERTY, "5"));
+
+	@Test
+	public void benchMark() {
+
+		final int BENCHMARK_TEST_COUNT = 10;
+
+		System.out.println("++++++ STARTING IMAGE MAPPING BENCH MARK ++++++");
+		for (int dtype : new int[]{Dataset.INT16, Dataset.INT32, Dataset.FLOAT32, Dataset.FLOAT64}) {
+
+			final Dataset image = createImage(dtype, 4096, 4096);
+			final BooleanDataset mask = createMask(image);
+			final ImageMapper mapper = new ImageMapper(100, 3000, 251d/2900, 2900, 20, 3900);
+			final byte[] out = new byte[image.getSize()];
+
+			// Warm up both
+			for (int i = 0; i < 3; i++) {
+				mapLegacy(image, mask, ImageOrigin.TOP_LEFT, out, 100, 3000, 251d/2900, 2900, 20, 3900);
+				mapper.map(image, mask, ImageOrigin.TOP_LEFT, out, null);
+			}
+
+			double legacy = 0, mapped = 0;
+			for (int i = 0; i < BENCHMARK_TEST_COUNT; i++) {
+				long start = System.nanoTime();
+				mapLegacy(image, mask, ImageOrigin.TOP_LEFT, out, 100, 3000, 251d/2900, 2900, 20, 3900);
+				legacy += System.nanoTime()-start;
+
+				start = System.nanoTime();
+				mapper.map(image, mask, ImageOrigin.TOP_LEFT, out, null);
+				mapped += System.nanoTime()-start;
+			}
+			legacy /= BENCHMARK_TEST_COUNT*1e6;
+			mapped /= BENCHMARK_TEST_COUNT*1e6;
+			System.out.println("DTYPE "+dtype+"\tLEGACY "+legacy+" ms\tMAPPER "+mapped+" ms\tSPEED UP "+(legacy/mapped));
+			assertTrue("DTYPE "+dtype+" is only "+(legacy/mapped)+" times faster", legacy/mapped >= MIN_SPEED_UP);
+		}
+		System.out.println("++++++ ENDING IMAGE MAPPING BENCH MARK ++++++");
+	}
+}
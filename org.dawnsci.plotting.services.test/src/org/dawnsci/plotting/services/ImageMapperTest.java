@@ -0,0 +1,184 @@
+package org.dawnsci.plotting.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Comparisons;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.Maths;
+import org.eclipse.dawnsci.analysis.dataset.impl.Random;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean.ImageOrigin;
+import org.junit.Test;
+
+/**
+ * Checks that the ImageMapper gives exactly the same palette indices as the
+ * getDouble(i,j) loops which it replaced. They are timed in ImageMapperBenchMark.
+ */
+public class ImageMapperTest {
+
+	private static final int[] DTYPES = {Dataset.INT8, Dataset.INT16, Dataset.INT32, Dataset.FLOAT32, Dataset.FLOAT64};
+
+	@Test
+	public void testAllOriginsAndTypes() {
+
+		Random.seed(12345);
+		for (int dtype : DTYPES) {
+			// Large enough that the look up tables are used
+			final Dataset image = createImage(dtype, 301, 417);
+			final BooleanDataset mask = createMask(image);
+
+			// min, max, cuts as set by createMaxMin() and the bounds
+			final ImageMapper mapper = new ImageMapper(100, 3000, 251d/2900, 2900, 20, 3900);
+			for (ImageOrigin origin : ImageOrigin.values()) {
+				for (BooleanDataset m : new BooleanDataset[]{null, mask}) {
+					final byte[] expected = new byte[image.getSize()];
+					mapLegacy(image, m, origin, expected, 100, 3000, 251d/2900, 2900, 20, 3900);
+
+					final byte[] actual = new byte[image.getSize()];
+					mapper.map(image, m, origin, actual, null);
+					assertArrayEquals("dtype "+dtype+", "+origin+", mask "+(m!=null), expected, actual);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRowBands() {
+
+		final Dataset image = createImage(Dataset.FLOAT64, 128, 96);
+		final ImageMapper mapper = new ImageMapper(100, 3000, 251d/2900, 2900, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		for (ImageOrigin origin : ImageOrigin.values()) {
+			final byte[] expected = new byte[image.getSize()];
+			mapper.map(image, null, origin, expected, null);
+
+			final byte[] actual = new byte[image.getSize()];
+			for (int row = 0; row < 128; row+=17) {
+				mapper.map(image, null, origin, actual, row, Math.min(128, row+17), null);
+			}
+			assertArrayEquals(origin.toString(), expected, actual);
+		}
+	}
+
+	@Test
+	public void testLogPerPixel() {
+
+		final double offset = -1;
+		final double min = Math.log10(100), max = Math.log10(3000);
+		final ImageServiceBean bean = new ImageServiceBean();
+		for (int dtype : DTYPES) {
+			final Dataset image  = createImage(dtype, 301, 417);
+			final Dataset logged = Maths.log10(Maths.subtract(DatasetUtils.cast(image, Dataset.FLOAT64), offset));
+
+			final ImageMapper perPixel = new ImageMapper(min, max, 251/(max-min), max-min, Math.log10(20), Math.log10(3900), true, offset);
+			final ImageMapper copy     = new ImageMapper(min, max, 251/(max-min), max-min, Math.log10(20), Math.log10(3900));
+			for (ImageOrigin origin : ImageOrigin.values()) {
+				final byte[] expected = new byte[image.getSize()];
+				copy.map(logged, null, origin, expected, null);
+				final byte[] actual = new byte[image.getSize()];
+				perPixel.map(image, null, origin, actual, null);
+				assertArrayEquals("dtype "+dtype+", "+origin, expected, actual);
+			}
+
+			final ImageStatistics expected = ImageTiles.getStatistics(logged, null, bean, false, Double.NaN);
+			final ImageStatistics actual   = ImageTiles.getStatistics(image,  null, bean, true,  offset);
+			assertEquals(expected.min, actual.min, 0);
+			assertEquals(expected.max, actual.max, 0);
+			assertEquals(expected.sum, actual.sum, 0);
+			assertEquals(expected.size, actual.size);
+		}
+	}
+
+	@Test
+	public void testParallelIdentical() {
+
+		final Dataset image = createImage(Dataset.FLOAT64, 2048, 1024);
+		final BooleanDataset mask = createMask(image);
+		final ImageServiceBean bean = new ImageServiceBean();
+		final ImageMapper mapper = new ImageMapper(100, 3000, 251d/2900, 2900, 20, 3900);
+
+		final String orig = System.getProperty(ImageTiles.PARALLEL_PROPERTY);
+		try {
+			System.setProperty(ImageTiles.PARALLEL_PROPERTY, "false");
+			final ImageStatistics serial = ImageTiles.getStatistics(image, mask, bean, false, Double.NaN);
+			final byte[] expected = new byte[image.getSize()];
+			ImageTiles.map(mapper, image, mask, ImageOrigin.BOTTOM_LEFT, expected, bean);
+
+			System.setProperty(ImageTiles.PARALLEL_PROPERTY, "true");
+			final ImageStatistics parallel = ImageTiles.getStatistics(image, mask, bean, false, Double.NaN);
+			final byte[] actual = new byte[image.getSize()];
+			ImageTiles.map(mapper, image, mask, ImageOrigin.BOTTOM_LEFT, actual, bean);
+
+			assertEquals(serial.min,  parallel.min,  0);
+			assertEquals(serial.max,  parallel.max,  0);
+			assertEquals(serial.sum,  parallel.sum,  0);
+			assertEquals(serial.size, parallel.size);
+			assertArrayEquals(expected, actual);
+		} finally {
+			if (orig==null) {
+				System.clearProperty(ImageTiles.PARALLEL_PROPERTY);
+			} else {
+				System.setProperty(ImageTiles.PARALLEL_PROPERTY, orig);
+			}
+		}
+	}
+
+	static Dataset createImage(int dtype, int rows, int cols) {
+		final Dataset image = Random.rand(new int[]{rows, cols});
+		image.imultiply(4000);
+		return DatasetUtils.cast(image, dtype);
+	}
+
+	static BooleanDataset createMask(Dataset image) {
+		return Comparisons.greaterThan(Random.rand(image.getShape()), 0.1);
+	}
+
+	/**
+	 * The per origin loops which ImageService used before ImageMapper.
+	 */
+	static void mapLegacy(Dataset image, BooleanDataset mask, ImageOrigin origin, byte[] scaledImageAsByte,
+			              double min, double max, double scale, double maxPixel, double minCut, double maxCut) {
+
+		final int[] shape = image.getShape();
+		int index = 0;
+		if (origin==ImageOrigin.TOP_LEFT) {
+			for (int i = 0; i<shape[0]; ++i) {
+				for (int j = 0; j<shape[1]; ++j) {
+					scaledImageAsByte[index] = mask==null || mask.getBoolean(i,j)
+							? ImageMapper.getPixelColorIndex(image.getDouble(i,j), min, max, scale, maxPixel, minCut, maxCut)
+							: ImageService.NAN_PIX_BYTE;
+					++index;
+				}
+			}
+		} else if (origin==ImageOrigin.BOTTOM_LEFT) {
+			for (int i = shape[1]-1; i>=0; --i) {
+				for (int j = 0; j<shape[0]; ++j) {
+					scaledImageAsByte[index]  = mask==null || mask.getBoolean(j,i)
+							? ImageMapper.getPixelColorIndex(image.getDouble(j,i), min, max, scale, maxPixel, minCut, maxCut)
+							: ImageService.NAN_PIX_BYTE;
+					index++;
+				}
+			}
+		} else if (origin==ImageOrigin.BOTTOM_RIGHT) {
+			for (int i = shape[0]-1; i>=0; --i) {
+				for (int j = shape[1]-1; j>=0; --j) {
+					scaledImageAsByte[index] = mask==null || mask.getBoolean(i,j)
+							? ImageMapper.getPixelColorIndex(image.getDouble(i,j), min, max, scale, maxPixel, minCut, maxCut)
+							: ImageService.NAN_PIX_BYTE;
+					index++;
+				}
+			}
+		} else if (origin==ImageOrigin.TOP_RIGHT) {
+			for (int i = 0; i<shape[1]; ++i) {
+				for (int j = shape[0]-1; j>=0; --j) {
+					scaledImageAsByte[index]  = mask==null || mask.getBoolean(j,i)
+							? ImageMapper.getPixelColorIndex(image.getDouble(j, i), min, max, scale, maxPixel, minCut, maxCut)
+							: ImageService.NAN_PIX_BYTE;
+					index++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.dawnsci.plotting.services;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+	private static final double[] QUANTILES = {0.0001, 0.01, 0.5, 0.99, 0.9999};
+
+	@Test
+	public void testWithinError() {
+
+		final java.util.Random rnd = new java.util.Random(123456789);
+		final double[] values = new double[100000];
+		for (int i = 0; i < values.length; i++) values[i] = Math.abs(rnd.nextGaussian())*1000;
+
+		double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+		for (double v : values) {
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+
+		final double error = 1e-3;
+		final QuantileSketch sketch = new QuantileSketch(min, max, error, false);
+		for (double v : values) sketch.add(v);
+
+		Arrays.sort(values);
+		for (double q : QUANTILES) {
+			assertEquals("Quantile "+q, getExact(values, q), sketch.getQuantile(q), error*(max-min));
+		}
+	}
+
+	@Test
+	public void testIntegersExact() {
+
+		final java.util.Random rnd = new java.util.Random(123456789);
+		final double[] values = new double[10001];
+		for (int i = 0; i < values.length; i++) values[i] = rnd.nextInt(5000)-100;
+
+		final QuantileSketch sketch = new QuantileSketch(-100, 4899, true);
+		for (double v : values) sketch.add(v);
+
+		Arrays.sort(values);
+		for (double q : QUANTILES) {
+			assertEquals("Quantile "+q, getExact(values, q), sketch.getQuantile(q), 1e-9);
+		}
+	}
+
+	@Test
+	public void testMergedBands() {
+
+		final java.util.Random rnd = new java.util.Random(987654321);
+		final QuantileSketch whole = new QuantileSketch(0, 1, 1e-4, false);
+		final QuantileSketch band1 = whole.create();
+		final QuantileSketch band2 = whole.create();
+		for (int i = 0; i < 50000; i++) {
+			final double v = rnd.nextDouble();
+			whole.add(v);
+			(i%3==0 ? band1 : band2).add(v);
+		}
+		final QuantileSketch merged = whole.create();
+		merged.merge(band1);
+		merged.merge(band2);
+
+		assertEquals(whole.getTotal(), merged.getTotal());
+		for (double q : QUANTILES) {
+			assertEquals(whole.getQuantile(q), merged.getQuantile(q), 0);
+		}
+	}
+
+	private static double getExact(double[] sorted, double q) {
+		final double rank = q*(sorted.length-1);
+		final int    lo   = (int)Math.floor(rank);
+		final int    hi   = Math.min(sorted.length-1, lo+1);
+		return sorted[lo] + (rank-lo)*(sorted[hi]-sorted[lo]);
+	}
+}
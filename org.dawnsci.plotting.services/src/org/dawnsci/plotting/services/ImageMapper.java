@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.services;
+
+import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean.ImageOrigin;
+
+/**
+ * Maps a 2D dataset onto the 8-bit palette indices used by ImageData.
+ *
+ * The dataset and mask are read in the order in which their buffers are
+ * stored, one element at a time via their iterators, and the origin is
+ * dealt with by working out where in the output each pixel goes rather than
+ * by looping the image in a different order for each origin. There are
+ * specialised loops for int16, int32, float32 and float64 which read the
+ * primitive arrays directly. Integer types use a look up table for the
+ * colour index when the image is large enough to pay for building it.
+ *
+ * Other dtypes fall back to getElementDoubleAbs(...) but still benefit from
+ * reading the buffer in order.
+ *
+ * In log mode each value is logged as it is read, giving the same result as
+ * mapping the logged image without having to create it.
+ *
+ * The output is identical to calling getPixelColorIndex(...) for each pixel.
+ */
+class ImageMapper {
+
+	/**
+	 * Largest look up table built for int32 images. Bigger ranges are
+	 * mapped pixel by pixel.
+	 */
+	private static final int MAX_LUT_SIZE = 1 << 16;
+
+	private final double  min, max, scale, maxPixel, minCut, maxCut;
+	private final boolean log;
+	private final double  logOffset;
+
+	/**
+	 *
+	 * @param min
+	 * @param max
+	 * @param scale
+	 * @param maxPixel
+	 * @param minCut
+	 * @param maxCut
+	 */
+	ImageMapper(double min, double max, double scale, double maxPixel, double minCut, double maxCut) {
+		this(min, max, scale, maxPixel, minCut, maxCut, false, Double.NaN);
+	}
+
+	/**
+	 *
+	 * @param min      all bounds are logged values if log is true
+	 * @param max
+	 * @param scale
+	 * @param maxPixel
+	 * @param minCut
+	 * @param maxCut
+	 * @param log      true to map log10(value-logOffset) rather than value
+	 * @param logOffset ignored if NaN or infinite
+	 */
+	ImageMapper(double min, double max, double scale, double maxPixel, double minCut, double maxCut, boolean log, double logOffset) {
+		this.min       = min;
+		this.max       = max;
+		this.scale     = scale;
+		this.maxPixel  = maxPixel;
+		this.minCut    = minCut;
+		this.maxCut    = maxCut;
+		this.log       = log;
+		this.logOffset = Double.isNaN(logOffset) || Double.isInfinite(logOffset) ? 0 : logOffset;
+	}
+
+	/**
+	 * Width of the ImageData which will be created for this image and origin.
+	 * @param shape
+	 * @param origin
+	 * @return
+	 */
+	static int getWidth(int[] shape, ImageOrigin origin) {
+		return isTransposed(origin) ? shape[0] : shape[1];
+	}
+
+	/**
+	 * Height of the ImageData which will be created for this image and origin.
+	 * @param shape
+	 * @param origin
+	 * @return
+	 */
+	static int getHeight(int[] shape, ImageOrigin origin) {
+		return isTransposed(origin) ? shape[1] : shape[0];
+	}
+
+	private static boolean isTransposed(ImageOrigin origin) {
+		return origin==ImageOrigin.BOTTOM_LEFT || origin==ImageOrigin.TOP_RIGHT;
+	}
+
+	/**
+	 * Maps the whole image into the output buffer.
+	 *
+	 * @param image 2D, one element per item
+	 * @param mask  may be null, otherwise the same shape as the image
+	 * @param origin
+	 * @param out   buffer of size image.getSize()
+	 * @param bean  used to check for cancellation, may be null
+	 * @return false if cancelled
+	 */
+	boolean map(Dataset image, BooleanDataset mask, ImageOrigin origin, byte[] out, ImageServiceBean bean) {
+		return map(image, mask, origin, out, 0, image.getShape()[0], bean);
+	}
+
+	/**
+	 * Maps rows [rowStart, rowEnd) of the image into the output buffer. Each
+	 * pixel is written to the place in the buffer where the origin puts it,
+	 * so different row bands may be mapped independently.
+	 *
+	 * @param image 2D, one element per item
+	 * @param mask  may be null, otherwise the same shape as the image
+	 * @param origin
+	 * @param out   buffer of size image.getSize()
+	 * @param rowStart
+	 * @param rowEnd
+	 * @param bean  used to check for cancellation, may be null
+	 * @return false if cancelled
+	 */
+	boolean map(Dataset image, BooleanDataset mask, ImageOrigin origin, byte[] out, int rowStart, int rowEnd, ImageServiceBean bean) {
+
+		final int[] shape = image.getShape();
+		final int   rows  = shape[0];
+		final int   cols  = shape[1];
+
+		// The output index of pixel (i,j) is rowBase(i) + j*colStep
+		final int colStep;
+		switch (origin) {
+		case BOTTOM_RIGHT:
+			colStep = -1;
+			break;
+		case BOTTOM_LEFT:
+			colStep = -rows;
+			break;
+		case TOP_RIGHT:
+			colStep = rows;
+			break;
+		default:
+			colStep = 1;
+			break;
+		}
+
+		final IndexIterator it  = ImageTiles.getRowIterator(image, rowStart, rowEnd);
+		final IndexIterator mit = mask!=null ? ImageTiles.getRowIterator(mask, rowStart, rowEnd) : null;
+		final boolean[]     mb  = mask!=null ? mask.getData() : null;
+
+		switch (image.getDtype()) {
+		case Dataset.INT16:
+			return mapShorts((short[])image.getBuffer(), it, mb, mit, origin, rows, cols, colStep, out, rowStart, rowEnd, bean);
+		case Dataset.INT32:
+			return mapInts((int[])image.getBuffer(), it, mb, mit, origin, rows, cols, colStep, out, rowStart, rowEnd, bean);
+		case Dataset.FLOAT32:
+			return mapFloats((float[])image.getBuffer(), it, mb, mit, origin, rows, cols, colStep, out, rowStart, rowEnd, bean);
+		case Dataset.FLOAT64:
+			return mapDoubles((double[])image.getBuffer(), it, mb, mit, origin, rows, cols, colStep, out, rowStart, rowEnd, bean);
+		default:
+			return mapAny(image, it, mb, mit, origin, rows, cols, colStep, out, rowStart, rowEnd, bean);
+		}
+	}
+
+	private static int getRowBase(ImageOrigin origin, int i, int rows, int cols) {
+		switch (origin) {
+		case BOTTOM_RIGHT:
+			return (rows-1-i)*cols + cols-1;
+		case BOTTOM_LEFT:
+			return (cols-1)*rows + i;
+		case TOP_RIGHT:
+			return rows-1-i;
+		default:
+			return i*cols;
+		}
+	}
+
+	private boolean mapShorts(short[] data, IndexIterator it, boolean[] mb, IndexIterator mit, ImageOrigin origin,
+			                  int rows, int cols, int colStep, byte[] out, int rowStart, int rowEnd, ImageServiceBean bean) {
+
+		// A full table is only 64k so we build one unless the image is tiny.
+		final byte[] lut = (rowEnd-rowStart)*cols > 1<<16 ? createLut(Short.MIN_VALUE, Short.MAX_VALUE) : null;
+
+		for (int i = rowStart; i < rowEnd; ++i) {
+			if (bean!=null && bean.isCancelled()) return false;
+			int index = getRowBase(origin, i, rows, cols);
+			for (int j = 0; j < cols; ++j, index+=colStep) {
+				it.hasNext();
+				if (mit!=null) {
+					mit.hasNext();
+					// This saves a value lookup when the pixel is certainly masked.
+					if (!mb[mit.index]) {
+						out[index] = ImageService.NAN_PIX_BYTE;
+						continue;
+					}
+				}
+				final short val = data[it.index];
+				out[index] = lut!=null
+						   ? lut[val-Short.MIN_VALUE]
+						   : getIndex(val);
+			}
+		}
+		return true;
+	}
+
+	private boolean mapInts(int[] data, IndexIterator it, boolean[] mb, IndexIterator mit, ImageOrigin origin,
+			                int rows, int cols, int colStep, byte[] out, int rowStart, int rowEnd, ImageServiceBean bean) {
+
+		// Only values between min and max need a table entry, those outside
+		// are a comparison away from their colour anyway.
+		byte[] lut = null;
+		int    lo  = 0, hi = -1;
+		final double dmin = unlog(min), dmax = unlog(max);
+		if (!Double.isNaN(dmin) && !Double.isNaN(dmax) && dmax-dmin < MAX_LUT_SIZE && (rowEnd-rowStart)*cols > MAX_LUT_SIZE) {
+			lo  = (int)Math.max(Integer.MIN_VALUE, Math.floor(dmin));
+			hi  = (int)Math.min(Integer.MAX_VALUE, Math.ceil(dmax));
+			lut = createLut(lo, hi);
+		}
+
+		for (int i = rowStart; i < rowEnd; ++i) {
+			if (bean!=null && bean.isCancelled()) return false;
+			int index = getRowBase(origin, i, rows, cols);
+			for (int j = 0; j < cols; ++j, index+=colStep) {
+				it.hasNext();
+				if (mit!=null) {
+					mit.hasNext();
+					if (!mb[mit.index]) {
+						out[index] = ImageService.NAN_PIX_BYTE;
+						continue;
+					}
+				}
+				final int val = data[it.index];
+				out[index] = lut!=null && val>=lo && val<=hi
+						   ? lut[val-lo]
+						   : getIndex(val);
+			}
+		}
+		return true;
+	}
+
+	private boolean mapFloats(float[] data, IndexIterator it, boolean[] mb, IndexIterator mit, ImageOrigin origin,
+			                  int rows, int cols, int colStep, byte[] out, int rowStart, int rowEnd, ImageServiceBean bean) {
+
+		for (int i = rowStart; i < rowEnd; ++i) {
+			if (bean!=null && bean.isCancelled()) return false;
+			int index = getRowBase(origin, i, rows, cols);
+			for (int j = 0; j < cols; ++j, index+=colStep) {
+				it.hasNext();
+				if (mit!=null) {
+					mit.hasNext();
+					if (!mb[mit.index]) {
+						out[index] = ImageService.NAN_PIX_BYTE;
+						continue;
+					}
+				}
+				out[index] = getIndex(data[it.index]);
+			}
+		}
+		return true;
+	}
+
+	private boolean mapDoubles(double[] data, IndexIterator it, boolean[] mb, IndexIterator mit, ImageOrigin origin,
+			                   int rows, int cols, int colStep, byte[] out, int rowStart, int rowEnd, ImageServiceBean bean) {
+
+		for (int i = rowStart; i < rowEnd; ++i) {
+			if (bean!=null && bean.isCancelled()) return false;
+			int index = getRowBase(origin, i, rows, cols);
+			for (int j = 0; j < cols; ++j, index+=colStep) {
+				it.hasNext();
+				if (mit!=null) {
+					mit.hasNext();
+					if (!mb[mit.index]) {
+						out[index] = ImageService.NAN_PIX_BYTE;
+						continue;
+					}
+				}
+				out[index] = getIndex(data[it.index]);
+			}
+		}
+		return true;
+	}
+
+	private boolean mapAny(Dataset image, IndexIterator it, boolean[] mb, IndexIterator mit, ImageOrigin origin,
+			               int rows, int cols, int colStep, byte[] out, int rowStart, int rowEnd, ImageServiceBean bean) {
+
+		for (int i = rowStart; i < rowEnd; ++i) {
+			if (bean!=null && bean.isCancelled()) return false;
+			int index = getRowBase(origin, i, rows, cols);
+			for (int j = 0; j < cols; ++j, index+=colStep) {
+				it.hasNext();
+				if (mit!=null) {
+					mit.hasNext();
+					if (!mb[mit.index]) {
+						out[index] = ImageService.NAN_PIX_BYTE;
+						continue;
+					}
+				}
+				out[index] = getIndex(image.getElementDoubleAbs(it.index));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Colour index of a value as read from the image
+	 * @param val
+	 * @return
+	 */
+	private final byte getIndex(final double val) {
+		return getPixelColorIndex(log ? Math.log10(val-logOffset) : val, min, max, scale, maxPixel, minCut, maxCut);
+	}
+
+	/**
+	 * The image value which maps to a given bound
+	 * @param bound
+	 * @return
+	 */
+	private double unlog(double bound) {
+		return log ? Math.pow(10, bound)+logOffset : bound;
+	}
+
+	/**
+	 * Colour index of every integer value in [lo, hi]
+	 * @param lo
+	 * @param hi
+	 * @return
+	 */
+	private byte[] createLut(int lo, int hi) {
+		final byte[] lut = new byte[hi-lo+1];
+		for (int i = 0; i < lut.length; i++) {
+			lut[i] = getIndex(lo+i);
+		}
+		return lut;
+	}
+
+	/**
+	 * private finals inline well by the compiler.
+	 * @param val
+	 * @param min
+	 * @param max
+	 * @param scale
+	 * @param maxPixel
+	 * @param minCut
+	 * @param maxCut
+	 */
+	final static byte getPixelColorIndex(final double  val,
+										 final double  min,
+										 final double  max,
+										 final double  scale,
+										 final double  maxPixel,
+										 final double  minCut,
+										 final double  maxCut) {
+
+		// Deal with bounds
+		if (Double.isNaN(val)) return ImageService.NAN_PIX_BYTE;
+
+		if (val<=minCut) return ImageService.MIN_PIX_BYTE;
+		if (val>=maxCut) return ImageService.MAX_PIX_BYTE;
+
+		// If the pixel is within the bounds
+		double scaled_pixel;
+		if (val < min) {
+			scaled_pixel = 0;
+		} else if (val >= max) {
+			scaled_pixel = maxPixel;
+		} else {
+			scaled_pixel = val - min;
+		}
+		scaled_pixel = scaled_pixel * scale;
+
+		return (byte) (0x000000FF & ((int) scaled_pixel));
+	}
+}
@@ -21,10 +21,8 @@ import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
-import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
 import org.eclipse.dawnsci.analysis.dataset.impl.Maths;
 import org.eclipse.dawnsci.analysis.dataset.impl.RGBDataset;
-import org.eclipse.dawnsci.analysis.dataset.impl.Stats;
 import org.eclipse.dawnsci.plotting.api.histogram.HistogramBound;
 import org.eclipse.dawnsci.plotting.api.histogram.IImageService;
 import org.eclipse.dawnsci.plotting.api.histogram.IPaletteService;
@@ -99,9 +97,9 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 	private static final int NAN_PIX_INDEX = 254;
 	private static final int MAX_PIX_INDEX = 255;
 	
-	private static final byte MIN_PIX_BYTE = (byte)(MIN_PIX_INDEX & 0xFF);
-	private static final byte NAN_PIX_BYTE = (byte)(NAN_PIX_INDEX & 0xFF);
-	private static final byte MAX_PIX_BYTE = (byte)(MAX_PIX_INDEX & 0xFF);
+	static final byte MIN_PIX_BYTE = (byte)(MIN_PIX_INDEX & 0xFF);
+	static final byte NAN_PIX_BYTE = (byte)(NAN_PIX_INDEX & 0xFF);
+	static final byte MAX_PIX_BYTE = (byte)(MAX_PIX_INDEX & 0xFF);
 	
 	/**
 	 * getImageData(...) provides an image in a given palette data and origin.
@@ -146,9 +144,9 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 		double maxCut = getMaxCut(bean);
 		double minCut = getMinCut(bean);
 
-		// now deal with the log if needed
+		// now deal with the log if needed, the pixels themselves are logged
+		// as they are mapped so that we do not need a logged copy of the image.
 		if (bean.isLogColorScale()) {
-			image = getImageLoggedData(bean);
 			max = Math.log10(max);
 			// note createMaxMin() -> getFastStatistics() -> getImageLogged() which ensures min >= 0 
 			min = Math.log10(min);
@@ -174,6 +172,7 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 		if (bean.getFunctionObject()!=null && bean.getFunctionObject() instanceof FunctionContainer) {
 			final FunctionContainer fc = (FunctionContainer)bean.getFunctionObject();
 			// TODO This does not support masking or cut bounds for zingers and dead pixels.
+			if (bean.isLogColorScale()) image = getImageLoggedData(bean);
 			return SWTImageUtils.createImageData(image, min, max, fc.getRedFunc(), 
 																  fc.getGreenFunc(), 
 																  fc.getBlueFunc(), 
@@ -214,84 +213,21 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 							? (BooleanDataset)DatasetUtils.cast((Dataset)bean.getMask(), Dataset.BOOL)
 							: null;
 
-		ImageData imageData = null;
-
 		// We use a byte array directly as this is faster than using setPixel(...)
 		// on image data. Set pixel does extra floating point operations. The downside
 		// is that by doing this we certainly have to have 8 bit as getPixelColorIndex(...)
 		// forces the use of on byte.
 		final byte[] scaledImageAsByte = new byte[len];
 
-		if (origin==ImageOrigin.TOP_LEFT) { 
-			
-			int index = 0;
-			// This loop is usually the same as the image is read in but not always depending on loader.
-			for (int i = 0; i<shape[0]; ++i) {
-				if (bean.isCancelled()) return null;				
-				for (int j = 0; j<shape[1]; ++j) {
-					
-					// This saves a value lookup when the pixel is certainly masked.
-					scaledImageAsByte[index] = mask==null || mask.getBoolean(i,j)
-									? getPixelColorIndex(image.getDouble(i,j), min, max, scale, maxPixel, minCut, maxCut)
-									: NAN_PIX_BYTE;
-					++index;
-				}
-			}
-			imageData = new ImageData(shape[1], shape[0], 8, palette, 1, scaledImageAsByte);
-	
-		} else if (origin==ImageOrigin.BOTTOM_LEFT) {
-
-			int index = 0;
-			// This loop is slower than looping over all data and using image.getElementDoubleAbs(...)
-			// However it reorders data for the axes
-			for (int i = shape[1]-1; i>=0; --i) {
-				if (bean.isCancelled()) return null;
-				for (int j = 0; j<shape[0]; ++j) {
-					
-					// This saves a value lookup when the pixel is certainly masked.
-					scaledImageAsByte[index]  = mask==null || mask.getBoolean(j,i)
-									? getPixelColorIndex(image.getDouble(j,i), min, max, scale, maxPixel, minCut, maxCut)
-									: NAN_PIX_BYTE;
-					index++;
-				}
-			}
-			imageData = new ImageData(shape[0], shape[1], 8, palette, 1, scaledImageAsByte);
-			
-		} else if (origin==ImageOrigin.BOTTOM_RIGHT) {
-
-			int index = 0;
-			// This loop is slower than looping over all data and using image.getElementDoubleAbs(...)
-			// However it reorders data for the axes
-			for (int i = shape[0]-1; i>=0; --i) {
-				if (bean.isCancelled()) return null;
-				for (int j = shape[1]-1; j>=0; --j) {
-
-					// This saves a value lookup when the pixel is certainly masked.
-					scaledImageAsByte[index] = mask==null || mask.getBoolean(i,j)
-									? getPixelColorIndex(image.getDouble(i,j), min, max, scale, maxPixel, minCut, maxCut)
-									: NAN_PIX_BYTE;
-						index++;
-				}
-			}
-			imageData = new ImageData(shape[1], shape[0], 8, palette, 1, scaledImageAsByte);
-			
-		} else if (origin==ImageOrigin.TOP_RIGHT) {
-
-			int index = 0;
-			// This loop is slower than looping over all data and using image.getElementDoubleAbs(...)
-			// However it reorders data for the axes
-			for (int i = 0; i<shape[1]; ++i) {
-				if (bean.isCancelled()) return null;
-				for (int j = shape[0]-1; j>=0; --j) {
-					scaledImageAsByte[index]  = mask==null || mask.getBoolean(j,i)
-									? getPixelColorIndex(image.getDouble(j, i), min, max, scale, maxPixel, minCut, maxCut)
-									: NAN_PIX_BYTE;
-					index++;
-				}
-			}
-			imageData = new ImageData(shape[0], shape[1], 8, palette, 1, scaledImageAsByte);
-		}
+		// The mapper reads the image in buffer order and puts each pixel where the
+		// origin requires, which is much faster than looping with getDouble(i,j).
+		final ImageMapper mapper = new ImageMapper(min, max, scale, maxPixel, minCut, maxCut, 
+				                                   bean.isLogColorScale(), bean.isLogColorScale() ? bean.getLogOffset() : Double.NaN);
+		if (!ImageTiles.map(mapper, image, mask, origin, scaledImageAsByte, bean)) return null;
 
+		final ImageData imageData = new ImageData(ImageMapper.getWidth(shape, origin), 
+				                                  ImageMapper.getHeight(shape, origin), 
+				                                  8, palette, 1, scaledImageAsByte);
 		imageData.alpha = bean.getAlpha();
 		return imageData;
 	}
@@ -376,43 +312,6 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 		}		
 	}
 
-	/**
-	 * private finals inline well by the compiler.
-	 * @param val
-	 * @param min
-	 * @param max
-	 * @param scale
-	 * @param maxPixel
-	 * @param scaledImageAsByte
-	 */
-	private final static byte getPixelColorIndex(final double  val, 
-												 final double  min, 
-												 final double  max, 
-												 final double  scale, 
-												 final double  maxPixel,
-												 final double  minCut,
-												 final double  maxCut) {
-
-		// Deal with bounds
-		if (Double.isNaN(val)) return NAN_PIX_BYTE;
-
-		if (val<=minCut) return MIN_PIX_BYTE;
-		if (val>=maxCut) return MAX_PIX_BYTE;
-
-		// If the pixel is within the bounds
-		double scaled_pixel;
-		if (val < min) {
-			scaled_pixel = 0;
-		} else if (val >= max) {
-			scaled_pixel = maxPixel;
-		} else {
-			scaled_pixel = val - min;
-		}
-		scaled_pixel = scaled_pixel * scale;
-
-		return (byte) (0x000000FF & ((int) scaled_pixel));
-	}
-
 	/**
 	 * Get the logged image value and cache the result.
 	 * 
@@ -464,56 +363,32 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 	 */
 	public double[] getFastStatistics(ImageServiceBean bean) {
 		
-		Dataset image    = getImageLoggedData(bean);
-		
-		if (bean.getHistogramType()==HistoType.OUTLIER_VALUES && !bean.isLogColorScale()) {
-
-			double[] ret = null;
-			try {
-			    double[] stats = Stats.outlierValues(image, bean.getLo(), bean.getHi(), -1);
-			    ret = new double[]{stats[0], stats[1], -1};
-			} catch (IllegalArgumentException iae) {
-				bean.setLo(10);
-				bean.setHi(90);
-			    double[] stats = Stats.outlierValues(image, bean.getLo(), bean.getHi(), -1);
-			    ret = new double[]{stats[0], stats[1], -1};
-			}
-
-		    if (bean.isLogColorScale() && ret!=null) {
-		    	ret = new double[]{Math.pow(10, ret[0]), Math.pow(10, ret[1]), -1};
-			}
-
-			return ret;
-		}
-		
-		double min = Double.MAX_VALUE;
-		double max = -Double.MAX_VALUE;
-		double sum = 0.0;
-		int size = 0;
+		// Real images are logged pixel by pixel as the statistics are 
+		// made rather than making a logged copy of the image.
+		final boolean logPixels = bean.isLogColorScale() && !((Dataset)bean.getImage()).isComplex();
+		Dataset image    = logPixels ? (Dataset)bean.getImage() : getImageLoggedData(bean);
 		
 		BooleanDataset mask = bean.getMask()!=null
 	                        ? (BooleanDataset) DatasetUtils.cast(bean.getMask(), Dataset.BOOL)
 	                        : null;
 
-	    // Big loop warning:
-	    final IndexIterator it = image.getIterator();
-	    final IndexIterator mit = mask == null ? null : mask.getIterator();
-		while (it.hasNext()) {
-			
-			final double val = image.getElementDoubleAbs(it.index);
-			if (mit != null && mit.hasNext()) {
-				if (!mask.getElementBooleanAbs(mit.index)) {
-					continue; // Masked!
-			    }
-			}
+		// Done in bands of rows which may be run in parallel, see ImageTiles
+		final double logOffset = logPixels ? bean.getLogOffset() : Double.NaN;
+		final ImageStatistics stats = ImageTiles.getStatistics(image, mask, bean, logPixels, logOffset);
+		final double min = stats.min;
+		final double max = stats.max;
+		final double sum = stats.sum;
+		final int   size = stats.size;
 
-			if (Double.isNaN(val))      continue;
-			if (!bean.isInBounds(val))  continue;
+		if (bean.getHistogramType()==HistoType.OUTLIER_VALUES && !bean.isLogColorScale()) {
 
-			sum += val;
-			if (val < min) min = val;
-			if (val > max) max = val;
-			size++;
+			if (bean.getLo()<0 || bean.getHi()>100 || bean.getLo()>=bean.getHi()) {
+				bean.setLo(10);
+				bean.setHi(90);
+			}
+			// The percentiles come from a histogram between min and max rather than sorting
+			final QuantileSketch sketch = getQuantileSketch(image, mask, bean, stats, false, logOffset);
+			return new double[]{sketch.getQuantile(bean.getLo()/100d), sketch.getQuantile(bean.getHi()/100d), -1};
 		}
 		
 		double retMax = Double.NaN;
@@ -521,12 +396,8 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 		
 		if (bean.getHistogramType()==HistoType.MEDIAN) { 
 			
-			double median = Double.NaN;
-			try {
-				median = ((Number)Stats.median(image)).doubleValue(); // SLOW
-			} catch (Exception ne) {
-				median = ((Number)Stats.median(image.cast(Dataset.INT16))).doubleValue();// SLOWER
-			}
+			final QuantileSketch sketch = getQuantileSketch(image, mask, bean, stats, logPixels, logOffset);
+			double median = sketch.getQuantile(0.5);
 			retMax = 2 * median;
 			retExtra=median;
 			
@@ -546,6 +417,16 @@ public class ImageService extends AbstractServiceFactory implements IImageServic
 		return new double[]{min, retMax, retExtra, max};
 	}
 
+	/**
+	 * Histogram of the image between the min and max found by getFastStatistics(...)
+	 * from which the median and percentiles are read.
+	 */
+	private QuantileSketch getQuantileSketch(Dataset image, BooleanDataset mask, ImageServiceBean bean, ImageStatistics stats, boolean log, double logOffset) {
+		final boolean integral = !log && !image.hasFloatingPointElements();
+		final QuantileSketch sketch = new QuantileSketch(stats.min, stats.max, integral);
+		return ImageTiles.accumulate(sketch, image, mask, bean, log, logOffset);
+	}
+
 	@Override
 	public Object create(@SuppressWarnings("rawtypes") Class serviceInterface, IServiceLocator parentLocator, IServiceLocator locator) {
 		
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.services;
+
+/**
+ * The min, max and sum of the unmasked, in bounds and not NaN pixels
+ * of some or all of an image. Statistics for separate parts of an image
+ * are combined with merge(...).
+ */
+class ImageStatistics extends PixelAccumulator<ImageStatistics> {
+
+	double min  = Double.MAX_VALUE;
+	double max  = -Double.MAX_VALUE;
+	double sum  = 0.0;
+	int    size = 0;
+
+	@Override
+	final void add(final double val) {
+		sum += val;
+		if (val < min) min = val;
+		if (val > max) max = val;
+		size++;
+	}
+
+	/**
+	 * Adds the statistics of another part of the image to this one. The sum
+	 * depends on the order that parts are merged in so always merge in row order
+	 * if the result needs to be repeatable.
+	 *
+	 * @param other
+	 */
+	@Override
+	void merge(ImageStatistics other) {
+		if (other.min < min) min = other.min;
+		if (other.max > max) max = other.max;
+		sum  += other.sum;
+		size += other.size;
+	}
+
+	@Override
+	ImageStatistics create() {
+		return new ImageStatistics();
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean.ImageOrigin;
+
+/**
+ * Splits an image into bands of rows for mapping, statistics and histograms.
+ *
+ * The bands depend only on the shape of the image so the serial and parallel
+ * modes work on the same bands and merge their statistics in the same order.
+ * This means that the two modes give identical images.
+ *
+ * The parallel mode is off by default, set the system property
+ * org.dawnsci.plotting.services.image.parallel=true to use a fork/join pool
+ * shared by all image services.
+ */
+class ImageTiles {
+
+	/**
+	 * Set to true to map and get statistics of large images in parallel
+	 */
+	static final String PARALLEL_PROPERTY = "org.dawnsci.plotting.services.image.parallel";
+
+	/**
+	 * Roughly the number of pixels in each band.
+	 */
+	private static final int BAND_SIZE = 1 << 18;
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool==null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	private static boolean isParallel(Dataset image) {
+		return Boolean.getBoolean(PARALLEL_PROPERTY) && getBandCount(image.getShape()) > 1;
+	}
+
+	/**
+	 *
+	 * @param shape
+	 * @return number of rows in each band, the last may have fewer.
+	 */
+	static int getBandRows(int[] shape) {
+		if (shape.length!=2) return Integer.MAX_VALUE;
+		return Math.max(1, BAND_SIZE / Math.max(1, shape[1]));
+	}
+
+	static int getBandCount(int[] shape) {
+		if (shape.length!=2) return 1;
+		final int bandRows = getBandRows(shape);
+		return (shape[0]+bandRows-1) / bandRows;
+	}
+
+	/**
+	 * Iterator over rows [rowStart, rowEnd) of a 2D dataset, giving the absolute
+	 * index in buffer order. Datasets which are not 2D are iterated entirely.
+	 *
+	 * @param data
+	 * @param rowStart
+	 * @param rowEnd
+	 * @return
+	 */
+	static IndexIterator getRowIterator(Dataset data, int rowStart, int rowEnd) {
+		final int[] shape = data.getShape();
+		if (shape.length!=2 || (rowStart==0 && rowEnd==shape[0])) return data.getIterator();
+		return data.getSliceIterator(new int[]{rowStart, 0}, new int[]{rowEnd, shape[1]}, null);
+	}
+
+	/**
+	 * Maps the image band by band, in parallel if that is switched on.
+	 *
+	 * @return false if the bean was cancelled.
+	 */
+	static boolean map(final ImageMapper mapper, final Dataset image, final BooleanDataset mask, final ImageOrigin origin, final byte[] out, final ImageServiceBean bean) {
+
+		if (!isParallel(image)) return mapper.map(image, mask, origin, out, bean);
+
+		final int[] shape    = image.getShape();
+		final int   bandRows = getBandRows(shape);
+		getPool().invoke(new BandAction(0, getBandCount(shape)) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void compute(int band) {
+				final int rowStart = band*bandRows;
+				mapper.map(image, mask, origin, out, rowStart, Math.min(shape[0], rowStart+bandRows), bean);
+			}
+		});
+		return !bean.isCancelled();
+	}
+
+	/**
+	 * Statistics of the whole image, see accumulate(...)
+	 */
+	static ImageStatistics getStatistics(Dataset image, BooleanDataset mask, ImageServiceBean bean, boolean log, double logOffset) {
+		return accumulate(new ImageStatistics(), image, mask, bean, log, logOffset);
+	}
+
+	/**
+	 * Reads the whole image into accumulators. Each band is done separately, 
+	 * in parallel if that is switched on, and the results merged in row order.
+	 * Bands not started before the bean is cancelled are left out.
+	 *
+	 * @param prototype an empty accumulator, the others are made with create()
+	 * @param image
+	 * @param mask
+	 * @param bean
+	 * @param log true to accumulate log10(value-logOffset)
+	 * @param logOffset
+	 * @return
+	 */
+	static <T extends PixelAccumulator<T>> T accumulate(final T prototype, final Dataset image, final BooleanDataset mask, final ImageServiceBean bean, final boolean log, final double logOffset) {
+
+		final int[] shape    = image.getShape();
+		final int   bandRows = getBandRows(shape);
+		final int   count    = getBandCount(shape);
+		final List<T> bands  = new ArrayList<T>(count);
+		for (int band = 0; band < count; band++) bands.add(null);
+
+		final BandAction action = new BandAction(0, count) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void compute(int band) {
+				if (count>1 && bean.isCancelled()) return;
+				final int rowStart = band*bandRows;
+				final int rowEnd   = shape.length==2 ? Math.min(shape[0], rowStart+bandRows) : 0;
+				final T acc = prototype.create();
+				acc.read(image, mask, bean, rowStart, rowEnd, log, logOffset);
+				bands.set(band, acc);
+			}
+		};
+		if (isParallel(image)) {
+			getPool().invoke(action);
+		} else {
+			for (int band = 0; band < count; band++) action.compute(band);
+		}
+
+		final T ret = prototype.create();
+		for (T acc : bands) {
+			if (acc!=null) ret.merge(acc);
+		}
+		return ret;
+	}
+
+	/**
+	 * Splits a range of bands in half until there is one band per task.
+	 */
+	private static abstract class BandAction extends RecursiveAction {
+
+		private static final long serialVersionUID = -2265098453178962934L;
+
+		private int start, end;
+
+		BandAction(int start, int end) {
+			this.start = start;
+			this.end   = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end-start <= 0) return;
+			if (end-start == 1) {
+				compute(start);
+				return;
+			}
+			final int mid = (start+end) >>> 1;
+			invokeAll(copy(start, mid), copy(mid, end));
+		}
+
+		private BandAction copy(int s, int e) {
+			final BandAction outer = this;
+			return new BandAction(s, e) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute(int band) {
+					outer.compute(band);
+				}
+			};
+		}
+
+		protected abstract void compute(int band);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.services;
+
+import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+import org.eclipse.dawnsci.plotting.api.histogram.ImageServiceBean;
+
+/**
+ * Something which is built from the unmasked, in bounds and not NaN pixels
+ * of some or all of an image. Accumulators for separate bands of an image
+ * are combined with merge(...), see ImageTiles.
+ *
+ * @param <T> the type of the concrete accumulator
+ */
+abstract class PixelAccumulator<T extends PixelAccumulator<T>> {
+
+	/**
+	 * Called for each pixel which is not masked, not NaN and in bounds.
+	 * @param val
+	 */
+	abstract void add(double val);
+
+	/**
+	 * Adds another accumulator of the same configuration to this one.
+	 * @param other
+	 */
+	abstract void merge(T other);
+
+	/**
+	 *
+	 * @return a new empty accumulator with the same configuration as this one.
+	 */
+	abstract T create();
+
+	/**
+	 * Adds rows [rowStart, rowEnd) of a 2D image, or of all the image if it
+	 * is not 2D. The primitive buffer is read directly for the common dtypes.
+	 *
+	 * @param image
+	 * @param mask may be null
+	 * @param bean
+	 * @param rowStart
+	 * @param rowEnd
+	 * @param log   true to add log10(value-logOffset), without creating a
+	 *              logged copy of the image.
+	 * @param logOffset ignored if NaN or infinite
+	 */
+	void read(Dataset image, BooleanDataset mask, ImageServiceBean bean, int rowStart, int rowEnd, boolean log, double logOffset) {
+
+		final double offset = Double.isNaN(logOffset) || Double.isInfinite(logOffset) ? 0 : logOffset;
+
+	    // Big loop warning:
+	    final IndexIterator it  = ImageTiles.getRowIterator(image, rowStart, rowEnd);
+	    final IndexIterator mit = mask == null ? null : ImageTiles.getRowIterator(mask, rowStart, rowEnd);
+	    final boolean[]     mb  = mask == null ? null : mask.getData();
+
+	    switch (image.getDtype()) {
+	    case Dataset.INT16:
+	    	final short[] sdata = (short[])image.getBuffer();
+	    	while (it.hasNext()) {
+	    		if (mit != null && mit.hasNext() && !mb[mit.index]) continue; // Masked!
+	    		accept(log ? Math.log10(sdata[it.index]-offset) : sdata[it.index], bean);
+	    	}
+	    	break;
+	    case Dataset.INT32:
+	    	final int[] idata = (int[])image.getBuffer();
+	    	while (it.hasNext()) {
+	    		if (mit != null && mit.hasNext() && !mb[mit.index]) continue;
+	    		accept(log ? Math.log10(idata[it.index]-offset) : idata[it.index], bean);
+	    	}
+	    	break;
+	    case Dataset.FLOAT32:
+	    	final float[] fdata = (float[])image.getBuffer();
+	    	while (it.hasNext()) {
+	    		if (mit != null && mit.hasNext() && !mb[mit.index]) continue;
+	    		accept(log ? Math.log10(fdata[it.index]-offset) : fdata[it.index], bean);
+	    	}
+	    	break;
+	    case Dataset.FLOAT64:
+	    	final double[] ddata = (double[])image.getBuffer();
+	    	while (it.hasNext()) {
+	    		if (mit != null && mit.hasNext() && !mb[mit.index]) continue;
+	    		accept(log ? Math.log10(ddata[it.index]-offset) : ddata[it.index], bean);
+	    	}
+	    	break;
+	    default:
+	    	while (it.hasNext()) {
+	    		if (mit != null && mit.hasNext() && !mb[mit.index]) continue;
+	    		final double val = image.getElementDoubleAbs(it.index);
+	    		accept(log ? Math.log10(val-offset) : val, bean);
+	    	}
+	    	break;
+	    }
+	}
+
+	private final void accept(final double val, final ImageServiceBean bean) {
+		if (Double.isNaN(val))      return;
+		if (!bean.isInBounds(val))  return;
+		add(val);
+	}
+}
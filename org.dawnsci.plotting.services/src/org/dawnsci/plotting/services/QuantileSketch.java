@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.services;
+
+/**
+ * A fixed bin histogram of pixel values between a known min and max, used
+ * to find the median and percentiles of an image without sorting it.
+ *
+ * It is built in one pass over the pixels and sketches of separate bands of
+ * the image can be merged as long as they were created with the same min
+ * and max. Quantiles are within error*(max-min) of the exact value. Integer
+ * images with a range smaller than the number of bins get a bin per value
+ * and their quantiles are exact.
+ *
+ * The error may be set with the system property
+ * org.dawnsci.plotting.services.histogram.error, the default is 1e-4.
+ */
+class QuantileSketch extends PixelAccumulator<QuantileSketch> {
+
+	static final String ERROR_PROPERTY = "org.dawnsci.plotting.services.histogram.error";
+
+	private static final double DEFAULT_ERROR = 1e-4;
+	private static final int    MAX_BINS      = 1 << 20;
+
+	private final double  min, max, width;
+	private final boolean integral;
+	private final int[]   counts;
+	private long          total;
+
+	/**
+	 * A sketch with the error taken from the system property.
+	 * @param min
+	 * @param max
+	 * @param integral true if all the values are integers
+	 */
+	QuantileSketch(double min, double max, boolean integral) {
+		this(min, max, getDefaultError(), integral);
+	}
+
+	/**
+	 *
+	 * @param min  smallest value which will be added
+	 * @param max  largest value which will be added
+	 * @param error largest error in a quantile as a fraction of max-min
+	 * @param integral true if all the values are integers
+	 */
+	QuantileSketch(double min, double max, double error, boolean integral) {
+		this.min = min;
+		this.max = max;
+
+		int bins = (int)Math.min(MAX_BINS, Math.ceil(1d/error));
+		if (integral && max-min < bins) {
+			bins = (int)(max-min)+1;
+			this.integral = true;
+			this.width    = 1;
+		} else {
+			this.integral = false;
+			this.width    = max>min ? (max-min)/bins : 1;
+		}
+		this.counts = new int[Math.max(1, bins)];
+	}
+
+	private QuantileSketch(QuantileSketch other) {
+		this.min      = other.min;
+		this.max      = other.max;
+		this.width    = other.width;
+		this.integral = other.integral;
+		this.counts   = new int[other.counts.length];
+	}
+
+	private static double getDefaultError() {
+		try {
+			final String error = System.getProperty(ERROR_PROPERTY);
+			return error!=null ? Double.parseDouble(error) : DEFAULT_ERROR;
+		} catch (NumberFormatException ne) {
+			return DEFAULT_ERROR;
+		}
+	}
+
+	@Override
+	final void add(final double val) {
+		int bin = (int)((val-min)/width);
+		if (bin < 0) bin = 0;
+		if (bin >= counts.length) bin = counts.length-1;
+		counts[bin]++;
+		total++;
+	}
+
+	@Override
+	void merge(QuantileSketch other) {
+		if (other.counts.length!=counts.length || other.min!=min || other.max!=max) {
+			throw new IllegalArgumentException("Cannot merge sketches with different bins!");
+		}
+		for (int i = 0; i < counts.length; i++) counts[i]+=other.counts[i];
+		total += other.total;
+	}
+
+	@Override
+	QuantileSketch create() {
+		return new QuantileSketch(this);
+	}
+
+	/**
+	 *
+	 * @return number of values added
+	 */
+	long getTotal() {
+		return total;
+	}
+
+	/**
+	 * The value below which a fraction q of the values lie, interpolating
+	 * between the closest ranks in the same way as a sorted array would.
+	 *
+	 * @param q between 0 and 1
+	 * @return NaN if nothing has been added
+	 */
+	double getQuantile(double q) {
+		if (total==0)  return Double.NaN;
+		if (max<=min)  return min;
+
+		final double rank = q*(total-1);
+		final long   lo   = (long)Math.floor(rank);
+		final long   hi   = (long)Math.ceil(rank);
+		final double vlo  = getValue(lo);
+		if (hi==lo) return vlo;
+		return vlo + (rank-lo)*(getValue(hi)-vlo);
+	}
+
+	/**
+	 * Estimate of the value which would be at a given index if
+	 * the values were sorted. Values are assumed to be evenly
+	 * spread within each bin.
+	 * @param rank
+	 * @return
+	 */
+	private double getValue(long rank) {
+		long before = 0;
+		for (int bin = 0; bin < counts.length; bin++) {
+			final int count = counts[bin];
+			if (rank < before+count) {
+				if (integral) return min+bin;
+				return Math.min(max, min + width*(bin + (rank-before+0.5)/count));
+			}
+			before += count;
+		}
+		return max;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.system;
+
+/**
+ * A growable circular buffer of doubles which keeps its min and max as
+ * values are added, used for data appended to line traces.
+ *
+ * If a capacity is set the oldest value is removed when a value is added
+ * to a full buffer. The min and max are then kept with a pair of monotonic
+ * queues so adding stays O(1) amortised. NaNs are stored but ignored by the
+ * min and max, in the same way as Dataset.min(true).
+ */
+class DoubleRingBuffer {
+
+	private static final int INITIAL_SIZE = 64;
+
+	private final int capacity;
+	private double[]  data;
+	private long      first; // Sequence number of the oldest value
+	private int       size;
+
+	// Used without a capacity, nothing is ever removed.
+	private double    min = Double.NaN, max = Double.NaN;
+
+	// Used with a capacity, sequence numbers of increasing (min) or decreasing (max) values
+	private long[]    minQueue, maxQueue;
+	private int       minHead, minCount, maxHead, maxCount;
+
+	/**
+	 *
+	 * @param capacity largest number of values kept, 0 or less to keep all values.
+	 */
+	DoubleRingBuffer(int capacity) {
+		this.capacity = capacity>0 ? capacity : Integer.MAX_VALUE;
+		this.data     = new double[Math.min(INITIAL_SIZE, this.capacity)];
+		if (isBounded()) {
+			minQueue = new long[data.length];
+			maxQueue = new long[data.length];
+		}
+	}
+
+	private boolean isBounded() {
+		return capacity!=Integer.MAX_VALUE;
+	}
+
+	int getCapacity() {
+		return isBounded() ? capacity : 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @param index from 0 for the oldest value kept
+	 * @return
+	 */
+	double get(int index) {
+		if (index<0 || index>=size) throw new ArrayIndexOutOfBoundsException(index);
+		return data[(int)((first+index) % data.length)];
+	}
+
+	void add(double value) {
+
+		if (size==capacity) remove();
+		if (size==data.length) grow();
+
+		final long seq = first+size;
+		data[(int)(seq % data.length)] = value;
+		size++;
+		if (Double.isNaN(value)) return;
+
+		if (!isBounded()) {
+			if (Double.isNaN(min) || value<min) min = value;
+			if (Double.isNaN(max) || value>max) max = value;
+			return;
+		}
+
+		// Values which can never be the min or max again are dropped from the back.
+		while (minCount>0 && valueOf(minQueue[(minHead+minCount-1) % minQueue.length]) >= value) minCount--;
+		minQueue[(minHead+minCount) % minQueue.length] = seq;
+		minCount++;
+
+		while (maxCount>0 && valueOf(maxQueue[(maxHead+maxCount-1) % maxQueue.length]) <= value) maxCount--;
+		maxQueue[(maxHead+maxCount) % maxQueue.length] = seq;
+		maxCount++;
+	}
+
+	void add(double[] values) {
+		for (double value : values) add(value);
+	}
+
+	private void remove() {
+		if (minCount>0 && minQueue[minHead]==first) {
+			minHead = (minHead+1) % minQueue.length;
+			minCount--;
+		}
+		if (maxCount>0 && maxQueue[maxHead]==first) {
+			maxHead = (maxHead+1) % maxQueue.length;
+			maxCount--;
+		}
+		first++;
+		size--;
+	}
+
+	/**
+	 * Only happens before anything has been removed, so the sequence
+	 * numbers are still the indices of the values.
+	 */
+	private void grow() {
+		final int length = (int)Math.min(capacity, Math.max(INITIAL_SIZE, 2L*data.length));
+		final double[] grown = new double[length];
+		System.arraycopy(data, 0, grown, 0, size);
+		data = grown;
+
+		if (isBounded()) {
+			minQueue = copyQueue(minQueue, minHead, minCount, length);
+			minHead  = 0;
+			maxQueue = copyQueue(maxQueue, maxHead, maxCount, length);
+			maxHead  = 0;
+		}
+	}
+
+	private static long[] copyQueue(long[] queue, int head, int count, int length) {
+		final long[] copy = new long[length];
+		for (int i = 0; i < count; i++) copy[i] = queue[(head+i) % queue.length];
+		return copy;
+	}
+
+	private double valueOf(long seq) {
+		return data[(int)(seq % data.length)];
+	}
+
+	/**
+	 *
+	 * @return smallest value which is not NaN, NaN if there are none.
+	 */
+	double getMin() {
+		if (!isBounded()) return min;
+		return minCount>0 ? valueOf(minQueue[minHead]) : Double.NaN;
+	}
+
+	/**
+	 *
+	 * @return largest value which is not NaN, NaN if there are none.
+	 */
+	double getMax() {
+		if (!isBounded()) return max;
+		return maxCount>0 ? valueOf(maxQueue[maxHead]) : Double.NaN;
+	}
+
+	/**
+	 *
+	 * @return a copy of the values, oldest first.
+	 */
+	double[] toArray() {
+		final double[] ret = new double[size];
+		final int start = (int)(first % data.length);
+		final int tail  = Math.min(size, data.length-start);
+		System.arraycopy(data, start, ret, 0, tail);
+		System.arraycopy(data, 0, ret, tail, size-tail);
+		return ret;
+	}
+}
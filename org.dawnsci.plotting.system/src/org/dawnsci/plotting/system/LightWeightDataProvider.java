@@ -11,6 +11,7 @@ package org.dawnsci.plotting.system;
 import java.util.Collection;
 import java.util.HashSet;
 
+import org.dawnsci.plotting.draw2d.swtxy.IAppendableDataProvider;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.api.dataset.IErrorDataset;
 import org.eclipse.dawnsci.analysis.api.dataset.ILazyDataset;
@@ -26,16 +27,25 @@ import org.eclipse.nebula.visualization.xygraph.linearscale.Range;
 /**
  * A IDataProvider which uses a Dataset for its data.
  * 
+ * Once data is appended the values are moved into ring buffers which
+ * grow as needed or, if a capacity is set, remove the oldest point when
+ * a new one is added. The datasets are only made again when asked for.
+ * 
  * @author Matthew Gerring
  *
  */
-class LightWeightDataProvider implements IDataProvider {
+class LightWeightDataProvider implements IAppendableDataProvider {
 	
 	private Dataset x;
 	private Dataset y;
 	private Dataset xerr;
 	private Dataset yerr;
 	private Range cachedXRange, cachedYRange;
+	
+	// Used instead of x and y once data has been appended.
+	private DoubleRingBuffer xbuf, ybuf;
+	private int              capacity;
+	private long             replaceCount;
 
 	public LightWeightDataProvider() {
 		
@@ -46,6 +56,7 @@ class LightWeightDataProvider implements IDataProvider {
 
 	@Override
 	public int getSize() {
+		if (ybuf!=null) return ybuf.size();
 		if (y==null) return 0;
 		if (y.getShape()==null || y.getShape().length<1) return 0;
 		return y.getSize();
@@ -53,6 +64,10 @@ class LightWeightDataProvider implements IDataProvider {
 
 	@Override
 	public ISample getSample(int index) {
+		if (xbuf!=null) {
+			if (index<0 || index>=ybuf.size()) return null;
+			return new Sample(xbuf.get(index), ybuf.get(index));
+		}
 		if (x==null||y==null) return null;
 		try {
 			final double xDat = x.getDouble(index);
@@ -69,6 +84,7 @@ class LightWeightDataProvider implements IDataProvider {
 
 	@Override
 	public Range getXDataMinMax() {
+		if (xbuf!=null) return getRange(xbuf);
 		if (x==null) return new Range(0,100);
 		if (cachedXRange!=null) return cachedXRange;
 		try {
@@ -81,6 +97,7 @@ class LightWeightDataProvider implements IDataProvider {
 
 	@Override
 	public Range getYDataMinMax() {
+		if (ybuf!=null) return getRange(ybuf);
 		if (y==null) return new Range(0,100);
 		if (cachedYRange!=null) return cachedYRange;
 		try {
@@ -91,6 +108,13 @@ class LightWeightDataProvider implements IDataProvider {
 		}
 	}
 	
+	private Range getRange(DoubleRingBuffer buf) {
+		final double min = buf.getMin();
+		final double max = buf.getMax();
+		if (Double.isNaN(min) || Double.isNaN(max)) return new Range(0,100);
+		return new Range(min, max);
+	}
+
 	private double getMin(Dataset a) {
 		return a.min(true).doubleValue();
 	}
@@ -130,6 +154,8 @@ class LightWeightDataProvider implements IDataProvider {
 	}
 	
 	private void setDataInternal(IDataset xData, IDataset yData) {
+		this.xbuf = null;
+		this.ybuf = null;
 		this.x = DatasetUtils.convertToDataset(xData);
 		this.y = DatasetUtils.convertToDataset(yData);
 		ILazyDataset xel = x.getError();
@@ -138,6 +164,7 @@ class LightWeightDataProvider implements IDataProvider {
 		if (yel != null) this.yerr = DatasetUtils.convertToDataset(yel.getSlice());
 		this.cachedXRange = null;
 		this.cachedYRange = null;
+		this.replaceCount++;
 	}
 
 	private void fireDataProviderListeners() {
@@ -148,46 +175,124 @@ class LightWeightDataProvider implements IDataProvider {
 	}
 
 	public Dataset getY() {
+		if (y==null && ybuf!=null) y = new DoubleDataset(ybuf.toArray(), ybuf.size());
 		return y;
 	}
 	
 	public Dataset getX() {
+		if (x==null && xbuf!=null) x = new DoubleDataset(xbuf.toArray(), xbuf.size());
 		return x;
 	}
 
 	/**
-	 * Works if x and y have not been set yet.
-	 * Should be possible to make this faster by adding mode whereby viewed size is constant and
-	 * append adds to end and removes from start.
+	 * Works if x and y have not been set yet. Amortised O(1), the
+	 * point is added to the end of ring buffers which replace the
+	 * datasets, see setCapacity(...) to view a constant number of points.
 	 * 
 	 * @param xValue
 	 * @param yValue
 	 */
 	public void append(Number xValue, Number yValue) {
+		createBuffers();
+		if (isFull(1)) replaceCount++;
+		xbuf.add(xValue.doubleValue());
+		ybuf.add(yValue.doubleValue());
+		appended();
+	}
+
+	/**
+	 * Appends many points and then notifies the listeners once.
+	 * 
+	 * @param xValues
+	 * @param yValues must be the same length as xValues
+	 */
+	public void append(double[] xValues, double[] yValues) {
+		if (xValues.length!=yValues.length) throw new IllegalArgumentException("The x and y values must be the same length!");
+		createBuffers();
+		if (isFull(xValues.length)) replaceCount++;
+		xbuf.add(xValues);
+		ybuf.add(yValues);
+		appended();
+	}
 
-		final double[] xArray = x!=null && x.getShape()!=null && x.getShape().length>0
-				              ? (double[])DatasetUtils.cast(x, Dataset.FLOAT64).getBuffer()
-		                      : new double[0];
-		final double[] yArray = y!=null && y.getShape()!=null && y.getShape().length>0
-	                          ? (double[])DatasetUtils.cast(y, Dataset.FLOAT64).getBuffer()
-                              : new double[0];
-	                          
-	    final double[] xa = new double[xArray.length+1];
-	    System.arraycopy(xArray, 0, xa, 0, xArray.length);
-	    xa[xa.length-1] = xValue.doubleValue();
-	    this.x = new DoubleDataset(xa, xa.length);
-	    
-	    final double[] ya = new double[yArray.length+1];
-	    System.arraycopy(yArray, 0, ya, 0, yArray.length);
-	    ya[ya.length-1] = yValue.doubleValue();
-	    this.y = new DoubleDataset(ya, ya.length);
-	    
+	private void appended() {
+		// Made again from the buffers if asked for.
+		this.x    = null;
+		this.y    = null;
+		this.xerr = null;
+		this.yerr = null;
 		this.cachedXRange = null;
 		this.cachedYRange = null;
-	    
 	    fireDataProviderListeners();
 	}
 
+	/**
+	 * 
+	 * @param count
+	 * @return true if adding count points removes the oldest.
+	 */
+	private boolean isFull(int count) {
+		return capacity>0 && (long)ybuf.size()+count > capacity;
+	}
+
+	@Override
+	public long getReplaceCount() {
+		return replaceCount;
+	}
+
+	/**
+	 * Moves the current data into ring buffers, keeping the latest points
+	 * if there are more than the capacity.
+	 */
+	private void createBuffers() {
+		if (xbuf!=null) return;
+		final DoubleRingBuffer xb = new DoubleRingBuffer(capacity);
+		final DoubleRingBuffer yb = new DoubleRingBuffer(capacity);
+		final int size = getSize();
+		if (size>0 && x!=null) {
+			final int start = capacity>0 ? Math.max(0, size-capacity) : 0;
+			for (int i = start; i < size; i++) {
+				xb.add(x.getDouble(i));
+				yb.add(y.getDouble(i));
+			}
+		}
+		this.xbuf = xb;
+		this.ybuf = yb;
+	}
+
+	/**
+	 * 
+	 * @return the largest number of points kept when appending, 0 if there is no limit.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the largest number of points kept when appending, the oldest
+	 * are removed first. This gives a constant viewed size for live data.
+	 * 
+	 * @param capacity 0 or less for no limit.
+	 */
+	public void setCapacity(int capacity) {
+		capacity = Math.max(0, capacity);
+		if (capacity==this.capacity) return;
+		this.capacity = capacity;
+		if (xbuf==null) return;
+		
+		final double[] xa = xbuf.toArray();
+		final double[] ya = ybuf.toArray();
+		final int start = capacity>0 ? Math.max(0, xa.length-capacity) : 0;
+		this.xbuf = new DoubleRingBuffer(capacity);
+		this.ybuf = new DoubleRingBuffer(capacity);
+		for (int i = start; i < xa.length; i++) {
+			xbuf.add(xa[i]);
+			ybuf.add(ya[i]);
+		}
+		replaceCount++;
+		appended();
+	}
+
 	public boolean hasErrors() {
 		if (x instanceof IErrorDataset && ((IErrorDataset) x).hasErrors())
 			return true;
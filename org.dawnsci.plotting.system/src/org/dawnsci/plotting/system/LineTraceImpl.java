@@ -361,6 +361,25 @@ public class LineTraceImpl implements ILineTrace, ITraceListener{
 		return prov.getX();
 	}
 
+	/**
+	 * The largest number of points kept when data is appended to this
+	 * trace, the oldest are removed first. Use this to show a constant
+	 * number of points from a live monitor.
+	 * 
+	 * @param capacity 0 or less for no limit.
+	 */
+	public void setAppendCapacity(int capacity) {
+		LightWeightDataProvider prov = (LightWeightDataProvider)trace.getDataProvider();
+		if (prov==null) return;
+		prov.setCapacity(capacity);
+	}
+
+	public int getAppendCapacity() {
+		LightWeightDataProvider prov = (LightWeightDataProvider)trace.getDataProvider();
+		if (prov==null) return 0;
+		return prov.getCapacity();
+	}
+
 	public int getErrorBarWidth() {
 		return trace.getErrorBarCapWidth();
 	}
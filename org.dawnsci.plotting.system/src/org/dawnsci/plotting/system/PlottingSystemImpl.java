@@ -516,6 +516,38 @@ public class PlottingSystemImpl<T> extends AbstractPlottingSystem<T> {
 		}
 	}
 
+	/**
+	 * Appends many points to a line trace and updates it once, which is
+	 * much faster than calling append(...) for each point of a live scan.
+	 * 
+	 * @param name of the trace
+	 * @param xValues
+	 * @param yValues must be the same length as xValues
+	 * @param monitor
+	 * @throws Exception
+	 */
+	public void append( final String           name,
+			            final double[]         xValues,
+					    final double[]         yValues,
+					    final IProgressMonitor monitor) throws Exception  {
+
+		if (!this.plottingMode.is1D())
+			throw new Exception("Can only add in 1D mode!");
+		if (name == null || "".equals(name))
+			throw new IllegalArgumentException("The dataset name must not be null or empty string!");
+
+		if (getDisplay().getThread() == Thread.currentThread()) {
+			appendInternal(name, xValues, yValues, monitor);
+		} else {
+			getDisplay().syncExec(new Runnable() {
+				@Override
+				public void run() {
+					appendInternal(name, xValues, yValues, monitor);
+				}
+			});
+		}
+	}
+
 	/**
      * Do not call before createPlotPart(...)
      */
@@ -1047,6 +1079,21 @@ public class PlottingSystemImpl<T> extends AbstractPlottingSystem<T> {
 
 		prov.append(xValue, yValue);
 	}
+
+	private void appendInternal(final String           name,
+					            final double[]         xValues,
+							    final double[]         yValues,
+							    final IProgressMonitor monitor) {
+		final ITrace wrapper = traceMap.get(name);
+		if (wrapper==null) return;
+
+		final Trace trace = ((LineTraceImpl)wrapper).getTrace();
+
+		LightWeightDataProvider prov = (LightWeightDataProvider)trace.getDataProvider();
+		if (prov==null) return;
+
+		prov.append(xValues, yValues);
+	}
 	/**
 	 * Override this method to provide an implementation of title setting.
 	 * @param title
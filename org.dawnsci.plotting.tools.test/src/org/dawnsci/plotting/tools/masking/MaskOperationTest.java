@@ -0,0 +1,206 @@
+package org.dawnsci.plotting.tools.masking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.core.commands.operations.DefaultOperationHistory;
+import org.eclipse.core.commands.operations.IOperationHistory;
+import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
+import org.junit.Test;
+
+/**
+ * Paints masks with MaskOperations, undoes and redoes them, and checks the
+ * mask after each step against plain BooleanDatasets made pixel by pixel.
+ *
+ * The mask has four full 256k pixel pages and part of a fifth, so that the
+ * runs cross page boundaries, cover whole pages, end where an empty page
+ * starts and end at the last pixel.
+ */
+public class MaskOperationTest {
+
+	private static final int ROWS    = 700;
+	private static final int COLUMNS = 1500;
+	private static final int PAGE    = 1 << 18;
+
+	@Test
+	public void testRandomPaintUndoRedo() throws Exception {
+
+		final Random            random  = new Random(20261018);
+		final BooleanDataset    mask    = createMask();
+		final IOperationHistory history = createHistory();
+
+		final List<BooleanDataset> states = new ArrayList<BooleanDataset>();
+		states.add((BooleanDataset)mask.clone());
+		int current = 0;
+
+		for (int i = 0; i < 60; i++) {
+			final int choice = random.nextInt(4);
+			if (choice==0 && history.canUndo(MaskOperation.MASK_CONTEXT)) {
+				history.undo(MaskOperation.MASK_CONTEXT, null, null);
+				--current;
+			} else if (choice==1 && history.canRedo(MaskOperation.MASK_CONTEXT)) {
+				history.redo(MaskOperation.MASK_CONTEXT, null, null);
+				++current;
+			} else {
+				final MaskOperation  op       = new MaskOperation(mask);
+				final BooleanDataset expected = paint(random, mask, op);
+				history.execute(op, null, null);
+				states.subList(current+1, states.size()).clear(); // Executing drops the redo history
+				states.add(expected);
+				++current;
+			}
+			assertMask("Step "+i, states.get(current), mask);
+		}
+
+		while (history.canUndo(MaskOperation.MASK_CONTEXT)) {
+			history.undo(MaskOperation.MASK_CONTEXT, null, null);
+			assertMask("Undo to "+(--current), states.get(current), mask);
+		}
+		assertEquals(0, current);
+
+		while (history.canRedo(MaskOperation.MASK_CONTEXT)) {
+			history.redo(MaskOperation.MASK_CONTEXT, null, null);
+			assertMask("Redo to "+(++current), states.get(current), mask);
+		}
+		assertEquals(states.size()-1, current);
+	}
+
+	@Test
+	public void testRunsAcrossPages() throws Exception {
+
+		final BooleanDataset    mask    = createMask();
+		final IOperationHistory history = createHistory();
+		final BooleanDataset    before  = (BooleanDataset)mask.clone();
+
+		final MaskOperation  op       = new MaskOperation(mask);
+		final BooleanDataset toggled  = new BooleanDataset(ROWS, COLUMNS);
+
+		// A run over the first page boundary which ends exactly at the end of
+		// the second page, with the third page left empty.
+		final int end = 2*PAGE-1;
+		for (int y = PAGE/COLUMNS-1; y < end/COLUMNS; y++) {
+			add(op, toggled, mask, y, 0, COLUMNS-1, false);
+		}
+		add(op, toggled, mask, end/COLUMNS, 0, end%COLUMNS, false);
+
+		// A run up to the last pixel, in the part filled fifth page
+		add(op, toggled, mask, ROWS-1, 10, COLUMNS-1, false);
+
+		// Single pixels either side of the fourth page boundary
+		add(op, toggled, mask, (4*PAGE-1)/COLUMNS, (4*PAGE-1)%COLUMNS);
+		add(op, toggled, mask, (4*PAGE)/COLUMNS,   (4*PAGE)%COLUMNS);
+
+		final BooleanDataset expected = xor(before, toggled);
+		assertEquals(count(toggled), op.getSize());
+
+		final long bitset = op.getMemorySize();
+		history.execute(op, null, null);
+		assertMask("Execute", expected, mask);
+		assertTrue("The runs take "+op.getMemorySize()+" bytes", op.getMemorySize() < bitset/1000);
+
+		for (int i = 0; i < 3; i++) {
+			history.undo(MaskOperation.MASK_CONTEXT, null, null);
+			assertMask("Undo", before, mask);
+			history.redo(MaskOperation.MASK_CONTEXT, null, null);
+			assertMask("Redo", expected, mask);
+		}
+	}
+
+	/**
+	 * Adds spans, some over page boundaries, and pixels to the operation.
+	 *
+	 * @return the mask expected after the operation is executed
+	 */
+	private static BooleanDataset paint(Random random, BooleanDataset mask, MaskOperation op) {
+
+		final BooleanDataset toggled = new BooleanDataset(ROWS, COLUMNS);
+
+		final int spans = random.nextInt(200);
+		for (int i = 0; i < spans; i++) {
+			final int y      = random.nextInt(ROWS);
+			final int xStart = random.nextInt(COLUMNS);
+			final int xEnd   = xStart+random.nextInt(COLUMNS-xStart);
+			add(op, toggled, mask, y, xStart, xEnd, random.nextBoolean());
+		}
+
+		final int boundaries = random.nextInt(3);
+		for (int i = 0; i < boundaries; i++) {
+			final int     index = (1+random.nextInt(4))*PAGE;
+			final int     y     = index/COLUMNS;
+			final boolean mv    = random.nextBoolean();
+			if (random.nextBoolean()) { // Rows over the page either side of the boundary
+				final int rows = 1+random.nextInt(PAGE/COLUMNS);
+				for (int r = Math.max(0, y-rows); r < Math.min(ROWS, y+rows); r++) {
+					add(op, toggled, mask, r, 0, COLUMNS-1, mv);
+				}
+			} else {
+				final int x = index%COLUMNS;
+				add(op, toggled, mask, y, Math.max(0, x-1-random.nextInt(100)), Math.min(COLUMNS-1, x+random.nextInt(100)), mv);
+			}
+		}
+
+		final int pixels = random.nextInt(500);
+		for (int i = 0; i < pixels; i++) {
+			add(op, toggled, mask, random.nextInt(ROWS), random.nextInt(COLUMNS));
+		}
+		if (random.nextInt(4)==0) add(op, toggled, mask, ROWS-1, COLUMNS-1);
+
+		assertEquals(count(toggled), op.getSize());
+		return xor(mask, toggled);
+	}
+
+	private static void add(MaskOperation op, BooleanDataset toggled, BooleanDataset mask, int y, int xStart, int xEnd, boolean mv) {
+		op.toggle(y, xStart, xEnd, mv);
+		for (int x = xStart; x <= xEnd; x++) {
+			if (mask.getBoolean(y, x)!=mv) toggled.set(true, y, x);
+		}
+	}
+
+	private static void add(MaskOperation op, BooleanDataset toggled, BooleanDataset mask, int y, int x) {
+		op.toggle(y, x);
+		toggled.set(true, y, x);
+	}
+
+	private static BooleanDataset xor(BooleanDataset mask, BooleanDataset toggled) {
+		final BooleanDataset ret = new BooleanDataset(ROWS, COLUMNS);
+		for (int y = 0; y < ROWS; y++) {
+			for (int x = 0; x < COLUMNS; x++) {
+				ret.set(mask.getBoolean(y, x)!=toggled.getBoolean(y, x), y, x);
+			}
+		}
+		return ret;
+	}
+
+	private static int count(BooleanDataset toggled) {
+		int count = 0;
+		for (boolean b : toggled.getData()) if (b) ++count;
+		return count;
+	}
+
+	private static void assertMask(String message, BooleanDataset expected, BooleanDataset mask) {
+		for (int y = 0; y < ROWS; y++) {
+			for (int x = 0; x < COLUMNS; x++) {
+				if (expected.getBoolean(y, x)!=mask.getBoolean(y, x)) {
+					fail(message+": pixel ("+y+", "+x+") is "+mask.getBoolean(y, x)+" not "+expected.getBoolean(y, x));
+				}
+			}
+		}
+	}
+
+	private static BooleanDataset createMask() {
+		final BooleanDataset mask = new BooleanDataset(ROWS, COLUMNS);
+		mask.fill(true);
+		return mask;
+	}
+
+	private static IOperationHistory createHistory() {
+		final IOperationHistory history = new DefaultOperationHistory();
+		history.setLimit(MaskOperation.MASK_CONTEXT, 100);
+		return history;
+	}
+}
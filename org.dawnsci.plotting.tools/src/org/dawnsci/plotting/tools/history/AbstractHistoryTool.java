@@ -16,6 +16,7 @@ import java.util.Map;
 import org.dawb.common.gpu.Operator;
 import org.dawb.common.services.ServiceManager;
 import org.dawb.common.ui.util.EclipseUtils;
+import org.dawb.common.ui.util.GridUtils;
 import org.dawb.common.ui.wizard.persistence.PersistenceExportWizard;
 import org.dawnsci.plotting.tools.Activator;
 import org.eclipse.core.commands.ExecutionEvent;
@@ -54,11 +55,13 @@ import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.graphics.Region;
-import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.Table;
@@ -76,6 +79,7 @@ public abstract class AbstractHistoryTool extends AbstractToolPage implements Mo
 	
 	protected Composite      composite;
     protected TableViewer    viewer;
+    private   Label          usage;
     protected ITraceListener traceListener;
 	
 	public AbstractHistoryTool(boolean requireCreateListener) {
@@ -144,9 +148,11 @@ public abstract class AbstractHistoryTool extends AbstractToolPage implements Mo
 	public void createControl(Composite parent) {
 		
 		this.composite = new Composite(parent, SWT.NONE);
-		composite.setLayout(new FillLayout());
+		composite.setLayout(new GridLayout(1, false));
+		GridUtils.removeMargins(composite);
 
 		viewer = new TableViewer(composite, SWT.SINGLE | SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER | SWT.FULL_SELECTION);
+		viewer.getControl().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 		int length = createColumns(viewer);
 		
 		// Add variable name column
@@ -177,6 +183,11 @@ public abstract class AbstractHistoryTool extends AbstractToolPage implements Mo
 			}
 		});
 		viewer.setInput(new Object());
+		
+		usage = new Label(composite, SWT.NONE);
+		usage.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		usage.setToolTipText("Data used least recently is written to file when the history is larger than the memory for it.");
+		usage.setText(HistoryStore.getStore().getUsage());
 
 		viewer.getTable().addMouseListener(this);
 		viewer.getTable().addKeyListener(this);
@@ -417,6 +428,7 @@ public abstract class AbstractHistoryTool extends AbstractToolPage implements Mo
 		bean.setSelected(false);
 		updatePlot(bean, false);
 		getHistoryCache().remove(bean.getTraceKey());
+		bean.dispose();
 	    refresh();
 	}
 
@@ -433,8 +445,10 @@ public abstract class AbstractHistoryTool extends AbstractToolPage implements Mo
 		final Iterator<String> it = getHistoryCache().keySet().iterator();
 		while (it.hasNext()) {
 			String key = it.next();
-			if (!getHistoryCache().get(key).isModifiable()) continue;
+			final HistoryBean bean = getHistoryCache().get(key);
+			if (!bean.isModifiable()) continue;
 			it.remove();
+			bean.dispose();
 		}
 	}
 
@@ -452,6 +466,7 @@ public abstract class AbstractHistoryTool extends AbstractToolPage implements Mo
 	protected void refresh() {
 		if (viewer==null || viewer.getControl().isDisposed()) return;
 		viewer.refresh();
+		usage.setText(HistoryStore.getStore().getUsage());
 	}
 	
 	@Override
@@ -8,6 +8,7 @@
  */
 package org.dawnsci.plotting.tools.history;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -43,7 +44,7 @@ class HistoryBean {
 	}
 	
 	// Image compare
-	private Dataset       data;
+	private HistoryStore.Entry    data; // Also the y data of 1D history
 	private List<IDataset>        axes;
 	private Operator              operator;
 	private int                   weighting=100;
@@ -53,7 +54,7 @@ class HistoryBean {
 	private String                variable;
 	
 	// 1D history
-	private Dataset xdata;
+	private HistoryStore.Entry xdata;
 	private RGB             plotColour;
 	private AxisType        axis=AxisType.Y1; 
 	
@@ -113,10 +114,10 @@ class HistoryBean {
 		if (xdata==null) {
 			Dataset data = getData();
 			if (data!=null && data.getRank()==1) {
-				xdata = DatasetFactory.createRange(data.getSize(), Dataset.INT32);
+				setXdata(DatasetFactory.createRange(data.getSize(), Dataset.INT32));
 			}
 		}
-		return xdata;
+		return xdata!=null ? HistoryStore.getStore().get(xdata) : null;
 	}
 
 	public Dataset getData() {
@@ -126,13 +127,60 @@ class HistoryBean {
 			} catch (Exception e) {
 				// Allowed
 			}
-		return data;
+		return data!=null ? HistoryStore.getStore().get(data) : null;
 	}
+	
+	/**
+	 * The shape of the data, which does not read it back if it has
+	 * been written to file.
+	 * @return shape, null if there is no data
+	 */
+	public int[] getShape() {
+		if (expression!=null) {
+			final Dataset set = getData();
+			return set!=null ? set.getShape() : null;
+		}
+		return data!=null ? data.getShape() : null;
+	}
+	
+	/**
+	 * 
+	 * @param set
+	 * @return true if the data is of a shape compatible with set, as in Dataset.isCompatibleWith(...)
+	 */
+	public boolean isCompatibleWith(Dataset set) {
+		final int[] shape = getShape();
+		if (shape==null) return false;
+		return Arrays.equals(squeeze(shape), squeeze(set.getShape()));
+	}
+	
+	private static int[] squeeze(int[] shape) {
+		int rank = 0;
+		for (int i : shape) if (i!=1) rank++;
+		final int[] squeezed = new int[rank];
+		rank = 0;
+		for (int i : shape) if (i!=1) squeezed[rank++] = i;
+		return squeezed;
+	}
+	
 	public void setData(Dataset data) {
-		this.data = data;
+		HistoryStore.getStore().release(this.data);
+		this.data = HistoryStore.getStore().put(data);
 	}
 	public void setXdata(Dataset xdata) {
-		this.xdata = xdata;
+		HistoryStore.getStore().release(this.xdata);
+		this.xdata = HistoryStore.getStore().put(xdata);
+	}
+	
+	/**
+	 * Drops the data from the history store, call when the bean is
+	 * removed from the history.
+	 */
+	public void dispose() {
+		HistoryStore.getStore().release(data);
+		HistoryStore.getStore().release(xdata);
+		data  = null;
+		xdata = null;
 	}
 	public boolean isSelected() {
 		return selected;
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.tools.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.eclipse.dawnsci.analysis.api.dataset.ILazyDataset;
+import org.eclipse.dawnsci.analysis.api.metadata.MetadataType;
+import org.eclipse.dawnsci.analysis.dataset.impl.ByteDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.FloatDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IntegerDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.LongDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.ShortDataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the data of the history tools, which is kept for the life of the
+ * workbench. The data used most recently is kept in memory up to the number
+ * of megabytes set with org.dawnsci.plotting.tools.history.size, by default
+ * a quarter of the maximum heap. Beyond that the data used least recently is
+ * written to a temporary file, as its values one after another, and dropped
+ * from memory. The file is mapped into memory and read back when the data is
+ * next asked for.
+ *
+ * Only the values, shape and name of the data are written. Its errors and
+ * metadata stay in memory with the entry and are put back when it is read.
+ * Data which is not of one number per item, or is over 2GB, is always kept
+ * in memory.
+ */
+class HistoryStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(HistoryStore.class);
+
+	private static final String SIZE_PROPERTY = "org.dawnsci.plotting.tools.history.size";
+
+	private static HistoryStore store;
+
+	static synchronized HistoryStore getStore() {
+		if (store==null) store = new HistoryStore(Long.getLong(SIZE_PROPERTY, Runtime.getRuntime().maxMemory()/4 >> 20) << 20);
+		return store;
+	}
+
+	private final long budget; // Bytes
+	private long       memory; // Bytes of the entries in memory
+	private long       disk;   // Bytes of the entries written to file
+
+	// Entries in memory, least recently used first
+	private final LinkedHashMap<Entry, Boolean> recent = new LinkedHashMap<Entry, Boolean>(17, 0.75f, true);
+
+	private HistoryStore(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Adds data, which may cause other data to be written to file.
+	 *
+	 * @param data
+	 * @return entry to get the data from, null if data is null
+	 */
+	synchronized Entry put(Dataset data) {
+		if (data==null) return null;
+		final Entry entry = new Entry(data);
+		memory += entry.bytes;
+		recent.put(entry, Boolean.TRUE);
+		evict();
+		return entry;
+	}
+
+	/**
+	 *
+	 * @param entry
+	 * @return data of the entry, read back from file if it was written there
+	 */
+	synchronized Dataset get(Entry entry) {
+		if (entry.released) return null;
+		if (entry.data==null) {
+			try {
+				entry.data = entry.read();
+			} catch (Exception e) {
+				logger.error("Cannot read history "+entry.name+" from "+entry.file, e);
+				return null;
+			}
+			memory += entry.bytes;
+			recent.put(entry, Boolean.TRUE);
+			evict();
+		} else {
+			recent.get(entry); // Now the most recent
+		}
+		return entry.data;
+	}
+
+	/**
+	 * Drops the data of the entry from memory and deletes its file.
+	 *
+	 * @param entry
+	 */
+	synchronized void release(Entry entry) {
+		if (entry==null || entry.released) return;
+		entry.released = true;
+		if (entry.data!=null) {
+			memory -= entry.bytes;
+			recent.remove(entry);
+			entry.data = null;
+		}
+		if (entry.file!=null) {
+			disk -= entry.bytes;
+			entry.buffer = null;
+			if (!entry.file.delete()) logger.debug("Cannot delete "+entry.file+" until it is unmapped");
+		}
+	}
+
+	/**
+	 * Writes the least recently used data to file until the rest fits
+	 * in the budget, always keeping the most recent.
+	 */
+	private void evict() {
+		final Iterator<Entry> it = recent.keySet().iterator();
+		for (int i = recent.size(); memory > budget && i > 1; i--) {
+			final Entry entry = it.next();
+			if (!entry.writable) continue;
+			try {
+				if (entry.file==null) {
+					entry.write();
+					disk += entry.bytes;
+				}
+			} catch (Exception e) {
+				logger.error("Cannot write history "+entry.name+" to file, it is kept in memory", e);
+				entry.writable = false;
+				continue;
+			}
+			entry.data = null;
+			memory -= entry.bytes;
+			it.remove();
+		}
+	}
+
+	/**
+	 *
+	 * @return memory and disk used, for showing to the user
+	 */
+	synchronized String getUsage() {
+		return "History: "+format(memory)+" of "+format(budget)+" in memory, "+format(disk)+" on disk";
+	}
+
+	private static String format(long bytes) {
+		if (bytes < 1L<<20) return String.format("%.1f KB", bytes/1024d);
+		if (bytes < 1L<<30) return String.format("%.1f MB", bytes/(double)(1L<<20));
+		return String.format("%.2f GB", bytes/(double)(1L<<30));
+	}
+
+	/**
+	 * The data of one dataset, in memory or in a file or both.
+	 */
+	static class Entry {
+
+		private final int    dtype;
+		private final int[]  shape;
+		private final String name;
+		private final long   bytes;
+
+		private final ILazyDataset       error;    // Null if none
+		private final List<MetadataType> metadata; // Null if none
+
+		private Dataset    data;   // Null if only in the file
+		private File       file;   // Null until written
+		private ByteBuffer buffer; // Mapping of the file
+		private boolean    writable;
+		private boolean    released;
+
+		private Entry(Dataset data) {
+			this.data  = data;
+			this.dtype = data.getDtype();
+			this.shape = data.getShape();
+			this.name  = data.getName();
+			this.error = data.getError();
+
+			List<MetadataType> metadata = null;
+			boolean            readable = true;
+			try {
+				final List<MetadataType> md = data.getMetadata(null);
+				if (md!=null && !md.isEmpty()) metadata = new ArrayList<MetadataType>(md);
+			} catch (Exception e) {
+				readable = false; // Kept in memory rather than lose it
+			}
+			this.metadata = metadata;
+
+			final int size = getElementSize(dtype);
+			this.writable = readable && size > 0 && data.getElementsPerItem()==1;
+			this.bytes    = (long)data.getSize()*data.getElementsPerItem()*(size > 0 ? size : 8);
+			if (bytes > Integer.MAX_VALUE) writable = false;
+		}
+
+		int[] getShape() {
+			return shape.clone();
+		}
+
+		private static int getElementSize(int dtype) {
+			switch (dtype) {
+			case Dataset.INT8:
+				return 1;
+			case Dataset.INT16:
+				return 2;
+			case Dataset.INT32:
+			case Dataset.FLOAT32:
+				return 4;
+			case Dataset.INT64:
+			case Dataset.FLOAT64:
+				return 8;
+			default:
+				return -1;
+			}
+		}
+
+		private void write() throws IOException {
+
+			// The values one after another, from a copy if the data is a view
+			Dataset d = data;
+			if (Array.getLength(d.getBuffer())!=d.getSize()) d = d.getSlice();
+			final Object values = d.getBuffer();
+
+			final File file = File.createTempFile("history", ".tmp");
+			file.deleteOnExit();
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				final ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.nativeOrder());
+				switch (dtype) {
+				case Dataset.INT8:
+					buffer.put((byte[])values);
+					break;
+				case Dataset.INT16:
+					buffer.asShortBuffer().put((short[])values);
+					break;
+				case Dataset.INT32:
+					buffer.asIntBuffer().put((int[])values);
+					break;
+				case Dataset.INT64:
+					buffer.asLongBuffer().put((long[])values);
+					break;
+				case Dataset.FLOAT32:
+					buffer.asFloatBuffer().put((float[])values);
+					break;
+				case Dataset.FLOAT64:
+					buffer.asDoubleBuffer().put((double[])values);
+					break;
+				}
+				this.buffer = buffer;
+				this.file   = file;
+			} finally {
+				raf.close(); // The mapping stays valid
+			}
+		}
+
+		private Dataset read() {
+
+			// A duplicate has its own position and must be told the order again
+			final ByteBuffer in   = buffer.duplicate().order(ByteOrder.nativeOrder());
+			final int        size = (int)(bytes/getElementSize(dtype));
+			in.clear();
+
+			final Dataset d;
+			switch (dtype) {
+			case Dataset.INT8:
+				final byte[] b = new byte[size];
+				in.get(b);
+				d = new ByteDataset(b, shape);
+				break;
+			case Dataset.INT16:
+				final short[] s = new short[size];
+				in.asShortBuffer().get(s);
+				d = new ShortDataset(s, shape);
+				break;
+			case Dataset.INT32:
+				final int[] i = new int[size];
+				in.asIntBuffer().get(i);
+				d = new IntegerDataset(i, shape);
+				break;
+			case Dataset.INT64:
+				final long[] l = new long[size];
+				in.asLongBuffer().get(l);
+				d = new LongDataset(l, shape);
+				break;
+			case Dataset.FLOAT32:
+				final float[] f = new float[size];
+				in.asFloatBuffer().get(f);
+				d = new FloatDataset(f, shape);
+				break;
+			case Dataset.FLOAT64:
+				final double[] v = new double[size];
+				in.asDoubleBuffer().get(v);
+				d = new DoubleDataset(v, shape);
+				break;
+			default:
+				throw new IllegalStateException("Data of type "+dtype+" is not written to file");
+			}
+			d.setName(name);
+			if (metadata!=null) for (MetadataType md : metadata) d.addMetadata(md);
+			if (error!=null) d.setError(error);
+			return d;
+		}
+	}
+}
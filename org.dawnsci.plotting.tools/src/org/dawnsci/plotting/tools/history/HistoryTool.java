@@ -130,7 +130,8 @@ public class HistoryTool extends AbstractHistoryTool implements MouseListener {
 		    }
 		    
 			bean.setSelected(true);
-			history.put(bean.getTraceKey(), bean);
+			final HistoryBean old = history.put(bean.getTraceKey(), bean);
+			if (old!=null) old.dispose();
 		}
 		refresh();
 		updatePlots(true);
@@ -437,9 +438,9 @@ public class HistoryTool extends AbstractHistoryTool implements MouseListener {
 				return bean.getPlotName();
 			}
 			if (columnIndex==4) {
-				Dataset data = bean.getYdata();
-				if (data==null) return "-";
-				return Arrays.toString(bean.getYdata().getShape());
+				final int[] shape = bean.getShape();
+				if (shape==null) return "-";
+				return Arrays.toString(shape);
 			}
 			return "";
 		}
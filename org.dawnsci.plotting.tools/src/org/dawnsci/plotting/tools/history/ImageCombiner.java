@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.tools.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.dawb.common.gpu.IOperation;
+import org.dawb.common.gpu.Operator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+
+/**
+ * The images of the history combined in order, each weighted then applied to
+ * the result so far with its operator, as in
+ *
+ *     ((a op1 w1*b) op2 w2*c) ...
+ *
+ * The whole expression is worked out for each pixel in one pass, in blocks
+ * of rows in parallel, into an image which may be given back to be reused,
+ * rather than making a new image for each weighting and each operator.
+ */
+class ImageCombiner {
+
+	private static final int BLOCK_SIZE = 1<<16; // Pixels in a block of rows, at least one row
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool==null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	private final List<Dataset>  images    = new ArrayList<Dataset>(7);
+	private final List<Double>   weights   = new ArrayList<Double>(7);
+	private final List<Operator> operators = new ArrayList<Operator>(7);
+
+	/**
+	 * Adds an image to the end of the expression.
+	 *
+	 * @param image 2D and of the shape of the others
+	 * @param weight multiplies the image, not used for the first image
+	 * @param operator applies the image to the result so far, not used for the first image
+	 */
+	void add(Dataset image, double weight, Operator operator) {
+		images.add(image);
+		weights.add(weight);
+		operators.add(operator);
+	}
+
+	int size() {
+		return images.size();
+	}
+
+	Dataset getFirst() {
+		return images.isEmpty() ? null : images.get(0);
+	}
+
+	/**
+	 *
+	 * @return true if every operator can be worked out for each pixel
+	 */
+	boolean isFused() {
+		for (int i = 1; i < operators.size(); i++) {
+			if (!isSupported(operators.get(i))) return false;
+		}
+		return true;
+	}
+
+	private static boolean isSupported(Operator operator) {
+		switch (operator) {
+		case ADD:
+		case SUBTRACT:
+		case MULTIPLY:
+		case DIVIDE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Combines the images an operation at a time, each making a new image.
+	 * For operators which are not fused.
+	 *
+	 * @param operation
+	 * @param monitor may be null
+	 * @return combined image, null if cancelled
+	 */
+	Dataset process(IOperation operation, IProgressMonitor monitor) {
+		Dataset a = getFirst();
+		for (int i = 1; i < images.size(); i++) {
+			if (monitor!=null && monitor.isCanceled()) return null;
+			Dataset data = images.get(i);
+			if (weights.get(i)<1) { // Reduce its intensity
+				data = operation.process(data, weights.get(i), Operator.MULTIPLY);
+			}
+			a = operation.process(a, data, operators.get(i));
+		}
+		return a;
+	}
+
+	/**
+	 * Combines the images in one pass.
+	 *
+	 * @param out image to fill if it is of the shape of the images, may be null
+	 * @param monitor may be null
+	 * @return out or a new image with the combined values, null if cancelled
+	 */
+	DoubleDataset combine(DoubleDataset out, IProgressMonitor monitor) {
+
+		final Dataset first = getFirst();
+		final int[]   shape = first.getShape();
+		if (out==null || !out.isCompatibleWith(first) || out.getData().length!=out.getSize()) {
+			out = new DoubleDataset(shape);
+		}
+
+		final int rows = shape[0];
+		final int cols = shape[1];
+		final int blockRows = Math.max(1, BLOCK_SIZE/Math.max(1, cols));
+
+		getPool().invoke(new CombineAction(out.getData(), cols, 0, rows, blockRows, monitor));
+		if (monitor!=null && monitor.isCanceled()) return null;
+
+		out.setName(first.getName());
+		out.setDirty(); // The values are new if the image was reused
+		return out;
+	}
+
+	/**
+	 * The rows from start up to end, split in halves down to a block.
+	 */
+	private class CombineAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[]         out;
+		private final int              cols, start, end, blockRows;
+		private final IProgressMonitor monitor;
+
+		CombineAction(double[] out, int cols, int start, int end, int blockRows, IProgressMonitor monitor) {
+			this.out       = out;
+			this.cols      = cols;
+			this.start     = start;
+			this.end       = end;
+			this.blockRows = blockRows;
+			this.monitor   = monitor;
+		}
+
+		@Override
+		protected void compute() {
+			if (monitor!=null && monitor.isCanceled()) return;
+			if (end-start > blockRows) {
+				final int mid = start + (end-start)/2;
+				invokeAll(new CombineAction(out, cols, start, mid, blockRows, monitor),
+						  new CombineAction(out, cols, mid, end, blockRows, monitor));
+				return;
+			}
+
+			// Each image is applied to the whole block, which stays in the cache
+			final int offset = start*cols;
+			for (int i = 0; i < images.size(); i++) {
+				final Dataset       block  = images.get(i).getSliceView(new int[]{start, 0}, new int[]{end, cols}, null);
+				final IndexIterator it     = block.getIterator();
+				final double        weight = i>0 ? weights.get(i) : 1d;
+				final Operator      op     = i>0 ? operators.get(i) : null;
+				if (op==null) {
+					for (int j = offset; it.hasNext(); j++) out[j] = block.getElementDoubleAbs(it.index);
+					continue;
+				}
+				switch (op) {
+				case ADD:
+					for (int j = offset; it.hasNext(); j++) out[j] += block.getElementDoubleAbs(it.index)*weight;
+					break;
+				case SUBTRACT:
+					for (int j = offset; it.hasNext(); j++) out[j] -= block.getElementDoubleAbs(it.index)*weight;
+					break;
+				case MULTIPLY:
+					for (int j = offset; it.hasNext(); j++) out[j] *= block.getElementDoubleAbs(it.index)*weight;
+					break;
+				case DIVIDE:
+					for (int j = offset; it.hasNext(); j++) out[j] /= block.getElementDoubleAbs(it.index)*weight;
+					break;
+				default:
+					throw new IllegalArgumentException("Cannot fuse operator "+op);
+				}
+			}
+		}
+	}
+}
@@ -30,6 +30,7 @@ import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.api.monitor.IMonitor;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.IntegerDataset;
 import org.eclipse.dawnsci.plotting.api.expressions.IExpressionObject;
 import org.eclipse.dawnsci.plotting.api.preferences.PlottingConstants;
@@ -110,6 +111,13 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
     private Dataset originalData;
 	private MathsJob        updateJob;
 
+	/**
+	 * The combined images are worked out into whichever of these
+	 * is not the one plotted, so the one plotted is not written to.
+	 */
+	private final DoubleDataset[] combined = new DoubleDataset[2];
+	private volatile Dataset      plotted; // Last image given to the plot
+
 	private IOperation operation;
 
 	private static ImageHistoryTool currentTool;
@@ -161,6 +169,7 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 				if (!set.isCompatibleWith(originalData)) return;
 				
 				evt.getImageTrace().setUserObject(ImageHistoryMarker.MARKER);
+				plotted = set;
 				evt.setImageData(set, evt.getImageTrace().getAxes());
 			}
 
@@ -186,6 +195,9 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 	public void deactivate() {
 		currentTool = null;
 		super.deactivate();
+		synchronized (combined) {
+			Arrays.fill(combined, null);
+		}
 		operation.deactivate(); // It can still be used
 	}
 	
@@ -231,7 +243,8 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 		bean.setPlotName(getPlottingSystem().getPlotName());
 		bean.setOperator(Operator.ADD);
 		final String key = bean.getTraceKey();
-		imageHistory.put(key, bean);
+		final HistoryBean old = imageHistory.put(key, bean);
+		if (old!=null) old.dispose();
 	}
 	
 	private static IAction include;
@@ -397,11 +410,11 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 			}
 		}
 		
-		Dataset a  = od!=null&&includeCurrentPlot
-				           ? od 
-				           : null;
 		if (od!=null && od.getRank()!=2) return null; // This is image compare!
 		
+		final ImageCombiner combiner = new ImageCombiner();
+		if (od!=null&&includeCurrentPlot) combiner.add(od, 1d, null);
+		
 		for (String key : imageHistory.keySet()) {
 			
 			if (monitor!=null && monitor.isCanceled()) return null;
@@ -412,13 +425,13 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 			if (!bean.isSelected()) continue;
 			if (bean.getWeighting()<1) continue;
 			
-			if (a==null) { 
+			if (combiner.size()==0) { 
 				if (bean.getData()==null) continue;
-				a = bean.getData();
+				combiner.add(bean.getData(), 1d, null);
 				continue;
 			}
 			
-			if (!a.isCompatibleWith(bean.getData())) {
+			if (!bean.isCompatibleWith(combiner.getFirst())) {
 				bean.setSelected(false);
 				Display.getDefault().syncExec(new Runnable() {
 					public void run() {
@@ -428,14 +441,18 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 				continue;
 			}
 			
-			Dataset data = bean.getData();
-			if (bean.getWeighting()<100) { // Reduce its intensity
-				data = operation.process(data, bean.getWeighting()/100d, Operator.MULTIPLY);
-			}
-			a = operation.process(a, data, bean.getOperator());
+			combiner.add(bean.getData(), bean.getWeighting()/100d, bean.getOperator());
 		}
 
-		return a;
+		if (combiner.size()<2) return combiner.getFirst();
+		if (!combiner.isFused()) return combiner.process(operation, monitor);
+		
+		synchronized (combined) { // Also so that two threads do not write to the same image
+			final int index = combined[0]!=null && combined[0]==plotted ? 1 : 0;
+			final DoubleDataset out = combiner.combine(combined[index], monitor);
+			if (out!=null) combined[index] = out;
+			return out;
+		}
 	}
 	
 	public void setPlotImage(final Dataset plot) {
@@ -453,6 +470,7 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 						getPlottingSystem().setFocus();
 						getPlottingSystem().reset();
 						imageTrace = getPlottingSystem().createImageTrace(plot.getName()!=null?plot.getName():"");
+						plotted = plot;
 						imageTrace.setData(plot, null, false);
 						getPlottingSystem().addTrace(imageTrace);
 						getPlottingSystem().autoscaleAxes();	
@@ -468,6 +486,7 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 			     	}
 					final IImageTrace image = getPlottingSystem().createImageTrace(imageTrace!=null?imageTrace.getName():"Image");
 					if (image==null) return;
+					plotted = plot;
 					image.setData(plot, imageTrace!=null?imageTrace.getAxes():null, false);
 					image.setUserObject(ImageHistoryMarker.MARKER);
 					getPlottingSystem().addTrace(image);
@@ -605,7 +624,7 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 			}
 			if (columnIndex==4) {
 				try {
-			        return Arrays.toString(bean.getData().getShape());
+			        return Arrays.toString(bean.getShape());
 				} catch (Throwable ne) {
 					return "";
 				}
@@ -651,8 +670,7 @@ public class ImageHistoryTool extends AbstractHistoryTool implements MouseListen
 			if (od==null) return true;
 			if (!(element instanceof HistoryBean)) return true;
 			HistoryBean bean = (HistoryBean)element;
-			if (bean.getData()==null) return false;
-			return od.isCompatibleWith(bean.getData());
+			return bean.isCompatibleWith(od);
 		}
 
 		public void dispose() {
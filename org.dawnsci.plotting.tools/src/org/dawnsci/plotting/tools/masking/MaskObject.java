@@ -11,6 +11,7 @@ package org.dawnsci.plotting.tools.masking;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
@@ -22,6 +23,7 @@ import org.dawnsci.plotting.tools.Activator;
 import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.commands.operations.DefaultOperationHistory;
 import org.eclipse.core.commands.operations.IOperationHistory;
+import org.eclipse.core.commands.operations.IUndoableOperation;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.dawnsci.analysis.api.roi.IROI;
 import org.eclipse.dawnsci.analysis.api.roi.IRectangularROI;
@@ -53,6 +55,14 @@ public class MaskObject {
 
 	private static final Logger logger = LoggerFactory.getLogger(MaskObject.class);
 	
+	private static final int UNDO_LIMIT = 20;
+	
+	/**
+	 * Largest memory in MB used by the undo history, the oldest operations
+	 * are removed when it is exceeded. The most recent is always kept.
+	 */
+	private static final String UNDO_MEMORY_PROPERTY = "org.dawnsci.plotting.tools.masking.undo.memory";
+	
 	enum MaskRegionType {
 		REGION_FROM_MASKING;
 	}
@@ -93,7 +103,7 @@ public class MaskObject {
     
 	MaskObject() {
 		this.operationManager = new DefaultOperationHistory();
-		operationManager.setLimit(MaskOperation.MASK_CONTEXT, 20);	
+		operationManager.setLimit(MaskOperation.MASK_CONTEXT, UNDO_LIMIT);	
 		this.pool = new ForkJoinPool();
 	}
 	
@@ -112,7 +122,7 @@ public class MaskObject {
 	public void process(BooleanDataset savedMask) {
 		createMaskIfNeeded();
 		
-        MaskOperation op = new MaskOperation(maskDataset, savedMask.getSize()/16);
+        MaskOperation op = new MaskOperation(maskDataset);
 		final int[] shape = savedMask.getShape();
 		for (int y = 0; y<shape[0]; ++y) {
 			for (int x = 0; x<shape[1]; ++x) {
@@ -128,7 +138,7 @@ public class MaskObject {
 		}
 		
         try {
-        	if (op.getSize()>0) operationManager.execute(op, null, null);
+        	execute(op);
 		} catch (ExecutionException e) {
 			logger.error("Internal error processing external mask.", e);
 		}
@@ -169,7 +179,7 @@ public class MaskObject {
         	locations = lineBresenham(startLocation, finishLocation);
         }
         
-        MaskOperation op = new MaskOperation(maskDataset, 300);
+        MaskOperation op = new MaskOperation(maskDataset);
         
         for (final Point loc : locations) {
         	
@@ -235,7 +245,7 @@ public class MaskObject {
        }
         
         try {
-        	if (op.getSize()>0) operationManager.execute(op, null, null);
+        	execute(op);
 		} catch (ExecutionException e) {
 			logger.error("Problem processing mask draw.", e);
 		}
@@ -303,7 +313,33 @@ public class MaskObject {
 	 */
 	private void toggleMask(MaskOperation op, boolean mv, int y, int x) {
 		if (maskDataset.getBoolean(y,x)!=mv) {
-			op.addVertex(mv, y, x);
+			op.toggle(y, x);
+		}
+	}
+	
+	/**
+	 * Executes the operation if it toggles anything and then removes the
+	 * oldest operations from the history if it uses too much memory.
+	 * @param op
+	 * @throws ExecutionException
+	 */
+	private void execute(MaskOperation op) throws ExecutionException {
+		if (op.getSize()<1) return;
+		operationManager.execute(op, null, null);
+		
+		final long budget = Long.getLong(UNDO_MEMORY_PROPERTY, 64)<<20;
+		final IUndoableOperation[] history = operationManager.getUndoHistory(MaskOperation.MASK_CONTEXT);
+		long memory = 0;
+		int  keep   = 0;
+		for (int i = history.length-1; i>=0; --i) { // Most recent last
+			if (history[i] instanceof MaskOperation) memory += ((MaskOperation)history[i]).getMemorySize();
+			if (keep>0 && memory>budget) break;
+			++keep;
+		}
+		if (keep<history.length) {
+			logger.debug("Removing "+(history.length-keep)+" mask operations from the undo history to save memory.");
+			operationManager.setLimit(MaskOperation.MASK_CONTEXT, keep);
+			operationManager.setLimit(MaskOperation.MASK_CONTEXT, UNDO_LIMIT);
 		}
 	}
 	
@@ -389,24 +425,16 @@ public class MaskObject {
 
 			if (validRegions.isEmpty()) return true;
 
-			final MaskOperation op  = new MaskOperation(maskDataset, getMaskDataset().getSize()/16);
+			final MaskOperation op  = new MaskOperation(maskDataset);
 			final int[]      shape  = imageDataset.getShape();
 			
 			if (Boolean.getBoolean("org.dawnsci.plotting.tools.masking.no.thread.pool")) {
-				MAIN_LOOP: for (int y = 0; y<shape[0]; ++y) {
-					for (int x = 0; x<shape[1]; ++x) {
-						for (IRegion region : validRegions) {
-							monitor.worked(1);
-							try {
-								if (region.getCoordinateSystem().isDisposed()) break MAIN_LOOP;
-								if (region.getROI().containsPoint(x, y)) {
-									toggleMask(op, !region.isMaskRegion(), y, x);
-								}
-							} catch (Throwable ne) {
-								logger.trace("Cannot process point "+(new Point(x,y)), ne);
-								continue;
-							}
-						}
+				// Same rows as the pool but in this thread.
+				for (IRegion region : validRegions) {
+					if (region.getCoordinateSystem().isDisposed()) break;
+					final RegionAction action = new RegionAction(op, shape, region.getROI(), getScreenPixelWidth(region), region.isMaskRegion(), monitor);
+					for (PixelAction pixels : action.createPixelActions()) {
+						pixels.compute();
 					}
 				}
 			} else {
@@ -415,7 +443,7 @@ public class MaskObject {
 			}
 
 			try {
-				if (op.getSize()>0) operationManager.execute(op, null, null);
+				execute(op);
 			} catch (ExecutionException e) {
 				logger.error("Internal error processing region mask.", e);
 			}   
@@ -463,22 +491,21 @@ public class MaskObject {
 			}
 			invokeAll(actions);
 		}
-		
-        /**
-         * Get pixel width in data coordinates.
-         * @param region
-         * @return
-         */
-		public double getScreenPixelWidth(IRegion region) {
-			final int widPix = region.getLineWidth();
-			double[] s = region.getCoordinateSystem().getValueFromPosition(new double[]{0, 0});
-			double[] e = region.getCoordinateSystem().getValueFromPosition(new double[]{widPix, widPix});
-			//return Math.pow((Math.pow(e[0]-s[0], 2)+Math.pow(e[1]-s[1], 2)), 0.5);
-			// FIXME This is not right but works for many images that we have. 
-			// Those with significantly different axis scales, it will not.
-			return Math.min(e[0]-s[0], e[1]-s[1]);
-		}
+	}
 
+    /**
+     * Get pixel width in data coordinates.
+     * @param region
+     * @return
+     */
+	private double getScreenPixelWidth(IRegion region) {
+		final int widPix = region.getLineWidth();
+		double[] s = region.getCoordinateSystem().getValueFromPosition(new double[]{0, 0});
+		double[] e = region.getCoordinateSystem().getValueFromPosition(new double[]{widPix, widPix});
+		//return Math.pow((Math.pow(e[0]-s[0], 2)+Math.pow(e[1]-s[1], 2)), 0.5);
+		// FIXME This is not right but works for many images that we have. 
+		// Those with significantly different axis scales, it will not.
+		return Math.min(e[0]-s[0], e[1]-s[1]);
 	}
 
 	private class RegionAction extends MaskRegionsAction {
@@ -511,19 +538,29 @@ public class MaskObject {
 
 		@Override
 		protected void compute() {
-			
+			final Collection<PixelAction> actions = createPixelActions();
+			if (!actions.isEmpty()) invokeAll(actions);
+		}
+
+		/**
+		 * Splits the bounding box of the region into bands of rows. Points
+		 * are toggled here as they are only one pixel.
+		 * 
+		 * @return the actions to fill each band, may be empty.
+		 */
+		protected Collection<PixelAction> createPixelActions() {
 			
 			// We use the bounding box of the region.
 			final IRectangularROI bounds = roi.getBounds();
 			if (bounds == null)
-				return; // unbounded region
+				return Collections.emptyList(); // unbounded region
 
 			final double[] beg = bounds.getPoint();
 			if (roi!=null && roi.getClass() == PointROI.class) {
 				int x = Math.max(0, (int) Math.round(beg[0]));
 				int y = Math.max(0, (int) Math.round(beg[1]));
-				op.addVertex(!isMasking, y, x);
-				return; // We done it innit!
+				if (x < shape[1] && y < shape[0]) toggleMask(op, !isMasking, y, x);
+				return Collections.emptyList(); // We done it innit!
 			}
 			
 			
@@ -537,23 +574,21 @@ public class MaskObject {
 				end[1] += distance;
 			}
 
+			// Exclusive ends, the last row and column of the box are included.
 			int xStart = Math.max(0, (int) Math.round(beg[0]));
-			int xEnd   = Math.min(shape[1] - 1, (int) Math.round(end[0]));
+			int xEnd   = Math.min(shape[1], (int) Math.round(end[0])+1);
 			
 			int yStart = Math.max(0, (int) Math.round(beg[1]));
-			int yEnd   = Math.min(shape[0] - 1, (int) Math.round(end[1]));
-
-			final Collection<RegionAction> actions = new ArrayList<RegionAction>(yEnd/INC);
-			// We loop all pixels here because looping bounds boxes of rois did not work yet.
+			int yEnd   = Math.min(shape[0], (int) Math.round(end[1])+1);
 
+			final List<PixelAction> actions = new ArrayList<PixelAction>(Math.max(1, (yEnd-yStart)/INC+1));
 			for (int y=yStart; y<yEnd; y+=INC) { 
 				
-				final int yMax = Math.min(yStart+INC, yEnd);
-				actions.add(new PixelAction(op, xStart, xEnd, yStart, yMax, isMasking, roi, lineWidth, monitor));
-				yStart+=INC;
-				if (monitor.isCanceled()) return;
+				final int yMax = Math.min(y+INC, yEnd);
+				actions.add(new PixelAction(op, xStart, xEnd, y, yMax, isMasking, roi, lineWidth, monitor));
+				if (monitor.isCanceled()) return Collections.emptyList();
 			}
-			invokeAll(actions);
+			return actions;
 		}
 	}
 	
@@ -599,7 +634,7 @@ public class MaskObject {
 							continue;
 						try {
 							if (roi.isNearOutline(x, y, distance)) {
-								op.addVertex(!isMasking, y, x);
+								op.toggle(y, x);
 							}
 						} catch (Throwable ne) {
 							logger.trace("Cannot process point " + (new Point(x, y)), ne);
@@ -608,51 +643,15 @@ public class MaskObject {
 					}
 				}
 			} else {
-				row_loop:
+				// Spans of each row are filled rather than testing each pixel
 				for (int y = yStart; y < yEnd; ++y) {
 					if (monitor.isCanceled())
 						return;
 					monitor.worked(1);
 
-					// use scanlines
-					double[] xs = roi.findHorizontalIntersections(y);
-					if (xs == null)
-						continue row_loop;
-
-					int xe = (int) xs[0];
-					if (xe >= xEnd)
-						continue row_loop;
-					if (xs.length == 1) {
-						if (xe >= xStart) {
-							toggleMask(op, !isMasking, y, xe);
-						}
-						continue row_loop;
-					}
-
-					int i = 1;
-					int xb;
-					do { // find first pair where end is past the start
-						xb = xe;
-						if (i >= xs.length)
-							continue row_loop;
-						xe = (int) xs[i++];
-					} while (xe < xStart);
-
-					while (true) {
-						if (xb >= xEnd) {
-							continue row_loop;
-						}
-
-						if (roi.containsPoint((xb + xe)/2, y)) {
-							for (int k = Math.max(xStart, xb); k <= Math.min(xEnd - 1, xe); k++) {
-								toggleMask(op, !isMasking, y, k);
-							}
-						}
-
-						xb = xe;
-						if (i >= xs.length)
-							continue row_loop;
-						xe = (int) xs[i++];
+					final int[] spans = RegionRasteriser.getSpans(roi, y, xStart, xEnd-1);
+					for (int i = 0; i < spans.length; i+=2) {
+						op.toggle(y, spans[i], spans[i+1], !isMasking);
 					}
 				}
 			}
@@ -666,7 +665,7 @@ public class MaskObject {
 		}	
 		if (operationManager ==null)  {
 			operationManager = new DefaultOperationHistory();
-			operationManager.setLimit(MaskOperation.MASK_CONTEXT, 20);
+			operationManager.setLimit(MaskOperation.MASK_CONTEXT, UNDO_LIMIT);
 		}
 	}
 
@@ -8,17 +8,10 @@
  */
 package org.dawnsci.plotting.tools.masking;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.commands.operations.AbstractOperation;
@@ -29,8 +22,23 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.dawnsci.analysis.dataset.impl.BooleanDataset;
 
+/**
+ * An undoable change to the mask, recorded as the set of pixels which it toggles.
+ *
+ * While the operation is being made the pixels are set in a bitset which
+ * is only allocated in pages where pixels are toggled. Bits are set with
+ * compare and swap so that many threads may add pixels without locking.
+ * When the operation is first executed the bitset is replaced by runs of
+ * toggled pixels, encoded as variable length integers, which is very much
+ * smaller for the large connected areas that masking regions make.
+ *
+ * Execute, undo and redo all toggle the same pixels (XOR with the mask).
+ *
+ * @author Matthew Gerring
+ *
+ */
 public class MaskOperation extends AbstractOperation {
-	
+
 	public static final IUndoContext MASK_CONTEXT = new IUndoContext() {
 		@Override
 		public String getLabel() {
@@ -42,62 +50,109 @@ public class MaskOperation extends AbstractOperation {
 			return context == MASK_CONTEXT;
 		}
 	};
-	
+
+	private static final int PAGE_BITS  = 18; // 256k pixels, 4k longs, in each page
+	private static final int PAGE_WORDS = 1 << (PAGE_BITS-6);
+
+	private BooleanDataset  maskDataset;
+	private final int       columns;
+
 	/**
-	 * Can be large!
+	 * Used while the pixels are being added, null after the first execute.
 	 */
-	private Collection<MaskPoint>  vertexList;
-	private byte[]          compressedVertices; // Used to reduce memory, works really well and fast.
-	private BooleanDataset  maskDataset;
+	private AtomicReferenceArray<AtomicLongArray> pages;
+	private final AtomicInteger                   size = new AtomicInteger();
+
+	/**
+	 * Pairs of (gap since the last run, run length) written as varints.
+	 */
+	private byte[]          runs;
 
-	public MaskOperation(BooleanDataset maskDataset, int maxExpectedSize) {
+	public MaskOperation(BooleanDataset maskDataset) {
 		super("Mask operation");
 		this.maskDataset = maskDataset;
-		this.vertexList  = Collections.synchronizedSet(new HashSet<MaskPoint>(maxExpectedSize));
+
+		final int[] shape = maskDataset.getShape();
+		this.columns = shape[shape.length-1];
+		final long pixels = (long)maskDataset.getSize();
+		this.pages = new AtomicReferenceArray<AtomicLongArray>((int)((pixels + (1L<<PAGE_BITS) - 1) >> PAGE_BITS));
 		addContext(MASK_CONTEXT);
 	}
-	
+
+	/**
+	 * Adds a pixel to be toggled, thread safe. Adding the same pixel twice
+	 * does not toggle it back.
+	 *
+	 * @param y
+	 * @param x
+	 */
+	public void toggle(int y, int x) {
+		final int index = y*columns+x;
+		if (index<0 || index>=maskDataset.getSize()) return;
+		set(index, 1L << (index & 63));
+	}
+
+	/**
+	 * Adds the pixels of a span in a row which are not already mv, thread
+	 * safe. This is much faster than calling toggle(...) for each pixel
+	 * as the bits of each word are set at once.
+	 *
+	 * @param y
+	 * @param xStart first pixel
+	 * @param xEnd last pixel
+	 * @param mv the value which the pixels will have after the operation
+	 */
+	public void toggle(int y, int xStart, int xEnd, boolean mv) {
+
+		final boolean[] data = maskDataset.getData();
+		final int end = y*columns+xEnd;
+		for (int index = y*columns+xStart; index <= end; ) {
+			final int wordEnd = Math.min(end, index | 63);
+			long bits = 0;
+			for (int i = index; i <= wordEnd; i++) {
+				if (data[i]!=mv) bits |= 1L << (i & 63);
+			}
+			if (bits!=0) set(index, bits);
+			index = wordEnd+1;
+		}
+	}
+
+	/**
+	 * Sets bits in the word holding index.
+	 * @param index
+	 * @param bits
+	 */
+	private void set(int index, long bits) {
+
+		final int page = index >>> PAGE_BITS;
+		AtomicLongArray words = pages.get(page);
+		if (words==null) {
+			pages.compareAndSet(page, null, new AtomicLongArray(PAGE_WORDS));
+			words = pages.get(page);
+		}
+
+		final int word = (index >>> 6) & (PAGE_WORDS-1);
+		while (true) {
+			final long current = words.get(word);
+			if ((current | bits)==current) return; // Already added
+			if (words.compareAndSet(word, current, current | bits)) {
+				size.addAndGet(Long.bitCount(bits & ~current));
+				return;
+			}
+		}
+	}
 
 	@Override
 	public IStatus execute(IProgressMonitor monitor, IAdaptable info) throws ExecutionException {
 		try {
-			Collection<MaskPoint> vl = getVertexList();
-			for (MaskPoint mp : vl)  maskDataset.set(mp.is(), mp.getY(), mp.getX());
-			compressVertexList();
+			if (runs==null) encode();
+			toggleRuns();
 			return Status.OK_STATUS;
 		} catch (Throwable ne) {
 			throw new ExecutionException(ne.getMessage(), ne);
 		}
 	}
 
-	private void compressVertexList() throws IOException {
-		if (vertexList!=null) {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			GZIPOutputStream gzipOut = new GZIPOutputStream(baos);
-			ObjectOutputStream objectOut = new ObjectOutputStream(gzipOut);
-			objectOut.writeObject(vertexList);
-			objectOut.close();
-			compressedVertices = baos.toByteArray();
-			
-			vertexList.clear();
-			vertexList = null;
-		}
-	}
-	
-	private Collection<MaskPoint> getVertexList() throws IOException, ClassNotFoundException {
-		if (vertexList!=null) return vertexList;
-		if (compressedVertices!=null) {
-			ByteArrayInputStream bais  = new ByteArrayInputStream(compressedVertices);
-			GZIPInputStream gzipIn     = new GZIPInputStream(bais);
-			ObjectInputStream objectIn = new ObjectInputStream(gzipIn);
-			Collection<MaskPoint> vl = (Collection<MaskPoint>) objectIn.readObject();
-			objectIn.close();
-			return vl;
-		}
-		return null;
-	}
-
-
 	@Override
 	public IStatus redo(IProgressMonitor monitor, IAdaptable info) throws ExecutionException {
 		return execute(monitor, info);
@@ -106,92 +161,122 @@ public class MaskOperation extends AbstractOperation {
 	@Override
 	public IStatus undo(IProgressMonitor monitor, IAdaptable info) throws ExecutionException {
 		try {
-			Collection<MaskPoint> vl = getVertexList();
-			for (MaskPoint mp : vl)  maskDataset.set(!mp.is(), mp.getY(), mp.getX());
+			toggleRuns();
 			return Status.OK_STATUS;
 		} catch (Throwable ne) {
 			throw new ExecutionException(ne.getMessage(), ne);
 		}
 	}
-	
-
-	public final static class MaskPoint implements Serializable {
-		/**
-		 * 
-		 */
-		private static final long serialVersionUID = 6580683756160098489L;
-		
-		private final int x, y;
-		private final boolean val;
-		public MaskPoint(boolean val, int x, int y){
-			this.x = x;
-			this.y = y;
-			this.val = val;
-		}
-		public int getX() {
-			return x;
-		}
-		public int getY() {
-			return y;
+
+	/**
+	 * Replaces the bitset by the runs of set bits.
+	 */
+	private void encode() {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long last = 0; // Index after the end of the last run
+		long start = -1;
+		for (int p = 0; p < pages.length(); p++) {
+			final AtomicLongArray words = pages.get(p);
+			if (words==null) {
+				if (start>=0) { // A run ends at the start of an empty page
+					final long end = (long)p << PAGE_BITS;
+					writeVarint(out, start-last);
+					writeVarint(out, end-start);
+					last  = end;
+					start = -1;
+				}
+				continue;
+			}
+			for (int w = 0; w < PAGE_WORDS; w++) {
+				long word = words.get(w);
+				final long base = ((long)p << PAGE_BITS) + ((long)w << 6);
+				if (start<0 && word==0)   continue;
+				if (start>=0 && word==-1) continue;
+				for (int b = 0; b < 64; b++) {
+					final boolean set = (word & (1L<<b)) != 0;
+					if (set && start<0) {
+						start = base+b;
+					} else if (!set && start>=0) {
+						writeVarint(out, start-last);
+						writeVarint(out, base+b-start);
+						last  = base+b;
+						start = -1;
+					}
+				}
+			}
 		}
-		public boolean is() {
-			return val;
+		if (start>=0) {
+			final long end = (long)pages.length() << PAGE_BITS;
+			writeVarint(out, start-last);
+			writeVarint(out, end-start);
 		}
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + (val ? 1231 : 1237);
-			result = prime * result + x;
-			result = prime * result + y;
-			return result;
+		runs  = out.toByteArray();
+		pages = null;
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
 		}
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			MaskPoint other = (MaskPoint) obj;
-			if (val != other.val)
-				return false;
-			if (x != other.x)
-				return false;
-			if (y != other.y)
-				return false;
-			return true;
+		out.write((int)value);
+	}
+
+	private void toggleRuns() {
+
+		final int max = maskDataset.getSize();
+		final int[] pos = new int[]{0};
+		long index = 0;
+		while (pos[0] < runs.length) {
+			index += readVarint(pos);
+			final long end = Math.min(max, index+readVarint(pos));
+			for (int i = (int)index; i < end; i++) {
+				maskDataset.setAbs(i, !maskDataset.getAbs(i));
+			}
+			index = end;
 		}
-		
 	}
 
-	public void addVertex(boolean mv, int y, int x) {
-		vertexList.add(new MaskPoint(mv, x, y));
+	private long readVarint(int[] pos) {
+		long value = 0;
+		int  shift = 0;
+		while (true) {
+			final byte b = runs[pos[0]++];
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80)==0) return value;
+			shift += 7;
+		}
 	}
 
 	/**
-	 * Fast, uses hashing algorithm
-	 * @param mv
-	 * @param y
-	 * @param x
-	 * @return
+	 *
+	 * @return number of pixels toggled by this operation
 	 */
-	public boolean isVertex(boolean mv, int y, int x) {
-		return vertexList.contains(new MaskPoint(mv, x, y));
+	public int getSize() {
+		return size.get();
 	}
 
-	public int getSize() {
-		return vertexList.size();
+	/**
+	 *
+	 * @return approximate bytes held by this operation
+	 */
+	public long getMemorySize() {
+		if (runs!=null) return runs.length;
+		long bytes = 0;
+		if (pages!=null) for (int p = 0; p < pages.length(); p++) {
+			if (pages.get(p)!=null) bytes += 8L*PAGE_WORDS;
+		}
+		return bytes;
 	}
-	
+
 	/**
 	 * Cannot use operation again after been disposed.
 	 */
 	public void dispose() {
 		super.dispose();
-		if (vertexList!=null) vertexList.clear();
-		vertexList  = null;
+		pages       = null;
+		runs        = null;
 		maskDataset = null;
 	}
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.tools.masking;
+
+import java.util.Arrays;
+
+import org.eclipse.dawnsci.analysis.api.roi.IROI;
+import org.eclipse.dawnsci.analysis.dataset.roi.RectangularROI;
+
+/**
+ * Turns a region into spans of pixels in a row, so that masking fills
+ * spans rather than testing every pixel with containsPoint(...).
+ *
+ * Any region which can find its horizontal intersections is supported, this
+ * includes rectangles, sectors, rings, ellipses and polygons. The row is cut
+ * at the intersections and each piece is tested once, at its middle. Pixels
+ * are inside a piece if their centre is between its ends. Rectangles which
+ * are not rotated do not need the intersections.
+ */
+class RegionRasteriser {
+
+	private static final int[] EMPTY = new int[0];
+
+	/**
+	 *
+	 * @param roi
+	 * @param y row
+	 * @param xStart first pixel which may be in a span
+	 * @param xEnd last pixel which may be in a span
+	 * @return pairs of first and last x of each span in increasing order, which may be empty.
+	 */
+	static int[] getSpans(IROI roi, int y, int xStart, int xEnd) {
+
+		if (xEnd < xStart) return EMPTY;
+
+		if (roi.getClass()==RectangularROI.class && ((RectangularROI)roi).getAngle()==0) {
+			final RectangularROI rect = (RectangularROI)roi;
+			final double[] beg = rect.getPoint();
+			final double[] end = rect.getEndPoint();
+			if (y < Math.min(beg[1], end[1]) || y > Math.max(beg[1], end[1])) return EMPTY;
+			return clip((int)Math.ceil(Math.min(beg[0], end[0])), (int)Math.floor(Math.max(beg[0], end[0])), xStart, xEnd);
+		}
+
+		double[] xs = roi.findHorizontalIntersections(y);
+		if (xs == null || xs.length == 0) return EMPTY;
+
+		if (xs.length == 1) { // Touches the row
+			final int x = (int)Math.round(xs[0]);
+			if (x < xStart || x > xEnd || !roi.containsPoint(x, y)) return EMPTY;
+			return new int[]{x, x};
+		}
+
+		xs = xs.clone();
+		Arrays.sort(xs);
+
+		final int[] spans = new int[xs.length*2];
+		int n = 0;
+		for (int i = 1; i < xs.length; i++) {
+			final double xb = xs[i-1], xe = xs[i];
+			if (xe < xStart || xb > xEnd) continue;
+			if (!roi.containsPoint((xb+xe)/2, y)) continue;
+
+			int first = Math.max(xStart, (int)Math.ceil(xb));
+			int last  = Math.min(xEnd,   (int)Math.floor(xe));
+			if (first > last) continue;
+
+			if (n > 0 && first <= spans[n-1]+1) { // Joins the last span
+				spans[n-1] = Math.max(spans[n-1], last);
+			} else {
+				spans[n++] = first;
+				spans[n++] = last;
+			}
+		}
+		return n == spans.length ? spans : Arrays.copyOf(spans, n);
+	}
+
+	private static int[] clip(int first, int last, int xStart, int xEnd) {
+		first = Math.max(first, xStart);
+		last  = Math.min(last,  xEnd);
+		if (first > last) return EMPTY;
+		return new int[]{first, last};
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.tools.powderintegration;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.dawnsci.analysis.api.metadata.IDiffractionMetadata;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetFactory;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+import org.eclipse.dawnsci.analysis.dataset.impl.Maths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.diamond.scisoft.analysis.diffraction.powder.AbstractPixelIntegration;
+import uk.ac.diamond.scisoft.analysis.diffraction.powder.PixelIntegrationUtils;
+import uk.ac.diamond.scisoft.analysis.diffraction.powder.PixelIntegrationUtils.IntegrationMode;
+
+/**
+ * The integration of frames which share their geometry, mask, model and
+ * corrections, worked out once so that each frame is only a sum over the
+ * pixels of each bin.
+ *
+ * Without pixel splitting each pixel adds to one bin and each bin is the
+ * mean of its pixels, so a bin is a weighted sum of the frame with the
+ * correction of each pixel divided by the number of pixels in the bin as
+ * the weights. The pixels and weights are stored by bin, in the same way
+ * as the rows of a compressed sparse row matrix.
+ *
+ * Only 1D radial profiles without pixel splitting or an azimuthal range are
+ * planned. A plan is only used if it gives the same profile as the full
+ * integration of a ramp of the pixel indices, otherwise create(...) gives
+ * null and the frames should be integrated in full. The ramp is used rather
+ * than a real frame because a dark or flat frame gives the same profile for
+ * almost any assignment of pixels to bins.
+ */
+class IntegrationPlan {
+
+	private static final Logger logger = LoggerFactory.getLogger(IntegrationPlan.class);
+
+	private static final double TOLERANCE = 1e-4;
+
+	private final Dataset  axis;
+	private final int      size;    // Pixels in a frame
+	private final int[]    start;   // First index in pixels of each bin, and the end
+	private final int[]    pixels;
+	private final float[]  weights;
+	private final double   empty;   // Value of bins without pixels
+
+	private IntegrationPlan(Dataset axis, int size, int[] start, int[] pixels, float[] weights, double empty) {
+		this.axis    = axis;
+		this.size    = size;
+		this.start   = start;
+		this.pixels  = pixels;
+		this.weights = weights;
+		this.empty   = empty;
+	}
+
+	/**
+	 *
+	 * @param metadata
+	 * @param mask may be null
+	 * @param model
+	 * @param correction may be null
+	 * @param frame without correction, only its shape and type are used
+	 * @param integrator set up with the model and mask, which integrates in full
+	 * @return null if the integration cannot be planned
+	 */
+	static IntegrationPlan create(IDiffractionMetadata metadata, Dataset mask, PowderIntegrationModel model,
+			                      Dataset correction, Dataset frame, AbstractPixelIntegration integrator) {
+
+		if (model.getIntegrationMode()!=IntegrationMode.NONSPLITTING || !model.isAzimuthal() ||
+			model.getAzimuthalRange()!=null || model.getAxisType()==null ||
+			frame.getElementsPerItem()!=1) return null;
+
+		// Each pixel its own value, so that no other assignment of pixels to bins gives the same profile
+		final int[]   shape = frame.getShape();
+		final Dataset ramp  = DatasetFactory.createRange(frame.getSize(), Dataset.FLOAT64).reshape(shape);
+		final List<Dataset> integrated = integrator.integrate(correction!=null ? Maths.multiply(ramp, correction) : ramp);
+		if (integrated==null || integrated.size()!=2) return null;
+
+		// The bins of the profile, which must be evenly spaced
+		final Dataset  axis    = integrated.get(0).clone();
+		final double[] centres = getValues(axis);
+		final int      nBins   = centres.length;
+		if (nBins<2) return null;
+		final double span = (centres[nBins-1]-centres[0])/(nBins-1);
+		if (!(span>0)) return null;
+		for (int b = 0; b < nBins; b++) {
+			if (Math.abs(centres[b]-(centres[0]+b*span)) > TOLERANCE*span) return null;
+		}
+		final double lo = centres[0]-span/2;
+		final double hi = lo+nBins*span;
+
+		final double[] values = getAxisValues(metadata, model, shape);
+		if (values==null) return null;
+
+		final int size = values.length;
+		final boolean[] ok = mask!=null ? getMask(mask) : null;
+
+		// Bin of each pixel, -1 for none
+		final int[] bin   = new int[size];
+		final int[] count = new int[nBins];
+		for (int i = 0; i < size; i++) {
+			bin[i] = -1;
+			if (ok!=null && !ok[i]) continue;
+			final double v = values[i];
+			if (v < lo || v > hi) continue; // Also NaN
+			final int b = (int)((v-lo)/span);
+			if (b >= nBins) continue;
+			bin[i] = b;
+			count[b]++;
+		}
+
+		final int[] start = new int[nBins+1];
+		for (int b = 0; b < nBins; b++) start[b+1] = start[b]+count[b];
+
+		final double[] corr    = correction!=null ? getValues(correction) : null;
+		final int[]    pixels  = new int[start[nBins]];
+		final float[]  weights = new float[start[nBins]];
+		final int[]    next    = start.clone();
+		for (int i = 0; i < size; i++) {
+			final int b = bin[i];
+			if (b<0) continue;
+			final int k = next[b]++;
+			pixels[k]  = i;
+			weights[k] = (float)((corr!=null ? corr[i] : 1d)/count[b]);
+		}
+
+		// Empty bins are given whatever the full integration gives
+		final double[] expected = getValues(integrated.get(1));
+		double empty = 0;
+		for (int b = 0; b < nBins; b++) {
+			if (count[b]==0) {
+				empty = expected[b];
+				break;
+			}
+		}
+
+		final IntegrationPlan plan = new IntegrationPlan(axis, size, start, pixels, weights, empty);
+		final double[] planned = new double[nBins];
+		plan.integrate(ramp, planned);
+		for (int b = 0; b < nBins; b++) {
+			final double e = expected[b], p = planned[b];
+			if (Double.compare(e, p)==0) continue;
+			if (Math.abs(e-p) <= TOLERANCE*Math.max(Math.abs(e), Math.abs(p))) continue;
+			logger.debug("Integration not planned, bin "+b+" is "+p+" rather than "+e);
+			return null;
+		}
+		return plan;
+	}
+
+	static boolean[] getMask(Dataset mask) {
+		final boolean[] ok = new boolean[mask.getSize()];
+		final IndexIterator it = mask.getIterator();
+		for (int i = 0; it.hasNext(); i++) ok[i] = mask.getElementBooleanAbs(it.index);
+		return ok;
+	}
+
+	/**
+	 * The radial value of each pixel in the units of the axis.
+	 */
+	private static double[] getAxisValues(IDiffractionMetadata metadata, PowderIntegrationModel model, int[] shape) {
+
+		final double[] tth = getValues(PixelIntegrationUtils.generate2ThetaArrayRadians(shape, metadata));
+		final double   wavelength = metadata.getDiffractionCrystalEnvironment().getWavelength();
+		for (int i = 0; i < tth.length; i++) {
+			switch (model.getAxisType()) {
+			case ANGLE:
+				tth[i] = Math.toDegrees(tth[i]);
+				break;
+			case Q:
+				tth[i] = 4*Math.PI*Math.sin(tth[i]/2)/wavelength;
+				break;
+			case RESOLUTION:
+				tth[i] = wavelength/(2*Math.sin(tth[i]/2));
+				break;
+			default:
+				return null;
+			}
+		}
+		return tth;
+	}
+
+	private static double[] getValues(Dataset set) {
+		final double[] values = new double[set.getSize()];
+		final IndexIterator it = set.getIterator();
+		for (int i = 0; it.hasNext(); i++) values[i] = set.getElementDoubleAbs(it.index);
+		return values;
+	}
+
+	/**
+	 * Integrates a frame without making any objects, unless the frame is a view.
+	 *
+	 * @param frame without correction, the same shape as the frame the plan was made from
+	 * @param out profile of the length of the axis
+	 */
+	void integrate(Dataset frame, double[] out) {
+		integrate(frame, out, 0);
+	}
+
+	/**
+	 * Integrates a frame without making any objects, unless the frame is a
+	 * view. Many threads may integrate with the same plan.
+	 *
+	 * @param frame without correction, the same shape as the frame the plan was made from
+	 * @param out holding the profile
+	 * @param offset of the profile in out
+	 */
+	void integrate(Dataset frame, double[] out, int offset) {
+
+		if (frame.getSize()!=size) throw new IllegalArgumentException("The frame is not the size which was planned for!");
+		Object data = frame.getBuffer();
+		if (data==null || Array.getLength(data)!=size) {
+			frame = frame.getSlice();
+			data  = frame.getBuffer();
+		}
+
+		final int nBins = start.length-1;
+		if (data instanceof double[]) {
+			final double[] d = (double[])data;
+			for (int b = 0; b < nBins; b++) {
+				double sum = 0;
+				for (int k = start[b]; k < start[b+1]; k++) sum += weights[k]*d[pixels[k]];
+				out[offset+b] = sum;
+			}
+		} else if (data instanceof float[]) {
+			final float[] d = (float[])data;
+			for (int b = 0; b < nBins; b++) {
+				double sum = 0;
+				for (int k = start[b]; k < start[b+1]; k++) sum += weights[k]*d[pixels[k]];
+				out[offset+b] = sum;
+			}
+		} else if (data instanceof int[]) {
+			final int[] d = (int[])data;
+			for (int b = 0; b < nBins; b++) {
+				double sum = 0;
+				for (int k = start[b]; k < start[b+1]; k++) sum += weights[k]*d[pixels[k]];
+				out[offset+b] = sum;
+			}
+		} else if (data instanceof short[]) {
+			final short[] d = (short[])data;
+			for (int b = 0; b < nBins; b++) {
+				double sum = 0;
+				for (int k = start[b]; k < start[b+1]; k++) sum += weights[k]*d[pixels[k]];
+				out[offset+b] = sum;
+			}
+		} else {
+			for (int b = 0; b < nBins; b++) {
+				double sum = 0;
+				for (int k = start[b]; k < start[b+1]; k++) sum += weights[k]*frame.getElementDoubleAbs(pixels[k]);
+				out[offset+b] = sum;
+			}
+		}
+
+		for (int b = 0; b < nBins; b++) {
+			if (start[b]==start[b+1]) out[offset+b] = empty;
+		}
+	}
+
+	/**
+	 * @return number of bins
+	 */
+	int getSize() {
+		return start.length-1;
+	}
+
+	/**
+	 * Integrates a frame in the same form as the full integration.
+	 *
+	 * @param frame without correction
+	 * @return axis and profile
+	 */
+	List<Dataset> integrate(Dataset frame) {
+		final double[] profile = new double[getSize()];
+		integrate(frame, profile);
+		final List<Dataset> out = new ArrayList<Dataset>(2);
+		out.add(axis.getView());
+		out.add(new DoubleDataset(profile, profile.length));
+		return out;
+	}
+}
@@ -19,6 +19,7 @@ import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.api.metadata.IDiffractionMetadata;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.DatasetFactory;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
 import org.eclipse.dawnsci.analysis.dataset.impl.Maths;
 import org.eclipse.dawnsci.plotting.api.IPlottingSystem;
 import org.eclipse.swt.widgets.Display;
@@ -45,6 +46,7 @@ public class PowderIntegrationJob extends Job {
 	private Dataset data;
 	private Dataset mask;
 	private MatchedCorrection matchedCorrection;
+	private MatchedPlan matchedPlan;
 	private PowderIntegrationModel model;
 	private PowderCorrectionModel correctionModel;
 	private int nBins;
@@ -76,44 +78,14 @@ public class PowderIntegrationJob extends Job {
 		if (name == null) name = "";
 		else name = name + " ";
 		
-		if (matchedIntegrator != null && !matchedIntegrator.getModel().equals(modell) &&
-				!isCompatibleIntegrator(matchedIntegrator.getIntegrator(), modell.getIntegrationMode())) {
-			matchedIntegrator = null;
-		}
-		
-		
-		if (matchedIntegrator == null) {
-			AbstractPixelIntegration i = createIntegrator(modell, diffractionMetadata, nBinsl);
-			PowderIntegrationJob.this.matchedIntegrator = new MatchedIntegrator(modell, i);
-			updateIntegratorFromModel(i, modell);
-		}
-		
-		if (!matchedIntegrator.getModel().equals(modell)) {
-			AbstractPixelIntegration i = matchedIntegrator.getIntegrator();
-			updateIntegratorFromModel(i, modell);
-			matchedIntegrator = new MatchedIntegrator(modell, i);
-		}
-		
-		if (monitor.isCanceled()) return Status.CANCEL_STATUS;
-		
-		matchedIntegrator.getIntegrator().setMask(ml);
-
+		updateIntegrator(modell, ml, nBinsl);
 		
 		if (monitor.isCanceled()) return Status.CANCEL_STATUS;
 		
 		//all accept 2d no splitting should be fast
 		if (modell.getIntegrationMode() == IntegrationMode.SPLITTING2D) system.setEnabled(false);
 
-		if (matchedCorrection != null && !matchedCorrection.getModel().equals(corModell)){
-			matchedCorrection = null;
-		}
-		
-		if (matchedCorrection == null) {
-			Dataset c = getCorrection(dl, corModell, diffractionMetadata);
-			matchedCorrection = new MatchedCorrection(corModell, c);
-		}
-		
-		if (matchedCorrection.getCorrection() != null) dl = Maths.multiply(dl, matchedCorrection.getCorrection());
+		updateCorrection(dl, corModell);
 		
 		if (monitor.isCanceled()) return Status.CANCEL_STATUS;
 		
@@ -121,7 +93,7 @@ public class PowderIntegrationJob extends Job {
 		final List<Dataset> out;
 		
 		try {
-			out = matchedIntegrator.getIntegrator().integrate(dl);
+			out = integrate(dl, ml, modell, corModell);
 		} catch (Exception e) {
 			logger.error("Someones probably just toggling buttons to quickly, but if something looks wrong check here!");
 			return Status.CANCEL_STATUS;
@@ -155,24 +127,88 @@ public class PowderIntegrationJob extends Job {
 		return Status.OK_STATUS;
 	}
 	
+	/**
+	 * Integrates data with the mask and models of the last setData(...),
+	 * in the same way as the job but without plotting.
+	 */
 	public List<Dataset> process(Dataset data) {
 		
+		updateIntegrator(model, mask, nBins);
+		updateCorrection(data, correctionModel);
+		
+		return integrate(data, mask, model, correctionModel);
+		
+	}
+	
+	/**
+	 * Makes or updates the integrator for the model and sets its mask.
+	 */
+	private void updateIntegrator(PowderIntegrationModel model, Dataset mask, int nBins) {
+		
+		if (matchedIntegrator != null && !matchedIntegrator.getModel().equals(model) &&
+				!isCompatibleIntegrator(matchedIntegrator.getIntegrator(), model.getIntegrationMode())) {
+			matchedIntegrator = null;
+		}
+		
 		if (matchedIntegrator == null) {
 			AbstractPixelIntegration i = createIntegrator(model, diffractionMetadata, nBins);
 			matchedIntegrator = new MatchedIntegrator(model, i);
+			updateIntegratorFromModel(i, model);
+		}
+		
+		if (!matchedIntegrator.getModel().equals(model)) {
+			AbstractPixelIntegration i = matchedIntegrator.getIntegrator();
+			updateIntegratorFromModel(i, model);
+			matchedIntegrator = new MatchedIntegrator(model, i);
+		}
+		
+		matchedIntegrator.getIntegrator().setMask(mask);
+	}
+	
+	private void updateCorrection(Dataset data, PowderCorrectionModel correctionModel) {
+		
+		if (matchedCorrection != null && !matchedCorrection.getModel().equals(correctionModel)){
+			matchedCorrection = null;
 		}
 		
 		if (matchedCorrection == null) {
 			Dataset c = getCorrection(data, correctionModel, diffractionMetadata);
 			matchedCorrection = new MatchedCorrection(correctionModel, c);
 		}
+	}
+	
+	/**
+	 * 
+	 * @return the plan made by the last integration, null if there is none.
+	 */
+	IntegrationPlan getPlan() {
+		return matchedPlan != null ? matchedPlan.getPlan() : null;
+	}
+	
+	/**
+	 * Integrates with the plan for the geometry, mask and models if there is
+	 * one, otherwise in full. The plan is made when the first frame for them
+	 * is integrated.
+	 */
+	private List<Dataset> integrate(Dataset data, Dataset mask, PowderIntegrationModel model, PowderCorrectionModel correctionModel) {
+		
+		if (matchedPlan != null && !matchedPlan.matches(model, correctionModel, mask, data.getShape())) {
+			matchedPlan = null;
+		}
 		
-		if (matchedCorrection.getCorrection() != null) data = Maths.multiply(data, matchedCorrection.getCorrection());
+		if (matchedPlan != null && matchedPlan.getPlan() != null) return matchedPlan.getPlan().integrate(data);
 		
-		List<Dataset> out = matchedIntegrator.getIntegrator().integrate(data);
+		Dataset correction = matchedCorrection.getCorrection();
+		Dataset corrected = correction != null ? Maths.multiply(data, correction) : data;
 		
-		return out;
+		List<Dataset> out = matchedIntegrator.getIntegrator().integrate(corrected);
 		
+		if (matchedPlan == null) {
+			IntegrationPlan plan = IntegrationPlan.create(diffractionMetadata, mask, model, correction, data, matchedIntegrator.getIntegrator());
+			matchedPlan = new MatchedPlan(model, correctionModel, mask, data.getShape(), plan);
+		}
+		
+		return out;
 	}
 	
 	private static void updateIntegratorFromModel(AbstractPixelIntegration integrator, PowderIntegrationModel model) {
@@ -311,5 +347,44 @@ public class PowderIntegrationJob extends Job {
 			return correction;
 		}
 	}
+	
+	private class MatchedPlan {
+		
+		private final PowderIntegrationModel model;
+		private final PowderCorrectionModel correctionModel;
+		private final boolean[] mask;
+		private final int[] shape;
+		private final IntegrationPlan plan;
+		
+		public MatchedPlan(PowderIntegrationModel model, PowderCorrectionModel correctionModel, Dataset mask, int[] shape, IntegrationPlan plan) {
+			this.model = model;
+			this.correctionModel = correctionModel;
+			this.mask = mask != null ? IntegrationPlan.getMask(mask) : null;
+			this.shape = shape;
+			this.plan = plan;
+		}
+		
+		/**
+		 * The mask may have been changed in place, so its values are compared.
+		 */
+		public boolean matches(PowderIntegrationModel model, PowderCorrectionModel correctionModel, Dataset mask, int[] shape) {
+			if (!this.model.equals(model) || !Arrays.equals(this.shape, shape)) return false;
+			if (this.correctionModel == null ? correctionModel != null : !this.correctionModel.equals(correctionModel)) return false;
+			if (mask == null || this.mask == null) return mask == null && this.mask == null;
+			if (mask.getSize() != this.mask.length) return false;
+			IndexIterator it = mask.getIterator();
+			for (int i = 0; it.hasNext(); i++) {
+				if (mask.getElementBooleanAbs(it.index) != this.mask[i]) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @return null if the integration could not be planned
+		 */
+		public IntegrationPlan getPlan() {
+			return plan;
+		}
+	}
 
 }
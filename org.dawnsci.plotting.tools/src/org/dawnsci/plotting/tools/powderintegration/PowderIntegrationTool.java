@@ -26,11 +26,15 @@ import org.dawnsci.plotting.tools.Activator;
 import org.dawnsci.plotting.tools.ServiceLoader;
 import org.dawnsci.plotting.tools.diffraction.DiffractionUtils;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
+import org.eclipse.dawnsci.analysis.api.dataset.Slice;
 import org.eclipse.dawnsci.analysis.api.diffraction.DetectorProperties;
 import org.eclipse.dawnsci.analysis.api.io.ILoaderService;
 import org.eclipse.dawnsci.analysis.api.metadata.IDiffractionMetadata;
 import org.eclipse.dawnsci.analysis.api.metadata.IMetadata;
+import org.eclipse.dawnsci.analysis.api.metadata.OriginMetadata;
 import org.eclipse.dawnsci.analysis.api.persistence.IPersistenceService;
 import org.eclipse.dawnsci.analysis.api.persistence.IPersistentFile;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
@@ -78,6 +82,21 @@ public class PowderIntegrationTool extends AbstractToolPage implements IDataRedu
 	private ITraceListener traceListener;
 	private IDiffractionMetadata metadata;
 	private PowderIntegrationJob fullImageJob;
+	private PowderStackIntegrationJob stackJob;
+	
+	/**
+	 * Both jobs plot into the system, so they are never run at once.
+	 */
+	private final ISchedulingRule plotRule = new ISchedulingRule() {
+		@Override
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+		@Override
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+	};
 	private Label statusMessage;
 	String[] statusString;
 	ILoaderService service;
@@ -386,6 +405,15 @@ public class PowderIntegrationTool extends AbstractToolPage implements IDataRedu
 
 		};
 		
+		final Action stackAction = new Action("Integrate all images in the stack") {
+			@Override
+			public void run() {
+				integrateStack();
+			}
+		};
+		
+		stackAction.setImageDescriptor(Activator.getImageDescriptor("icons/data-reduction.png"));
+		
 		loadMetaAction.setImageDescriptor(Activator.getImageDescriptor("icons/mask-import-wiz.png"));
 		clearImported.setImageDescriptor(Activator.getImageDescriptor("icons/delete.gif"));
 		
@@ -415,6 +443,64 @@ public class PowderIntegrationTool extends AbstractToolPage implements IDataRedu
 		
 		getSite().getActionBars().getToolBarManager().add(loadMeta);
 		getSite().getActionBars().getMenuManager().add(loadMeta);
+		
+		getSite().getActionBars().getMenuManager().add(stackAction);
+	}
+	
+	/**
+	 * Integrates every image of the stack which the plotted image was sliced
+	 * from, plotting a map of image against the radial axis as it fills.
+	 */
+	private void integrateStack() {
+		
+		IImageTrace im = getImageTrace();
+		if (im == null || im.getData() == null) return;
+		
+		OriginMetadata odata = null;
+		try {
+			List<OriginMetadata> origin = im.getData().getMetadata(OriginMetadata.class);
+			if (origin != null && !origin.isEmpty()) odata = origin.get(0);
+		} catch (Exception e) {
+			logger.debug("Cannot read origin of image", e);
+		}
+		
+		if (odata == null || odata.getParent() == null || odata.getParent().getRank() != 3) {
+			MessageDialog.openInformation(getViewPart().getSite().getShell(), "Integrate image stack",
+					"The image is not from a stack of images.");
+			return;
+		}
+		
+		// The stack is the dimension sliced to one image
+		final Slice[] slice = odata.getSliceInOutput();
+		int stackDim = -1;
+		for (int i = 0; i < slice.length; i++) {
+			if (slice[i] != null && slice[i].getNumSteps() == 1) {
+				stackDim = i;
+				break;
+			}
+		}
+		
+		IDiffractionMetadata md = importedMeta != null ? importedMeta : metadata;
+		if (stackDim < 0 || md == null) {
+			MessageDialog.openInformation(getViewPart().getSite().getShell(), "Integrate image stack",
+					"The image stack cannot be integrated without experimental metadata.");
+			return;
+		}
+		
+		Dataset mask = im.getMask() != null ? DatasetUtils.convertToDataset(im.getMask()) : null;
+		
+		if (stackJob != null) stackJob.cancel();
+		if (fullImageJob != null) fullImageJob.cancel();
+		stackJob = new PowderStackIntegrationJob(md, system, odata.getParent(), stackDim, mask, model, corModel);
+		stackJob.setRule(plotRule);
+		stackJob.setUser(true);
+		stackJob.schedule();
+	}
+	
+	private PowderIntegrationJob createJob(IDiffractionMetadata md) {
+		PowderIntegrationJob job = new PowderIntegrationJob(md, system);
+		job.setRule(plotRule);
+		return job;
 	}
 
 	@Override
@@ -425,6 +511,8 @@ public class PowderIntegrationTool extends AbstractToolPage implements IDataRedu
 	public void dispose() {
 		//can hold lots of data so get rid of it
 		fullImageJob = null;
+		if (stackJob != null) stackJob.cancel();
+		stackJob = null;
 		corModel = null;
 		model = null;
 		super.dispose();
@@ -444,6 +532,9 @@ public class PowderIntegrationTool extends AbstractToolPage implements IDataRedu
 		if (ds == null && im == null) return;
 		if (ds == null && im != null) ds = im.getData();
 		
+		// The map of the stack is left in the plot until it is done
+		if (stackJob != null && stackJob.getState() != Job.NONE) return;
+		
 		logger.debug("Update");
 		
 		//Imported metadata first
@@ -457,7 +548,7 @@ public class PowderIntegrationTool extends AbstractToolPage implements IDataRedu
 				statusMessage.setForeground(Display.getDefault().getSystemColor(SWT.COLOR_DARK_GRAY));
 			}
 			if (fullImageJob == null) {
-				fullImageJob = new PowderIntegrationJob(importedMeta, system);
+				fullImageJob = createJob(importedMeta);
 			}
 		} else {
 			
@@ -467,19 +558,19 @@ public class PowderIntegrationTool extends AbstractToolPage implements IDataRedu
 
 			if (metadata == null) {
 				metadata = m;
-				fullImageJob = new PowderIntegrationJob(metadata, system);
+				fullImageJob = createJob(metadata);
 			} else {
 				if (m != null && (!metadata.getDetector2DProperties().equals(m.getDetector2DProperties()) ||
 						!metadata.getDiffractionCrystalEnvironment().equals(m.getDiffractionCrystalEnvironment()))) {
 					metadata = m;
-					fullImageJob = new PowderIntegrationJob(metadata, system);
+					fullImageJob = createJob(metadata);
 					statusMessage.setText("Meta data updated");
 					statusMessage.setForeground(Display.getDefault().getSystemColor(SWT.COLOR_DARK_GRAY));
 				}
 			}
 			
 			if (fullImageJob == null) {
-				fullImageJob = new PowderIntegrationJob(metadata, system);
+				fullImageJob = createJob(metadata);
 			}
 		}
 		
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.tools.powderintegration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dawnsci.plotting.tools.Activator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
+import org.eclipse.dawnsci.analysis.api.dataset.ILazyDataset;
+import org.eclipse.dawnsci.analysis.api.dataset.SliceND;
+import org.eclipse.dawnsci.analysis.api.metadata.IDiffractionMetadata;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetFactory;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.plotting.api.IPlottingSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Integrates every image of a stack to a map of image against the radial
+ * axis, for instance for time resolved diffraction.
+ *
+ * The images are read in order by this job, a few ahead of the integration,
+ * and integrated in parallel with the one plan made from the first image.
+ * Each profile is written to its row of the map as soon as it is made and
+ * the map is plotted again every half second while it fills. Rows not yet
+ * integrated are NaN. If the integration cannot be planned the images are
+ * integrated in full, one at a time.
+ *
+ * Only 1D integration is supported. The map is plotted in the system of
+ * the tool, so the tool must not integrate its image while this job runs.
+ */
+public class PowderStackIntegrationJob extends Job {
+
+	private final static Logger logger = LoggerFactory.getLogger(PowderStackIntegrationJob.class);
+
+	private static final long REFRESH = 500; // ms between plots of the map
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool==null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	private final IPlottingSystem<?> system;
+	private final IDiffractionMetadata diffractionMetadata;
+	private final ILazyDataset stack;
+	private final int stackDim;
+	private final Dataset mask;
+	private final PowderIntegrationModel model;
+	private final PowderCorrectionModel correctionModel;
+
+	/**
+	 *
+	 * @param diffractionMetadata
+	 * @param system to plot the map in
+	 * @param stack of images
+	 * @param stackDim dimension of the stack which gives the images
+	 * @param mask may be null
+	 * @param model
+	 * @param correctionModel
+	 */
+	public PowderStackIntegrationJob(IDiffractionMetadata diffractionMetadata, IPlottingSystem<?> system,
+			ILazyDataset stack, int stackDim, Dataset mask, PowderIntegrationModel model, PowderCorrectionModel correctionModel) {
+		super("Integrate image stack");
+		this.diffractionMetadata = diffractionMetadata;
+		this.system = system;
+		this.stack = stack;
+		this.stackDim = stackDim;
+		this.mask = mask;
+		this.model = model.clone();
+		this.correctionModel = correctionModel.clone();
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+
+		final int nImages = stack.getShape()[stackDim];
+		monitor.beginTask("Integrating "+nImages+" images", nImages);
+
+		try {
+			// The first image makes the plan, with an integrator of
+			// our own so that the one of the tool is left as it is.
+			final PowderIntegrationJob job = new PowderIntegrationJob(diffractionMetadata, system);
+			Dataset image = getImage(0);
+			job.setData(image, mask, model, correctionModel);
+			final List<Dataset> first = job.process(image);
+			if (first.size() != 2) {
+				return new Status(IStatus.WARNING, Activator.PLUGIN_ID, "Only 1D integration of an image stack is supported");
+			}
+
+			final Dataset axis = first.get(0);
+			final int nBins = first.get(1).getSize();
+			final DoubleDataset map = new DoubleDataset(nImages, nBins);
+			map.setName("Intensity");
+			final double[] buffer = map.getData();
+			Arrays.fill(buffer, Double.NaN);
+			for (int b = 0; b < nBins; b++) buffer[b] = first.get(1).getElementDoubleAbs(b);
+
+			final Dataset images = DatasetFactory.createRange(nImages, Dataset.INT);
+			images.setName("Image");
+			final List<IDataset> axes = Arrays.asList(new IDataset[]{axis, images});
+
+			monitor.worked(1);
+			final AtomicInteger done = new AtomicInteger(1);
+			int reported = 1;
+			long plotted = System.currentTimeMillis();
+
+			final IntegrationPlan plan = job.getPlan();
+			if (plan != null) {
+				final ForkJoinPool pool = getPool();
+				final int permits = 2*pool.getParallelism();
+				final Semaphore readAhead = new Semaphore(permits);
+				final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+				// The tasks are not kept, so that each image may be dropped once integrated
+				for (int i = 1; i < nImages && !monitor.isCanceled() && failure.get()==null; i++) {
+					readAhead.acquire();
+					final Dataset im = getImage(i);
+					final int offset = i*nBins;
+					pool.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								plan.integrate(im, buffer, offset);
+								done.incrementAndGet();
+							} catch (Throwable t) {
+								failure.compareAndSet(null, t);
+							} finally {
+								readAhead.release();
+							}
+						}
+					});
+					monitor.worked(done.get()-reported);
+					reported = done.get();
+					if (System.currentTimeMillis()-plotted > REFRESH) {
+						system.updatePlot2D(map, axes, null);
+						plotted = System.currentTimeMillis();
+					}
+				}
+				readAhead.acquire(permits); // Every image integrated
+				monitor.worked(done.get()-reported);
+				final Throwable t = failure.get();
+				if (t instanceof Error) throw (Error)t;
+				if (t!=null) throw new Exception("Cannot integrate an image of the stack", t);
+
+			} else {
+				for (int i = 1; i < nImages && !monitor.isCanceled(); i++) {
+					final List<Dataset> out = job.process(getImage(i));
+					final Dataset profile = out.get(1);
+					for (int b = 0; b < nBins; b++) buffer[i*nBins+b] = profile.getElementDoubleAbs(b);
+					done.incrementAndGet();
+					monitor.worked(1);
+					if (System.currentTimeMillis()-plotted > REFRESH) {
+						system.updatePlot2D(map, axes, null);
+						plotted = System.currentTimeMillis();
+					}
+				}
+			}
+
+			system.updatePlot2D(map, axes, null);
+			system.repaint();
+			if (monitor.isCanceled()) return Status.CANCEL_STATUS;
+			return Status.OK_STATUS;
+
+		} catch (Exception e) {
+			if (monitor.isCanceled()) return Status.CANCEL_STATUS;
+			logger.error("Cannot integrate image stack", e);
+			return Status.CANCEL_STATUS;
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private Dataset getImage(int index) {
+		final SliceND slice = new SliceND(stack.getShape());
+		slice.setSlice(stackDim, index, index+1, 1);
+		return DatasetUtils.convertToDataset(stack.getSlice(slice)).squeeze();
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.plotting.tools.utils.window;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+
+/**
+ * Minimum, maximum and mean of a window sliding along an array, each in
+ * one pass whatever the width of the window.
+ *
+ * The window of index i runs from i-before up to but not including
+ * i+after, cut to the first n values of the array. The minimum and maximum
+ * keep the indices of the values which may still be the answer in a deque,
+ * each index going in and out once, and the mean is a difference of
+ * cumulative sums. A NaN in the window makes the result NaN, as it does for
+ * the statistics of a dataset.
+ *
+ * Also the rolling ball baseline, which is the mean of the maximum of the
+ * minimum, made from these.
+ */
+public final class SlidingWindow {
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool==null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	private SlidingWindow() {
+
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @param n number of values of in to use
+	 * @param before first value of the window, before the index
+	 * @param after end of the window, after the index
+	 * @param out of at least n, NaN where the window is empty
+	 */
+	public static void min(double[] in, int n, int before, int after, double[] out) {
+		extreme(in, n, before, after, out, false);
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @param n number of values of in to use
+	 * @param before first value of the window, before the index
+	 * @param after end of the window, after the index
+	 * @param out of at least n, NaN where the window is empty
+	 */
+	public static void max(double[] in, int n, int before, int after, double[] out) {
+		extreme(in, n, before, after, out, true);
+	}
+
+	private static void extreme(double[] in, int n, int before, int after, double[] out, boolean max) {
+
+		// Indices in order, with values getting worse from the head, which is the answer
+		final int[] deque = new int[n];
+		int head = 0, tail = 0;
+		int next = 0;
+		int nan  = -1; // Last NaN in the window so far
+
+		for (int i = 0; i < n; i++) {
+			final int lo = Math.max(0, i-before);
+			final int hi = Math.min(n, i+after);
+			for (; next < hi; next++) {
+				final double v = in[next];
+				if (Double.isNaN(v)) {
+					nan = next;
+					continue;
+				}
+				while (tail > head && (max ? in[deque[tail-1]] <= v : in[deque[tail-1]] >= v)) tail--;
+				deque[tail++] = next;
+			}
+			while (head < tail && deque[head] < lo) head++;
+
+			if (lo >= hi) {
+				out[i] = Double.NaN;
+			} else if (nan >= lo) {
+				out[i] = Double.NaN;
+			} else {
+				out[i] = in[deque[head]];
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param in
+	 * @param n number of values of in to use
+	 * @param before first value of the window, before the index
+	 * @param after end of the window, after the index
+	 * @param out of at least n, NaN where the window is empty
+	 */
+	public static void mean(double[] in, int n, int before, int after, double[] out) {
+
+		// Cumulative sums without the NaNs, which are counted instead
+		final double[] sum  = new double[n+1];
+		int[]          nans = null;
+		for (int i = 0; i < n; i++) {
+			final double v = in[i];
+			if (Double.isNaN(v)) {
+				if (nans==null) nans = new int[n+1];
+				sum[i+1] = sum[i];
+			} else {
+				sum[i+1] = sum[i]+v;
+			}
+			if (nans!=null) nans[i+1] = nans[i] + (Double.isNaN(v) ? 1 : 0);
+		}
+
+		for (int i = 0; i < n; i++) {
+			final int lo = Math.max(0, i-before);
+			final int hi = Math.min(n, i+after);
+			if (lo >= hi || (nans!=null && nans[hi]!=nans[lo])) {
+				out[i] = Double.NaN;
+			} else {
+				out[i] = (sum[hi]-sum[lo])/(hi-lo);
+			}
+		}
+	}
+
+	/**
+	 * The rolling ball baseline of a spectrum. Each of the minimum, maximum
+	 * and mean is taken over the width before each point up to but not
+	 * including the width after it, leaving out the last point, which has a
+	 * baseline of zero.
+	 *
+	 * @param y
+	 * @param width
+	 * @return baseline of the same length
+	 */
+	public static double[] rollingBallBaseline(double[] y, int width) {
+
+		final double[] baseline = new double[y.length];
+		final int      n        = y.length-1;
+		if (n < 1) return baseline;
+
+		final double[] t = new double[n];
+		min(y, n, width, width, baseline);
+		max(baseline, n, width, width, t);
+		mean(t, n, width, width, baseline);
+		return baseline;
+	}
+
+	/**
+	 * The rolling ball baseline of a spectrum, see rollingBallBaseline(double[], int)
+	 *
+	 * @param y
+	 * @param width
+	 * @return baseline of the same shape and type as y
+	 */
+	public static Dataset rollingBallBaseline(Dataset y, int width) {
+
+		final double[] values = new double[y.getSize()];
+		final IndexIterator it = y.getIterator();
+		for (int i = 0; it.hasNext(); i++) values[i] = y.getElementDoubleAbs(it.index);
+
+		final Dataset baseline = new DoubleDataset(rollingBallBaseline(values, width), y.getShape());
+		return y.getDtype()==Dataset.FLOAT64 ? baseline : DatasetUtils.cast(baseline, y.getDtype());
+	}
+
+	/**
+	 * The rolling ball baselines of many spectra, worked out in parallel.
+	 *
+	 * @param ys
+	 * @param width
+	 * @return baselines in the same order as ys
+	 */
+	public static List<Dataset> rollingBallBaselines(List<? extends Dataset> ys, final int width) {
+
+		final ForkJoinPool pool = getPool();
+		final List<ForkJoinTask<Dataset>> tasks = new ArrayList<ForkJoinTask<Dataset>>(ys.size());
+		for (final Dataset y : ys) {
+			tasks.add(pool.submit(new Callable<Dataset>() {
+				@Override
+				public Dataset call() throws Exception {
+					return rollingBallBaseline(y, width);
+				}
+			}));
+		}
+
+		final List<Dataset> baselines = new ArrayList<Dataset>(ys.size());
+		for (ForkJoinTask<Dataset> task : tasks) baselines.add(task.join());
+		return baselines;
+	}
+}
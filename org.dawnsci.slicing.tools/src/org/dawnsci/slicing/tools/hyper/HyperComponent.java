@@ -26,6 +26,7 @@ import org.eclipse.dawnsci.analysis.api.dataset.Slice;
 import org.eclipse.dawnsci.analysis.api.roi.IROI;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.DatasetFactory;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
 import org.eclipse.dawnsci.plotting.api.IPlottingSystem;
 import org.eclipse.dawnsci.plotting.api.PlotType;
 import org.eclipse.dawnsci.plotting.api.PlottingFactory;
@@ -136,6 +137,7 @@ public class HyperComponent {
 	
 	public void setData(ILazyDataset lazy, List<IDataset> daxes, Slice[] slices, int[] order,
 			IDatasetROIReducer mainReducer, IDatasetROIReducer sideReducer) {
+		disposeReducers();
 		//FIXME needs to be made more generic
 		this.leftJob = new HyperDelegateJob("Left update",
 				sideSystem,
@@ -237,9 +239,19 @@ public class HyperComponent {
 		
 		if (leftJob != null) leftJob.cancel();
 		if (rightJob != null) rightJob.cancel();
+		disposeReducers();
 		
 	}
 	
+	/**
+	 * Drops anything the reducers hold for the data, such as summed area tables.
+	 */
+	private void disposeReducers() {
+		for (HyperDelegateJob job : new HyperDelegateJob[]{leftJob, rightJob}) {
+			if (job != null && job.getReducer() instanceof TraceReducer) ((TraceReducer)job.getReducer()).dispose();
+		}
+	}
+	
 	private void createPlottingSystems(SashForm sashForm) {
 		try {
 			mainSystem = PlottingFactory.createPlottingSystem();
@@ -540,19 +552,20 @@ public class HyperComponent {
 		});
 	}
 	
+	/**
+	 * Each row of the data as a view, so the rows share the buffer of the
+	 * data rather than each being copied.
+	 */
 	private List<IDataset> convertFrom2DToListOf1D(IDataset axis, IDataset data) {
 		
-		int[] dataShape = data.getShape();
+		final Dataset d = DatasetUtils.convertToDataset(data);
+		int[] dataShape = d.getShape();
 		
 		List<IDataset> datasets = new ArrayList<IDataset>(dataShape[0]);
-		Slice[] slices = new Slice[2];
-		slices[0] = new Slice(0,1,1);
 		
 		for (int i = 0; i < dataShape[0]; i++) {
-			slices[0].setStart(i);
-			slices[0].setStop(i+1);
 			
-			IDataset out = data.getSlice(slices);
+			Dataset out = d.getSliceView(new Slice(i, i+1, 1), null);
 			
 			out.setName("trace_" + i);
 			
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.slicing.tools.hyper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dawnsci.analysis.api.dataset.ILazyDataset;
+import org.eclipse.dawnsci.analysis.api.dataset.Slice;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+import org.eclipse.dawnsci.analysis.dataset.roi.RectangularROI;
+import org.eclipse.dawnsci.slicing.api.util.ProgressMonitorWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The sums of a volume over every box from the origin of its image dimensions,
+ * for each point of its trace dimension, so that the mean over any box of the
+ * image is four values per point of the trace rather than the whole box.
+ *
+ * The table is built by a background job from the same data, slices and order
+ * the reducer is given. Until it is built, or if it cannot be, getMean(...)
+ * gives null and the box should be read as before. Volumes with a NaN are not
+ * tabled, as one NaN would spoil the sums of every box beyond it.
+ *
+ * The table is held in memory if it fits in the number of megabytes set with
+ * org.dawnsci.slicing.tools.hyper.summedarea.size, by default a quarter of
+ * the maximum heap, otherwise it is written to a temporary file which is
+ * mapped into memory.
+ */
+class SummedAreaTable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SummedAreaTable.class);
+
+	private static final String SIZE_PROPERTY = "org.dawnsci.slicing.tools.hyper.summedarea.size";
+
+	private final ILazyDataset data;
+	private final Slice[]      slices;
+	private final int[]        order;
+
+	private int   nx, ny, nz;   // Sizes of the image (order[0], order[1]) and trace (order[2]) dimensions
+	private Store store;        // Sums in y, x, z order, with z fastest and a row and column of zeros at 0
+
+	private volatile boolean ready;
+	private volatile boolean disposed;
+	private final Job        job;
+
+	SummedAreaTable(ILazyDataset data, Slice[] slices, int[] order) {
+		this.data   = data;
+		this.slices = slices != null ? slices.clone() : null;
+		this.order  = order.clone();
+		this.job    = new Job("Summing hyper volume") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					build(monitor);
+					return Status.OK_STATUS;
+				} catch (Exception e) {
+					logger.debug("Cannot make summed area table, boxes will be read in full", e);
+					return Status.CANCEL_STATUS;
+				}
+			}
+		};
+		job.setSystem(true);
+		job.setPriority(Job.LONG);
+	}
+
+	/**
+	 * Starts building the table in the background.
+	 */
+	void schedule() {
+		job.schedule();
+	}
+
+	/**
+	 *
+	 * @param data
+	 * @param slices
+	 * @param order
+	 * @return true if this table is of the data with the slices and order
+	 */
+	boolean isFor(ILazyDataset data, Slice[] slices, int[] order) {
+		return this.data == data && Arrays.equals(this.order, order) && Arrays.toString(this.slices).equals(Arrays.toString(slices));
+	}
+
+	boolean isReady() {
+		return ready;
+	}
+
+	void dispose() {
+		disposed = true;
+		ready    = false;
+		job.cancel();
+		if (store != null) store.dispose();
+	}
+
+	private void build(IProgressMonitor monitor) throws Exception {
+
+		final int rank = data.getRank();
+		final int[] shape = data.getShape();
+
+		// The volume to table, which is all of the image dimensions
+		final Slice[] sl = new Slice[rank];
+		for (int i = 0; i < rank; i++) {
+			final Slice s = slices != null && i < slices.length ? slices[i] : null;
+			sl[i] = s != null ? s.clone() : new Slice(0, shape[i], 1);
+			sl[i].setLength(shape[i]);
+		}
+		sl[order[0]] = new Slice(0, shape[order[0]], 1);
+		sl[order[1]] = new Slice(0, shape[order[1]], 1);
+		for (int i = 0; i < rank; i++) {
+			if (i != order[0] && i != order[1] && i != order[2] && sl[i].getNumSteps() != 1) return;
+		}
+		if (sl[order[2]].getStep() != 1) return;
+
+		final Integer start = sl[order[2]].getStart();
+		if ((start != null && start < 0) || sl[order[2]].getNumSteps() < 1) return;
+		nx = shape[order[0]];
+		ny = shape[order[1]];
+		nz = sl[order[2]].getNumSteps();
+
+		final long size = (long)(nx+1)*(ny+1)*nz;
+		final long maxBytes = Long.getLong(SIZE_PROPERTY, Runtime.getRuntime().maxMemory()/4 >> 20) << 20;
+		store = size*8 <= maxBytes && size <= Integer.MAX_VALUE ? new ArrayStore((int)size) : new MappedStore(size);
+
+		// The data in y, x, z order with the others first
+		final int[] axes = new int[rank];
+		int a = 0;
+		for (int i = 0; i < rank; i++) {
+			if (i != order[0] && i != order[1] && i != order[2]) axes[a++] = i;
+		}
+		axes[a++] = order[1];
+		axes[a++] = order[0];
+		axes[a++] = order[2];
+
+		// Read a few rows at a time, each is added to the sums of the row before
+		final int rows = (int)Math.max(1, Math.min(ny, (8L<<20)/Math.max(1, (long)nx*nz)));
+		final double[] row = new double[nz];
+		monitor.beginTask("Summing hyper volume", (ny+rows-1)/rows);
+		for (int y0 = 0; y0 < ny; y0 += rows) {
+			if (monitor.isCanceled() || disposed) return;
+			final int y1 = Math.min(ny, y0+rows);
+			sl[order[1]] = new Slice(y0, y1, 1);
+			final Dataset block = DatasetUtils.transpose(data.getSlice(new ProgressMonitorWrapper(monitor), sl), axes);
+
+			final IndexIterator it = block.getIterator();
+			for (int y = y0; y < y1; y++) {
+				Arrays.fill(row, 0); // Sum of the row so far
+				for (int x = 0; x < nx; x++) {
+					final long above = getIndex(x+1, y, 0);
+					final long here  = getIndex(x+1, y+1, 0);
+					for (int z = 0; z < nz; z++) {
+						it.hasNext();
+						final double v = block.getElementDoubleAbs(it.index);
+						if (Double.isNaN(v)) return;
+						row[z] += v;
+						store.set(here+z, row[z] + store.get(above+z));
+					}
+				}
+			}
+			monitor.worked(1);
+		}
+		monitor.done();
+		ready = !disposed;
+	}
+
+	private long getIndex(int x, int y, int z) {
+		return ((long)y*(nx+1) + x)*nz + z;
+	}
+
+	/**
+	 *
+	 * @param roi
+	 * @return mean over the box of the roi for each point of the trace,
+	 *         null if the table is not ready or the box is not within the image.
+	 */
+	Dataset getMean(RectangularROI roi) {
+
+		if (!ready || roi.getRotationAngle() != 0) return null;
+
+		final int[] pt  = roi.getIntPoint();
+		final int[] len = roi.getIntLengths();
+		final int x0 = pt[0], y0 = pt[1];
+		final int x1 = Math.min(nx, x0+len[0]), y1 = Math.min(ny, y0+len[1]);
+		if (x0 < 0 || y0 < 0 || x1 <= x0 || y1 <= y0) return null;
+
+		final long a = getIndex(x1, y1, 0), b = getIndex(x0, y1, 0);
+		final long c = getIndex(x1, y0, 0), d = getIndex(x0, y0, 0);
+		final double n = (double)(x1-x0)*(y1-y0);
+
+		final double[] mean = new double[nz];
+		for (int z = 0; z < nz; z++) {
+			mean[z] = (store.get(a+z) - store.get(b+z) - store.get(c+z) + store.get(d+z))/n;
+		}
+		return new DoubleDataset(mean, nz);
+	}
+
+	private interface Store {
+		double get(long index);
+		void set(long index, double value);
+		void dispose();
+	}
+
+	private static class ArrayStore implements Store {
+
+		private final double[] values;
+
+		ArrayStore(int size) {
+			values = new double[size];
+		}
+
+		@Override
+		public double get(long index) {
+			return values[(int)index];
+		}
+
+		@Override
+		public void set(long index, double value) {
+			values[(int)index] = value;
+		}
+
+		@Override
+		public void dispose() {
+			// Collected with the table
+		}
+	}
+
+	/**
+	 * Values in a temporary file, mapped in chunks as a mapping cannot be over 2GB.
+	 */
+	private static class MappedStore implements Store {
+
+		private static final int SHIFT = 27; // Doubles in a chunk, as a power of two
+		private static final int MASK  = (1<<SHIFT)-1;
+
+		private final File           file;
+		private final DoubleBuffer[] chunks;
+
+		MappedStore(long size) throws IOException {
+			file = File.createTempFile("summedarea", ".tmp");
+			file.deleteOnExit();
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				final FileChannel channel = raf.getChannel();
+				chunks = new DoubleBuffer[(int)((size+MASK) >> SHIFT)];
+				for (int i = 0; i < chunks.length; i++) {
+					final long start = (long)i << SHIFT;
+					final long count = Math.min(1L<<SHIFT, size-start);
+					chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start*8, count*8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+				}
+			} finally {
+				raf.close(); // The mappings stay valid
+			}
+		}
+
+		@Override
+		public double get(long index) {
+			return chunks[(int)(index >> SHIFT)].get((int)(index & MASK));
+		}
+
+		@Override
+		public void set(long index, double value) {
+			chunks[(int)(index >> SHIFT)].put((int)(index & MASK), value);
+		}
+
+		@Override
+		public void dispose() {
+			if (!file.delete()) logger.debug("Cannot delete "+file+" until it is unmapped");
+		}
+	}
+}
@@ -32,12 +32,19 @@ import org.eclipse.jface.action.ActionContributionItem;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.action.IContributionItem;
 import org.eclipse.swt.SWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class TraceReducer implements IDatasetROIReducer, IProvideReducerActions {
 
+	private static final Logger logger = LoggerFactory.getLogger(TraceReducer.class);
+
 	private final RegionType regionType = RegionType.BOX;
 	private List<IDataset> traceAxes;
 	
+	private SummedAreaTable table;
+	private boolean tableChecked;
+	
 	@Override
 	public IDataset reduce(ILazyDataset data, List<IDataset> axes,
 			IROI roi, Slice[] slices, int[] order, IMonitor monitor) throws Exception {
@@ -45,19 +52,78 @@ public class TraceReducer implements IDatasetROIReducer, IProvideReducerActions
 		if (monitor.isCancelled()) return null;
 		if (roi instanceof RectangularROI) {
 			
-			Dataset output = (Dataset)ROISliceUtils.getDataset(data, (RectangularROI)roi, slices, new int[]{order[0],order[1]}, 1, monitor);
-			if (monitor.isCancelled()) return null;
+			Dataset output = getTableMean(data, (RectangularROI)roi, slices, order);
 			
-			if (order[0] > order[1]) output = output.mean(order[0]).mean(order[1]);
-			else output = output.mean(order[1]).mean(order[0]);
+			if (output == null) {
+				output = readMean(data, (RectangularROI)roi, slices, order, monitor);
+				if (output == null) return null;
+			}
 
 			this.traceAxes = new ArrayList<IDataset>();
 			this.traceAxes.add(axes.get(2).getSlice());
 			
-			return output.squeeze();
+			return output;
 		}
 		return null;
 	}
+	
+	private Dataset readMean(ILazyDataset data, RectangularROI roi, Slice[] slices, int[] order, IMonitor monitor) throws Exception {
+		
+		Dataset output = (Dataset)ROISliceUtils.getDataset(data, roi, slices, new int[]{order[0],order[1]}, 1, monitor);
+		if (monitor.isCancelled()) return null;
+		
+		if (order[0] > order[1]) output = output.mean(order[0]).mean(order[1]);
+		else output = output.mean(order[1]).mean(order[0]);
+		
+		return output.squeeze();
+	}
+	
+	/**
+	 * The mean from the summed area table of the data, which is started in
+	 * the background the first time the data is reduced. The first mean from
+	 * the table is checked against reading the box, and the table is only
+	 * used if they agree.
+	 * 
+	 * @return mean, null if the box should be read
+	 */
+	private synchronized Dataset getTableMean(ILazyDataset data, RectangularROI roi, Slice[] slices, int[] order) throws Exception {
+		
+		if (table == null || !table.isFor(data, slices, order)) {
+			dispose();
+			table = new SummedAreaTable(data, slices, order);
+			tableChecked = false;
+			table.schedule();
+			return null;
+		}
+		
+		Dataset mean = table.getMean(roi);
+		if (mean == null || tableChecked) return mean;
+		
+		Dataset read = readMean(data, roi, slices, order, new IMonitor.Stub());
+		tableChecked = true;
+		if (read == null || read.getSize() != mean.getSize() || !isClose(read, mean)) {
+			logger.debug("Summed area table does not agree with the data, boxes will be read in full");
+			table.dispose();
+			return read;
+		}
+		return mean;
+	}
+	
+	private static boolean isClose(Dataset read, Dataset mean) {
+		for (int i = 0; i < read.getSize(); i++) {
+			double r = read.getElementDoubleAbs(i), m = mean.getElementDoubleAbs(i);
+			if (Math.abs(r-m) > 1e-6*Math.max(1, Math.max(Math.abs(r), Math.abs(m)))) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Drops the summed area table of the data.
+	 */
+	public synchronized void dispose() {
+		if (table != null) table.dispose();
+		table = null;
+	}
 
 	@Override
 	public boolean isOutput1D() {
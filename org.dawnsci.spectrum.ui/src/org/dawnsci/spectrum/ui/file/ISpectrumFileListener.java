@@ -14,6 +14,12 @@ public interface ISpectrumFileListener extends EventListener {
 	
 	public void fileLoaded(SpectrumFileEvent event);
 
+	/**
+	 * A file has been added but is not to be plotted
+	 * @param event
+	 */
+	public void fileAdded(SpectrumFileEvent event);
+
 	public void fileRemoved(SpectrumFileEvent event);
 
 }
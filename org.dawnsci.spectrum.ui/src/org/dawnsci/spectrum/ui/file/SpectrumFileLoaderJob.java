@@ -1,8 +1,16 @@
 package org.dawnsci.spectrum.ui.file;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,58 +20,128 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.dawnsci.plotting.api.IPlottingSystem;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.preference.IPreferenceStore;
-
+import org.eclipse.swt.widgets.Display;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Reads the dataset names and shapes of files, several at a time, and hands
+ * each file to the manager as soon as it and the files before it are read,
+ * so the list fills in the order of the paths while the rest are read. The
+ * data of a file is only read when it is plotted.
+ *
+ * The patterns for the x and y dataset names are made from the preferences
+ * once for all the files.
+ */
 public class SpectrumFileLoaderJob implements IRunnableWithProgress {
 
-	private Logger logger = LoggerFactory.getLogger(SpectrumFileLoaderJob.class);
+	private static final Logger logger = LoggerFactory.getLogger(SpectrumFileLoaderJob.class);
+
+	private static ExecutorService pool;
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Spectrum file loader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return pool;
+	}
 
 	private final List<String> paths;
-	private Map<String,ISpectrumFile> spectrumFiles;
+	private final SpectrumFileManager manager;
+	private final IPlottingSystem<?> system;
 
-	private IPlottingSystem<?> system;
+	private final Pattern xPattern;
+	private final Pattern yPattern;
 
-	public SpectrumFileLoaderJob(List<String> paths, IPlottingSystem<?> system, Map<String,ISpectrumFile> spectrumFiles) {
+	public SpectrumFileLoaderJob(List<String> paths, IPlottingSystem<?> system, SpectrumFileManager manager) {
 		super();
 		this.paths = paths;
 		this.system = system;
-		this.spectrumFiles = spectrumFiles;
+		this.manager = manager;
+
+		IPreferenceStore store = Activator.getDefault().getPreferenceStore();
+		this.xPattern = createPattern(store.getString(SpectrumConstants.X_DATASETS));
+		this.yPattern = createPattern(store.getString(SpectrumConstants.Y_DATASETS));
 	}
 
 	@Override
 	public void run(IProgressMonitor monitor) {
 		monitor.beginTask("Loading files", paths.size());
 
-		for (String path : paths) {
-			SpectrumFile file = SpectrumFile.create(path, system);
+		List<Future<SpectrumFile>> futures = new ArrayList<Future<SpectrumFile>>(paths.size());
+		for (final String path : paths) {
+			futures.add(getPool().submit(new Callable<SpectrumFile>() {
+				@Override
+				public SpectrumFile call() throws Exception {
+					SpectrumFile file = SpectrumFile.create(path, system);
+					if (file != null) setXandYdatasets(file);
+					return file;
+				}
+			}));
+		}
 
-			if (file == null) {
-				logger .error("Could not load file!");
-			}
-			monitor.setTaskName("Loading " + path);
-			setXandYdatasets(file);
+		try {
+			boolean first = true;
+			for (int i = 0; i < futures.size(); i++) {
+				monitor.setTaskName("Loading " + paths.get(i));
 
-			spectrumFiles.put(file.getPath(), file);
+				SpectrumFile file = get(futures.get(i), monitor);
+				if (monitor.isCanceled()) return;
 
-			if (monitor.isCanceled())
-				return;
-			monitor.worked(1);
+				if (file == null) {
+					logger.error("Could not load file " + paths.get(i));
+				} else {
+					added(file, first);
+					first = false;
+				}
+				monitor.worked(1);
+			}
+		} finally {
+			for (Future<SpectrumFile> future : futures) future.cancel(true);
+			monitor.done();
 		}
-		monitor.done();
 	}
 
-	private void setXandYdatasets(SpectrumFile file) {
-		IPreferenceStore store = Activator.getDefault().getPreferenceStore();
-		String xdatasetNamesCombined = store.getString(SpectrumConstants.X_DATASETS);
-		String ydatasetNamesCombined = store.getString(SpectrumConstants.Y_DATASETS);
+	/**
+	 * Waits for a file, checking for cancellation while it is read.
+	 */
+	private SpectrumFile get(Future<SpectrumFile> future, IProgressMonitor monitor) {
+		while (!monitor.isCanceled()) {
+			try {
+				return future.get(100, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				continue;
+			} catch (InterruptedException e) {
+				return null;
+			} catch (ExecutionException e) {
+				logger.error(e.getMessage());
+				return null;
+			}
+		}
+		return null;
+	}
 
-		xdatasetNamesCombined = xdatasetNamesCombined.replace("*", ".*");
-		ydatasetNamesCombined = ydatasetNamesCombined.replace("*", ".*");
+	private void added(final SpectrumFile file, final boolean first) {
+		Display.getDefault().asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				manager.addLoadedFile(file, first);
+			}
+		});
+	}
+
+	private void setXandYdatasets(SpectrumFile file) {
 
-		String[] foundx = findDatasets(file.getDataNames(), xdatasetNamesCombined);
-		String[] foundy = findDatasets(file.getDataNames(), ydatasetNamesCombined);
+		String[] foundx = findDatasets(file.getDataNames(), xPattern);
+		String[] foundy = findDatasets(file.getDataNames(), yPattern);
 
 		for (String name : foundx) {
 			if (name != null && file.getPossibleAxisNames().contains(name)) {
@@ -80,11 +158,14 @@ public class SpectrumFileLoaderJob implements IRunnableWithProgress {
 		}
 	}
 
-	private String[] findDatasets(Collection<String> datasetNames, String namesCombined) {
+	/**
+	 *
+	 * @param namesCombined names separated by ; which may contain *
+	 * @return pattern with a group for each name
+	 */
+	private static Pattern createPattern(String namesCombined) {
 
-		String[] datasets = namesCombined.split(";");
-
-		String[] found = new String[datasets.length];
+		String[] datasets = namesCombined.replace("*", ".*").split(";");
 
 		StringBuilder builder = new StringBuilder();
 
@@ -97,10 +178,17 @@ public class SpectrumFileLoaderJob implements IRunnableWithProgress {
 
 		builder.deleteCharAt(builder.length() - 1);
 
-		Pattern pattern = Pattern.compile(builder.toString());
+		return Pattern.compile(builder.toString());
+	}
+
+	private static String[] findDatasets(Collection<String> datasetNames, Pattern pattern) {
+
+		Matcher matcher = pattern.matcher("");
+
+		String[] found = new String[matcher.groupCount()];
 
 		for (String dataset : datasetNames) {
-			Matcher matcher = pattern.matcher(dataset);
+			matcher.reset(dataset);
 			if (matcher.matches()) {
 				for (int i = 1; i < matcher.groupCount() + 1; i++) {
 					if (matcher.group(i) != null && found[i - 1] == null) {
@@ -111,8 +199,4 @@ public class SpectrumFileLoaderJob implements IRunnableWithProgress {
 		}
 		return found;
 	}
-
-	public Map<String, ISpectrumFile> getSpectrumFiles() {
-		return spectrumFiles;
-	}
 }
@@ -96,7 +96,7 @@ public class SpectrumFileManager implements IDataMailListener {
 			if (spectrumFiles.containsKey(path)) return;
 		}
 		
-		SpectrumFileLoaderJob job = new SpectrumFileLoaderJob(paths, system, spectrumFiles);
+		SpectrumFileLoaderJob job = new SpectrumFileLoaderJob(paths, system, this);
 		ProgressMonitorDialog spectrumLoaderProgress = new ProgressMonitorDialog(Display.getCurrent().getActiveShell());
 		spectrumLoaderProgress.setCancelable(true);
 		try {
@@ -108,8 +108,25 @@ public class SpectrumFileManager implements IDataMailListener {
 							"An error occured during data loading: " + e1.getMessage());
 			logger.error(e1.getMessage());
 		}
-		spectrumFiles = job.getSpectrumFiles();
-		fireFileLoadedListeners(new SpectrumFileEvent(this, spectrumFiles.values().iterator().next()));
+	}
+
+	/**
+	 * Adds a file read by the loader, in the UI thread. The first file of
+	 * the ones being loaded is plotted, the others are only listed.
+	 * 
+	 * @param file
+	 * @param plot
+	 */
+	void addLoadedFile(ISpectrumFile file, boolean plot) {
+		if (spectrumFiles.containsKey(file.getLongName())) return;
+		
+		spectrumFiles.put(file.getLongName(), file);
+		
+		if (plot) {
+			fireFileLoadedListeners(new SpectrumFileEvent(this, file));
+		} else {
+			fireFileAddedListeners(new SpectrumFileEvent(this, file));
+		}
 	}
 
 	public Set<String> getFileNames() {
@@ -143,6 +160,11 @@ public class SpectrumFileManager implements IDataMailListener {
 			listener.fileLoaded(event);
 	}
 
+	private void fireFileAddedListeners(SpectrumFileEvent event) {
+		for (ISpectrumFileListener listener : listeners)
+			listener.fileAdded(event);
+	}
+
 	private void fireFileRemovedListeners(SpectrumFileEvent event) {
 		for (ISpectrumFileListener listener : listeners)
 			listener.fileRemoved(event);
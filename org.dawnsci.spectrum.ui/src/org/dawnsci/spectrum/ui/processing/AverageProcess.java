@@ -12,13 +12,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import org.apache.commons.math3.stat.descriptive.MultivariateSummaryStatistics;
 import org.dawnsci.spectrum.ui.file.IContain1DData;
 import org.dawnsci.spectrum.ui.utils.Contain1DDataImpl;
+import org.dawnsci.spectrum.ui.utils.SpectrumAccumulator;
 import org.dawnsci.spectrum.ui.utils.SpectrumUtils;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
-import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
 import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
 
 public class AverageProcess extends AbstractProcess {
@@ -35,32 +34,26 @@ public class AverageProcess extends AbstractProcess {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Average of: ");
 		sb.append("\n");
-		MultivariateSummaryStatistics ms = new MultivariateSummaryStatistics(x0.getSize(),false);
 		for (IContain1DData file : list) {
 			
 			sb.append(file.getName() +":");
 			
-			for (IDataset ds : file.getyDatasets()) {
+			for (String name : SpectrumUtils.getyDatasetNames(file)) {
 				
-				sb.append(ds.getName() +":");
-				
-				DoubleDataset dd;
-				if (ds instanceof DoubleDataset) dd = (DoubleDataset)ds;
-				else {
-					dd = (DoubleDataset)DatasetUtils.cast((Dataset)ds, Dataset.FLOAT64);
-				}
-				double[] raw = dd.getData();
-				ms.addValue(raw);
+				sb.append(name +":");
 			}
 			
 			sb.deleteCharAt(sb.length()-1);
 			sb.deleteCharAt(sb.length()-1);
 			sb.append("\n");
 		}
+		
+		SpectrumAccumulator acc = SpectrumAccumulator.accumulate(list);
 		List<IDataset> sets = new ArrayList<IDataset>();
-		DoubleDataset dd = new DoubleDataset(ms.getMean(), ms.getDimension());
+		DoubleDataset dd = acc.getMean();
 		
 		dd.setName("Average");
+		dd.setError(acc.getStandardError()); // Plotted as error bars
 		sets.add(dd);
 		
 		String shortName = "Average: " + list.get(0).getName() + " to " + list.get(list.size()-1).getName();
@@ -19,6 +19,8 @@ import org.dawnsci.spectrum.ui.utils.SpectrumUtils;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.widgets.Display;
 
@@ -36,7 +38,14 @@ public class CombineProcess extends AbstractProcess {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Comination of: ");
 		sb.append("\n");
-		IDataset[] all = new IDataset[list.size()];
+		
+		int rows = 0;
+		for (IContain1DData file : list) rows += SpectrumUtils.getyDatasetNames(file).size();
+		int size = x0 != null ? x0.getSize() : list.get(0).getyDatasets().get(0).getSize();
+		
+		// Each spectrum is copied straight into its row
+		DoubleDataset conc = new DoubleDataset(rows, size);
+		double[] data = conc.getData();
 		
 		int count = 0;
 		for (IContain1DData file : list) {
@@ -46,9 +55,11 @@ public class CombineProcess extends AbstractProcess {
 			for (IDataset ds : file.getyDatasets()) {
 				
 				sb.append(ds.getName() +":");
-				IDataset ds1 = ds.getSliceView().squeeze();
-				ds1.setShape(new int[]{1,ds1.getShape()[0]});
-				all[count++] = ds1;
+				if (count == rows) break;
+				Dataset ds1 = DatasetUtils.convertToDataset(ds);
+				if (ds1.getSize() != size) return null;
+				IndexIterator it = ds1.getIterator();
+				for (int i = count++*size; it.hasNext(); i++) data[i] = ds1.getElementDoubleAbs(it.index);
 			}
 			sb.deleteCharAt(sb.length()-1);
 			sb.deleteCharAt(sb.length()-1);
@@ -56,8 +67,6 @@ public class CombineProcess extends AbstractProcess {
 		}
 		List<IDataset> sets = new ArrayList<IDataset>();
 		
-		Dataset conc = DatasetUtils.concatenate(all, 0);
-		
 		conc.setName("Combination");
 		sets.add(conc);
 		String shortName = "Combine: " + list.get(0).getName() + " to " + list.get(list.size()-1).getName();
@@ -8,8 +8,15 @@
  */
 package org.dawnsci.spectrum.ui.processing;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dawnsci.plotting.tools.utils.window.SlidingWindow;
+import org.dawnsci.spectrum.ui.file.IContain1DData;
+import org.dawnsci.spectrum.ui.utils.Contain1DDataImpl;
+import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
-import org.eclipse.dawnsci.analysis.dataset.impl.DatasetFactory;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
 import org.eclipse.dawnsci.analysis.dataset.impl.Maths;
 
 public class RollingBallBaselineProcess extends AbstractProcess {
@@ -25,43 +32,40 @@ public class RollingBallBaselineProcess extends AbstractProcess {
 	}
 
 	@Override
-	protected Dataset process(Dataset x, Dataset y) {
-		return rollingBallBaselineCorrection(y, width);
-	}
-
-	@Override
-	protected String getAppendingName() {
+	public List<IContain1DData> process(List<IContain1DData> list) {
 
-		return "_rolling_baseline_"+width;
-	}
-	
-	private  Dataset rollingBallBaselineCorrection(Dataset y, int width) {
+		// All the spectra at once, so that their baselines are found in parallel
+		List<Dataset> ys = new ArrayList<Dataset>();
+		for (IContain1DData data : list) {
+			for (IDataset y : data.getyDatasets()) {
+				ys.add(DatasetUtils.convertToDataset(y));
+			}
+		}
 
-		Dataset t1 = DatasetFactory.zeros(y);
-		Dataset t2 = DatasetFactory.zeros(y);
+		List<Dataset> baselines = SlidingWindow.rollingBallBaselines(ys, width);
 
-		for (int i = 0 ; i < y.getSize()-1; i++) {
-			int start = (i-width) < 0 ? 0 : (i - width);
-			int end = (i+width) > (y.getSize()-1) ? (y.getSize()-1) : (i+width);
-			double val = y.getSlice(new int[]{start}, new int[]{end}, null).min().doubleValue();
-			t1.set(val, i);
+		List<IContain1DData> output = new ArrayList<IContain1DData>();
+		int i = 0;
+		for (IContain1DData data : list) {
+			List<IDataset> out = new ArrayList<IDataset>();
+			for (int j = 0; j < data.getyDatasets().size(); j++, i++) {
+				out.add(Maths.subtract(ys.get(i), baselines.get(i)));
+			}
+			output.add(new Contain1DDataImpl(data.getxDataset(), out, data.getName() + getAppendingName(), data.getLongName() + getAppendingName()));
 		}
 
-		for (int i = 0 ; i < y.getSize()-1; i++) {
-			int start = (i-width) < 0 ? 0 : (i - width);
-			int end = (i+width) > (y.getSize()-1) ? (y.getSize()-1) : (i+width);
-			double val = t1.getSlice(new int[]{start}, new int[]{end}, null).max().doubleValue();
-			t2.set(val, i);
-		}
+		return output;
+	}
 
-		for (int i = 0 ; i < y.getSize()-1; i++) {
-			int start = (i-width) < 0 ? 0 : (i - width);
-			int end = (i+width) > (y.getSize()-1) ? (y.getSize()-1) : (i+width);
-			double val = (Double)t2.getSlice(new int[]{start}, new int[]{end}, null).mean();
-			t1.set(val, i);
-		}
+	@Override
+	protected Dataset process(Dataset x, Dataset y) {
+		return Maths.subtract(y, SlidingWindow.rollingBallBaseline(y, width));
+	}
 
-		return Maths.subtract(y, t1);
+	@Override
+	protected String getAppendingName() {
+
+		return "_rolling_baseline_"+width;
 	}
 
 }
@@ -39,24 +39,18 @@ public class DatasetManager {
 			
 			//should work, doesn't
 			//IMetadata meta = LoaderFactory.getMetaData(path, null);
+			// Only the names and shapes are needed, the holder is read once for both
 			IDataHolder dh = LoaderFactory.getData(path);
-			IMetadata meta =dh.getMetadata();
-
+			if (dh == null) return null;
 			
-			if (meta != null) {
-				return getDatasetManager(meta);
-			}
+			IMetadata meta = dh.getMetadata();
 			
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		
-		try {
-			IDataHolder dh = LoaderFactory.getData(path);
-			if (dh != null) {
-				return getDatasetManager(dh);
+			if (meta != null && meta.getDataShapes() != null) {
+				return getDatasetManager(meta, dh);
 			}
+			
+			return getDatasetManager(dh);
+			
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -94,7 +88,7 @@ public class DatasetManager {
 		return names;
 	}
 	
-	private static DatasetManager getDatasetManager(IMetadata meta) {
+	private static DatasetManager getDatasetManager(IMetadata meta, IDataHolder dh) {
 		
 		Map<Integer, List<String>> axis = new HashMap<Integer, List<String>>();
 		Map<Integer, List<String>> all = new HashMap<Integer, List<String>>();
@@ -107,7 +101,6 @@ public class DatasetManager {
 			
 			if (shape == null) {
 				try {
-					IDataHolder dh = LoaderFactory.getData(meta.getFilePath());
 					shape = dh.getLazyDataset(name).getShape();
 				} catch (Exception e) {
 					// TODO Auto-generated catch block
@@ -8,15 +8,10 @@
  */
 package org.dawnsci.spectrum.ui.utils;
 
-import java.util.Arrays;
-import java.util.Comparator;
-
-import org.apache.commons.math3.analysis.interpolation.SplineInterpolator;
-import org.apache.commons.math3.analysis.polynomials.PolynomialSplineFunction;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
-import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
 import org.eclipse.dawnsci.analysis.dataset.impl.IntegerDataset;
 import org.eclipse.dawnsci.analysis.dataset.roi.ROISliceUtils;
 
@@ -26,70 +21,53 @@ public class PolynomialInterpolator1D {
 		
 		//TODO more sanity checks on inputs
 		
-		DoubleDataset dx = (DoubleDataset)DatasetUtils.cast(oldx,Dataset.FLOAT64);
-		DoubleDataset dy = (DoubleDataset)DatasetUtils.cast(oldy,Dataset.FLOAT64);
-		
-		boolean sorted = true;
-		double maxtest = oldx.getDouble(0);
-		for (int i = 1; i < ((Dataset)oldx).count(); i++) {
-			if (maxtest > oldx.getDouble(i))  {
-				sorted = false;
-				break;
-			}
-			maxtest = dx.getDouble(i);
-		}
-		
-		double[] sortedx = null;
-		double[] sortedy = null;
-		
-		if (!sorted) {
-			IntegerDataset sIdx = getIndiciesOfSorted(dx);
-			sortedx = new double[dx.getData().length];
-			sortedy = new double[dy.getData().length];
-			
-			for (int i = 0 ; i < sIdx.getSize(); i++) {
-				sortedx[i] = dx.getDouble(sIdx.get(i));
-				sortedy[i] = dy.getDouble(sIdx.get(i));
-			}
-		} else {
-			sortedx = dx.getData();
-			sortedy = dy.getData();
-		}
-		
-		SplineInterpolator si = new SplineInterpolator();
-		PolynomialSplineFunction poly = si.interpolate(sortedx,sortedy);
-		
-		IDataset newy = newx.clone();
-		newy.setName(oldy.getName()+"_interpolated");
-		
-		for (int i = 0; i < ((Dataset)newx).count(); i++) {
-			newy.set(poly.value(newx.getDouble(i)),i);
-		}
-		
-		return newy;
+		return new SplineRegridder(oldx, newx).interpolate(oldy);
 	}
 	
 	public static IntegerDataset getIndiciesOfSorted(final IDataset d) {
 
-		Integer[] dBox = new Integer[d.getSize()];
-
-		for (int i = 0; i < dBox.length; i++) dBox[i] = i;
-
-		Arrays.sort(dBox, new Comparator<Integer>() {
-
-			@Override
-			public int compare(Integer o1, Integer o2) {
-				double dif = d.getDouble(o1)-d.getDouble(o2);
-				return dif > 0 ? (int)Math.ceil(dif) : (int)Math.floor(dif);
-			}
-		});
-
-		int[] dint = new int[d.getSize()];
-		for (int i = 0; i < dBox.length; i++) dint[i] = dBox[i];
+		final Dataset       set    = DatasetUtils.convertToDataset(d);
+		final double[]      values = new double[set.getSize()];
+		final IndexIterator it     = set.getIterator();
+		for (int i = 0; it.hasNext(); i++) values[i] = set.getElementDoubleAbs(it.index);
 
+		int[] dint = argsort(values);
 		return new IntegerDataset(dint, new int[]{dint.length});
 	}
 	
+	/**
+	 * Stable sort of the indices of the values, without boxing them.
+	 * 
+	 * @param values
+	 * @return indices of the values in ascending order of value
+	 */
+	public static int[] argsort(final double[] values) {
+		
+		int[] index = new int[values.length];
+		for (int i = 0; i < index.length; i++) index[i] = i;
+		
+		// Bottom up merge sort, between index and a buffer
+		int[] buffer = new int[values.length];
+		for (int width = 1; width < index.length; width *= 2) {
+			for (int lo = 0; lo < index.length; lo += 2*width) {
+				int mid = Math.min(lo+width, index.length);
+				int hi  = Math.min(lo+2*width, index.length);
+				int i = lo, j = mid;
+				for (int k = lo; k < hi; k++) {
+					if (i < mid && (j >= hi || Double.compare(values[index[i]], values[index[j]]) <= 0)) {
+						buffer[k] = index[i++];
+					} else {
+						buffer[k] = index[j++];
+					}
+				}
+			}
+			int[] tmp = index;
+			index  = buffer;
+			buffer = tmp;
+		}
+		return index;
+	}
+	
 	public static int[] getCommonRangeIndicies(IDataset x1, IDataset x2) {
 		//TODO checks for no overlap etc
 		double max1 = x1.max().doubleValue();
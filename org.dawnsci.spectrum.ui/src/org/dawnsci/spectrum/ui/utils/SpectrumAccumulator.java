@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.spectrum.ui.utils;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.dawnsci.spectrum.ui.file.IContain1DData;
+import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+
+/**
+ * The sum, mean and variance of each point of spectra of the same size,
+ * added one at a time so that only the statistics are held rather than the
+ * spectra. The mean and variance are updated as in Welford's method, which
+ * does not lose precision as the sum of squares does.
+ *
+ * Accumulators of different spectra may be merged, so many files can be
+ * accumulated in parallel, see accumulate(List).
+ */
+public class SpectrumAccumulator {
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool==null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	private final int      size;
+	private final double[] sum;
+	private final double[] mean;
+	private final double[] m2; // Sum of squared differences from the mean
+	private long           count;
+
+	/**
+	 *
+	 * @param size of the spectra
+	 */
+	public SpectrumAccumulator(int size) {
+		this.size = size;
+		this.sum  = new double[size];
+		this.mean = new double[size];
+		this.m2   = new double[size];
+	}
+
+	/**
+	 * Adds a spectrum, of any type.
+	 * @param y
+	 */
+	public void add(IDataset y) {
+		final Dataset d = DatasetUtils.convertToDataset(y);
+		if (d.getSize()!=size) throw new IllegalArgumentException("Spectrum "+y.getName()+" has "+d.getSize()+" points rather than "+size);
+
+		if (d instanceof DoubleDataset && ((DoubleDataset)d).getData().length==size) {
+			add(((DoubleDataset)d).getData());
+			return;
+		}
+
+		count++;
+		final IndexIterator it = d.getIterator();
+		for (int i = 0; it.hasNext(); i++) add(i, d.getElementDoubleAbs(it.index));
+	}
+
+	/**
+	 * Adds a spectrum.
+	 * @param y
+	 */
+	public void add(double[] y) {
+		if (y.length!=size) throw new IllegalArgumentException("Spectrum has "+y.length+" points rather than "+size);
+		count++;
+		for (int i = 0; i < size; i++) add(i, y[i]);
+	}
+
+	private void add(int i, double value) {
+		sum[i] += value;
+		final double delta = value-mean[i];
+		mean[i] += delta/count;
+		m2[i]   += delta*(value-mean[i]);
+	}
+
+	/**
+	 * Adds the spectra of another accumulator, as if they had been added to this one.
+	 * @param other
+	 */
+	public void merge(SpectrumAccumulator other) {
+		if (other.size!=size) throw new IllegalArgumentException("Spectra have "+other.size+" points rather than "+size);
+		if (other.count==0) return;
+
+		final long   n = count+other.count;
+		final double a = (double)count*other.count/n;
+		for (int i = 0; i < size; i++) {
+			final double delta = other.mean[i]-mean[i];
+			sum[i]  += other.sum[i];
+			mean[i] += delta*other.count/n;
+			m2[i]   += other.m2[i] + delta*delta*a;
+		}
+		count = n;
+	}
+
+	/**
+	 *
+	 * @return number of spectra added
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public DoubleDataset getSum() {
+		return new DoubleDataset(sum.clone(), size);
+	}
+
+	public DoubleDataset getMean() {
+		return new DoubleDataset(mean.clone(), size);
+	}
+
+	/**
+	 *
+	 * @return variance of the spectra about their mean, NaN for fewer than two spectra
+	 */
+	public DoubleDataset getVariance() {
+		final double[] variance = new double[size];
+		for (int i = 0; i < size; i++) variance[i] = count>1 ? m2[i]/(count-1) : Double.NaN;
+		return new DoubleDataset(variance, size);
+	}
+
+	/**
+	 *
+	 * @return standard error of the mean, NaN for fewer than two spectra
+	 */
+	public DoubleDataset getStandardError() {
+		final double[] error = new double[size];
+		for (int i = 0; i < size; i++) error[i] = count>1 ? Math.sqrt(m2[i]/(count-1)/count) : Double.NaN;
+		return new DoubleDataset(error, size);
+	}
+
+	/**
+	 * Accumulates all the y datasets of the files, in parallel across the files.
+	 *
+	 * @param files with y datasets of the same size
+	 * @return accumulator, null if there are no files
+	 */
+	public static SpectrumAccumulator accumulate(List<? extends IContain1DData> files) {
+		if (files.isEmpty()) return null;
+		final int size = files.get(0).getyDatasets().get(0).getSize();
+		return getPool().invoke(new AccumulateTask(files, size));
+	}
+
+	private static class AccumulateTask extends RecursiveTask<SpectrumAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<? extends IContain1DData> files;
+		private final int                            size;
+
+		AccumulateTask(List<? extends IContain1DData> files, int size) {
+			this.files = files;
+			this.size  = size;
+		}
+
+		@Override
+		protected SpectrumAccumulator compute() {
+			if (files.size()==1) {
+				final SpectrumAccumulator acc = new SpectrumAccumulator(size);
+				for (IDataset y : files.get(0).getyDatasets()) acc.add(y);
+				return acc;
+			}
+			final int half = files.size()/2;
+			final AccumulateTask first = new AccumulateTask(files.subList(0, half), size);
+			first.fork();
+			final SpectrumAccumulator acc = new AccumulateTask(files.subList(half, files.size()), size).compute();
+			final SpectrumAccumulator ret = first.join();
+			ret.merge(acc);
+			return ret;
+		}
+	}
+}
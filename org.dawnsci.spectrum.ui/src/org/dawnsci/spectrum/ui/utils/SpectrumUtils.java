@@ -11,15 +11,15 @@ package org.dawnsci.spectrum.ui.utils;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import org.apache.commons.math3.stat.descriptive.MultivariateSummaryStatistics;
 import org.dawnsci.spectrum.ui.file.IContain1DData;
 import org.dawnsci.spectrum.ui.file.ISpectrumFile;
 import org.dawnsci.spectrum.ui.file.SpectrumFileManager;
 import org.dawnsci.spectrum.ui.file.SpectrumInMemory;
 import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
-import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
-import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
 import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
 import org.eclipse.dawnsci.analysis.dataset.impl.Maths;
 import org.eclipse.dawnsci.analysis.dataset.roi.ROISliceUtils;
@@ -27,6 +27,13 @@ import org.eclipse.dawnsci.plotting.api.IPlottingSystem;
 import org.eclipse.jface.viewers.IStructuredSelection;
 
 public class SpectrumUtils {
+	
+	private static ForkJoinPool pool;
+	
+	private static synchronized ForkJoinPool getPool() {
+		if (pool==null) pool = new ForkJoinPool();
+		return pool;
+	}
 
 	public static List<ISpectrumFile> getSpectrumFilesList(IStructuredSelection selection) {
 		
@@ -68,32 +75,25 @@ public class SpectrumUtils {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Average of: ");
 		sb.append("\n");
-		MultivariateSummaryStatistics ms = new MultivariateSummaryStatistics(x0.getSize(),false);
 		for (IContain1DData file : files) {
 			
 			sb.append(file.getName() +":");
 			
-			for (IDataset ds : file.getyDatasets()) {
-				
-				sb.append(ds.getName() +":");
-				
-				DoubleDataset dd;
-				if (ds instanceof DoubleDataset) dd = (DoubleDataset)ds;
-				else {
-					dd = (DoubleDataset)DatasetUtils.cast((Dataset)ds, Dataset.FLOAT64);
-				}
-				double[] raw = dd.getData();
-				ms.addValue(raw);
+			for (String name : getyDatasetNames(file)) {
+				sb.append(name +":");
 			}
 			
 			sb.deleteCharAt(sb.length()-1);
 			sb.deleteCharAt(sb.length()-1);
 			sb.append("\n");
 		}
+		
+		SpectrumAccumulator acc = SpectrumAccumulator.accumulate(files);
 		List<IDataset> sets = new ArrayList<IDataset>();
-		DoubleDataset dd = new DoubleDataset(ms.getMean(), ms.getDimension());
+		DoubleDataset dd = acc.getMean();
 		
 		dd.setName("Average");
+		dd.setError(acc.getStandardError()); // Plotted as error bars
 		sets.add(dd);
 		
 		String shortName = "Average: " + files.get(0).getName() + " to " + files.get(files.size()-1).getName();
@@ -101,6 +101,20 @@ public class SpectrumUtils {
 		return new SpectrumInMemory(sb.toString()+"["+ sets.hashCode()+"]", shortName, x0, sets, system);
 	}
 	
+	/**
+	 * The names of the y datasets, without reading them if they are in a file.
+	 * 
+	 * @param data
+	 * @return names
+	 */
+	public static List<String> getyDatasetNames(IContain1DData data) {
+		if (data instanceof ISpectrumFile) return ((ISpectrumFile)data).getyDatasetNames();
+		
+		List<String> names = new ArrayList<String>();
+		for (IDataset ds : data.getyDatasets()) names.add(ds.getName());
+		return names;
+	}
+	
 	private static int[] checkXaxisHasCommonRange(IDataset[] xaxis) {
 		return null;
 	}
@@ -232,19 +246,31 @@ public class SpectrumUtils {
 
 		output.add(new Contain1DDataImpl(xnew,ynew,data.get(0).getName(),data.get(0).getLongName()));
 		
+		// Files are interpolated in parallel, the spectra of each sharing its x axis
+		final IDataset xcommon = xnew;
+		List<ForkJoinTask<IContain1DData>> tasks = new ArrayList<ForkJoinTask<IContain1DData>>(data.size());
 		for (int i = 1; i < data.size(); i++) {
 			
-			IDataset x = data.get(i).getxDataset();
-			
-			ynew = new ArrayList<IDataset>();
-			
-			for (IDataset y: data.get(i).getyDatasets()) {
-				ynew.add(PolynomialInterpolator1D.interpolate(x, y, xnew));
-			}
+			final IContain1DData file = data.get(i);
 			
-			output.add(new Contain1DDataImpl(xnew, ynew,data.get(i).getName(),data.get(i).getLongName()));
+			tasks.add(getPool().submit(new Callable<IContain1DData>() {
+				@Override
+				public IContain1DData call() throws Exception {
+					SplineRegridder regridder = new SplineRegridder(file.getxDataset(), xcommon);
+					
+					List<IDataset> ynew = new ArrayList<IDataset>();
+					
+					for (IDataset y: file.getyDatasets()) {
+						ynew.add(regridder.interpolate(y));
+					}
+					
+					return new Contain1DDataImpl(xcommon, ynew,file.getName(),file.getLongName());
+				}
+			}));
 		}
 		
+		for (ForkJoinTask<IContain1DData> task : tasks) output.add(task.join());
+		
 		return output;
 	}
 	
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 Diamond Light Source Ltd.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.dawnsci.spectrum.ui.utils;
+
+import org.apache.commons.math3.analysis.interpolation.SplineInterpolator;
+import org.apache.commons.math3.analysis.polynomials.PolynomialFunction;
+import org.apache.commons.math3.analysis.polynomials.PolynomialSplineFunction;
+import org.eclipse.dawnsci.analysis.api.dataset.IDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.Dataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.DatasetUtils;
+import org.eclipse.dawnsci.analysis.dataset.impl.DoubleDataset;
+import org.eclipse.dawnsci.analysis.dataset.impl.IndexIterator;
+
+/**
+ * Interpolates spectra measured on one x axis onto another with a cubic
+ * spline, in the same way as PolynomialInterpolator1D.interpolate(...).
+ *
+ * Everything which depends only on the two axes is worked out once, so it
+ * is shared by all the spectra of a file: the order which sorts the old
+ * axis, and the piece of the spline each new x falls in, found in one sweep
+ * along both axes rather than a binary search per point.
+ */
+public class SplineRegridder {
+
+	private final double[] oldx;  // Sorted
+	private final int[]    order; // Sorts the old axis, null if it was sorted
+	private final IDataset newx;
+	private final double[] values;
+	private final int[]    pieces; // Piece of the spline of each new x, -1 if outside the old axis
+
+	/**
+	 *
+	 * @param oldx axis of the spectra
+	 * @param newx axis to interpolate them onto
+	 */
+	public SplineRegridder(IDataset oldx, IDataset newx) {
+
+		final double[] x = getValues(oldx);
+		boolean sorted = true;
+		for (int i = 1; i < x.length; i++) {
+			if (x[i-1] > x[i]) {
+				sorted = false;
+				break;
+			}
+		}
+
+		if (sorted) {
+			this.order = null;
+			this.oldx  = x;
+		} else {
+			this.order = PolynomialInterpolator1D.argsort(x);
+			this.oldx  = new double[x.length];
+			for (int i = 0; i < x.length; i++) this.oldx[i] = x[order[i]];
+		}
+
+		this.newx   = newx;
+		this.values = getValues(newx);
+		this.pieces = getPieces(this.oldx, values);
+	}
+
+	/**
+	 * The knot of the piece of the spline which gives each value, which
+	 * is the last knot not after it, but not the last knot.
+	 */
+	private static int[] getPieces(double[] knots, double[] values) {
+
+		final int[] pieces = new int[values.length];
+		final int   last   = knots.length-2; // Last piece
+
+		final int[] order = isSorted(values) ? null : PolynomialInterpolator1D.argsort(values);
+		int piece = 0;
+		for (int k = 0; k < values.length; k++) {
+			final int    i = order!=null ? order[k] : k;
+			final double v = values[i];
+			if (last<0 || !(v >= knots[0] && v <= knots[last+1])) { // Also NaN
+				pieces[i] = -1;
+				continue;
+			}
+			while (piece < last && knots[piece+1] <= v) piece++;
+			pieces[i] = piece;
+		}
+		return pieces;
+	}
+
+	private static boolean isSorted(double[] values) {
+		for (int i = 1; i < values.length; i++) {
+			if (!(values[i-1] <= values[i])) return false;
+		}
+		return true;
+	}
+
+	private static double[] getValues(IDataset set) {
+		final Dataset        d      = DatasetUtils.convertToDataset(set);
+		final double[]       values = new double[d.getSize()];
+		final IndexIterator  it     = d.getIterator();
+		for (int i = 0; it.hasNext(); i++) values[i] = d.getElementDoubleAbs(it.index);
+		return values;
+	}
+
+	/**
+	 *
+	 * @param oldy spectrum on the old axis
+	 * @return spectrum on the new axis, of the same type as the new axis
+	 */
+	public IDataset interpolate(IDataset oldy) {
+
+		final double[] y = getValues(oldy);
+		final double[] sortedy;
+		if (order!=null) {
+			sortedy = new double[y.length];
+			for (int i = 0; i < y.length; i++) sortedy[i] = y[order[i]];
+		} else {
+			sortedy = y;
+		}
+
+		final PolynomialSplineFunction poly  = new SplineInterpolator().interpolate(oldx, sortedy);
+		final PolynomialFunction[]     polys = poly.getPolynomials();
+
+		final double[] newy = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			final int piece = pieces[i];
+			// Outside the old axis the spline throws, as it always did
+			newy[i] = piece<0 ? poly.value(values[i]) : polys[piece].value(values[i]-oldx[piece]);
+		}
+
+		final Dataset       out = DatasetUtils.convertToDataset(newx).clone();
+		final IndexIterator it  = out.getIterator();
+		if (out instanceof DoubleDataset) {
+			final double[] data = ((DoubleDataset)out).getData();
+			for (int i = 0; it.hasNext(); i++) data[it.index] = newy[i];
+		} else {
+			for (int i = 0; it.hasNext(); i++) out.setObjectAbs(it.index, newy[i]);
+		}
+		out.setName(oldy.getName()+"_interpolated");
+		return out;
+	}
+}
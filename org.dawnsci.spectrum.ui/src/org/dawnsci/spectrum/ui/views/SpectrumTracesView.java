@@ -159,6 +159,11 @@ public class SpectrumTracesView extends ViewPart {
 				});
 			}
 
+			@Override
+			public void fileAdded(SpectrumFileEvent event) {
+				viewer.refresh();
+			}
+
 			@Override
 			public void fileRemoved(SpectrumFileEvent event) {
 				updateSelection(event);